@@ -1,4 +1,18 @@
+plugins {
+    id("me.champeau.jmh")
+}
+
 dependencies {
     compileOnly(project(":core"))
     compileOnly("ch.obermuhlner:big-math:2.3.2")
-}
\ No newline at end of file
+
+    testImplementation(project(":core"))
+    testImplementation("ch.obermuhlner:big-math:2.3.2")
+
+    jmh(project(":core"))
+    jmh("ch.obermuhlner:big-math:2.3.2")
+}
+
+jmh {
+    profilers.add("gc")
+}
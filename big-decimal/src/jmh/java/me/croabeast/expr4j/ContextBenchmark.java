@@ -0,0 +1,60 @@
+package me.croabeast.expr4j;
+
+import me.croabeast.expr4j.expression.Bindings;
+import me.croabeast.expr4j.expression.Context;
+import me.croabeast.expr4j.expression.Expression;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocations of the tree interpreter against a reused {@link Context} for
+ * {@link BigDecimal} expressions.
+ *
+ * <p>Run with {@code ./gradlew :big-decimal:jmh}. The module enables the
+ * {@code gc} profiler, whose {@code gc.alloc.rate.norm} column reports the
+ * bytes allocated per evaluation. Through a context, only the values
+ * produced by the operations remain.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContextBenchmark {
+
+    @Param({
+            "x * y + z",
+            "sqrt(x^2 + y^2) / (1 + abs z)",
+            "max(x, y, z) - min(x, y, z) + mean(x, y, z)",
+            "3x^4 - 2x^3 + x^2 - 7x + 5 + y * (z - x) / (y + 1)"
+    })
+    private String formula;
+
+    private Expression<BigDecimal> expression;
+    private Context<BigDecimal> context;
+    private Bindings<BigDecimal> bindings;
+
+    @Setup
+    public void setup() {
+        expression = new BigDecimalBuilder().build(formula);
+        context = expression.getContext();
+
+        bindings = expression.getSchema().bindings();
+        bindings.set("x", new BigDecimal("1.5"));
+        bindings.set("y", new BigDecimal("2.25"));
+        bindings.set("z", new BigDecimal("3.75"));
+    }
+
+    @Benchmark
+    public BigDecimal interpreted() {
+        return expression.evaluate(bindings);
+    }
+
+    @Benchmark
+    public BigDecimal context() {
+        return context.evaluate(bindings);
+    }
+}
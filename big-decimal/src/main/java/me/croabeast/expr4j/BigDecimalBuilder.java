@@ -5,6 +5,8 @@ import lombok.experimental.UtilityClass;
 import me.croabeast.expr4j.exception.Expr4jException;
 import me.croabeast.expr4j.expression.Builder;
 import me.croabeast.expr4j.expression.Codec;
+import me.croabeast.expr4j.token.Function;
+import me.croabeast.expr4j.token.VariadicOperation;
 import org.jetbrains.annotations.NotNull;
 
 import java.math.BigDecimal;
@@ -96,6 +98,9 @@ public class BigDecimalBuilder extends Builder<BigDecimal> {
 
     @Override
     protected void initialize() {
+        Function<BigDecimal> fused = Operations.fusedMultiplyAdd((VariadicOperation<BigDecimal>) v ->
+                v.get(0).multiply(v.get(1), mathContext).add(v.get(2), mathContext));
+
         getDictionary()
                 .addOperator(Operations.positive()).addOperator(Operations.negative(BigDecimal::negate))
                 .addOperator(Operations.add((a, b) -> a.add(b, mathContext)))
@@ -129,17 +134,32 @@ public class BigDecimalBuilder extends Builder<BigDecimal> {
                 .addFunction(Operations.radians(p -> BigDecimalMath.toRadians(p, mathContext)))
                 .addFunction(Operations.logarithm((b, v) -> Utils.log(b, v, mathContext)))
                 .addFunction(Operations.exponential(p -> BigDecimalMath.exp(p, mathContext)))
-                .addFunction(Operations.maximum(p -> p.isEmpty() ? BigDecimal.ZERO : Collections.max(p.results())))
-                .addFunction(Operations.minimum(p -> p.isEmpty() ? BigDecimal.ZERO : Collections.min(p.results())))
-                .addFunction(Operations.mean(p -> Utils.average(p.results(), mathContext)))
-                .addFunction(Operations.average(p -> Utils.average(p.results(), mathContext)))
+                .addFunction(Operations.maximum((VariadicOperation<BigDecimal>) v -> v.isEmpty() ? BigDecimal.ZERO : Collections.max(v)))
+                .addFunction(Operations.minimum((VariadicOperation<BigDecimal>) v -> v.isEmpty() ? BigDecimal.ZERO : Collections.min(v)))
+                .addFunction(Operations.mean((VariadicOperation<BigDecimal>) v -> Utils.average(v, mathContext)))
+                .addFunction(Operations.average((VariadicOperation<BigDecimal>) v -> Utils.average(v, mathContext)))
                 .addFunction(Operations.random(p -> new BigDecimal(Math.random())))
-                .addConstant("pi", BigDecimalMath.pi(mathContext)).addConstant("e", BigDecimalMath.e(mathContext));
+                .addConstant("pi", BigDecimalMath.pi(mathContext)).addConstant("e", BigDecimalMath.e(mathContext))
+                .addRule(Rules.identities(v -> v.signum() == 0, v -> v.compareTo(BigDecimal.ONE) == 0))
+                .addRule(Rules.annihilation(v -> v.signum() == 0))
+                .addRule(Rules.polynomials(32, BigDecimal.ONE, Utils::exponent, fused))
+                .addRule(Rules.integerPowers(16, Utils::exponent, (a, b) -> a.pow(b.intValue()).round(mathContext)))
+                .addRule(Rules.fusedMultiplyAdd(fused))
+                .addDerivative(fused, (node, d, x) -> x.add(
+                        x.add(x.multiply(d[0], x.operand(node, 1)), x.multiply(x.operand(node, 0), d[1])), d[2]));
     }
 
     @UtilityClass
     class Utils {
 
+        int exponent(BigDecimal x) {
+            try {
+                return x.intValueExact();
+            } catch (ArithmeticException e) {
+                return -1;
+            }
+        }
+
         BigDecimal log(BigDecimal base, BigDecimal value, MathContext mathContext) {
             return BigDecimalMath.log(value, mathContext).divide(BigDecimalMath.log(base, mathContext), mathContext);
         }
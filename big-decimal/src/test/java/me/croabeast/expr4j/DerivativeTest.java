@@ -0,0 +1,37 @@
+package me.croabeast.expr4j;
+
+import me.croabeast.expr4j.expression.Expression;
+import me.croabeast.expr4j.expression.Optimization;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DerivativeTest {
+
+    private final BigDecimalBuilder builder = new BigDecimalBuilder();
+
+    private static Map<String, BigDecimal> variables() {
+        Map<String, BigDecimal> variables = new HashMap<>();
+        variables.put("x", new BigDecimal("2"));
+        variables.put("y", new BigDecimal("3"));
+        return variables;
+    }
+
+    private double derivative(String formula) {
+        Expression<BigDecimal> expression = builder.build(formula);
+        return expression.derivative("x").evaluate(variables()).doubleValue();
+    }
+
+    @Test
+    void rewrittenIntegerPowersAreDifferentiated() {
+        builder.enable(Optimization.SIMPLIFY);
+
+        assertEquals(324, derivative("(x*y)^3"), 1e-12);
+        assertEquals(3 * Math.pow(Math.sin(2), 2) * Math.cos(2), derivative("sin(x)^3"), 1e-12);
+        assertEquals(5 * Math.pow(2, 4), derivative("x^5 + y^2"), 1e-12);
+    }
+}
@@ -0,0 +1,63 @@
+package me.croabeast.expr4j;
+
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.expression.Expression;
+import me.croabeast.expr4j.expression.Optimization;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class VariadicTest {
+
+    private final BigDecimalBuilder builder = new BigDecimalBuilder();
+
+    private BigDecimal evaluate(String formula) {
+        return builder.build(formula).evaluate(Collections.singletonMap("x", new BigDecimal("2.5")));
+    }
+
+    @Test
+    void builtInsReceiveTheirOperands() {
+        assertEquals(0, new BigDecimal("7").compareTo(evaluate("max(1, 7, x)")));
+        assertEquals(0, new BigDecimal("1").compareTo(evaluate("min(x, 1, 7)")));
+        assertEquals(0, new BigDecimal("3.5").compareTo(evaluate("mean(1, 7, x)")));
+        assertEquals(0, new BigDecimal("3.5").compareTo(evaluate("average(x, 4.5)")));
+        assertEquals(0, BigDecimal.ZERO.compareTo(evaluate("max()")));
+    }
+
+    @Test
+    void deeplyNestedBuiltInsDoNotRecurse() {
+        int depth = 100_000;
+        StringBuilder formula = new StringBuilder();
+
+        for (int i = 0; i < depth; i++) formula.append(i % 2 == 0 ? "max(1, " : "mean(x, x, ");
+        formula.append('x');
+        for (int i = 0; i < depth; i++) formula.append(')');
+
+        Expression<BigDecimal> expression = builder.build(formula.toString());
+        assertEquals(0, new BigDecimal("2.5").compareTo(expression.evaluate(Collections.singletonMap("x", new BigDecimal("2.5")))));
+    }
+
+    @Test
+    void fusedMultiplyAddRoundsLikeTheSeparateOperations() {
+        BigDecimalBuilder builder = new BigDecimalBuilder(3);
+        Map<String, BigDecimal> values = new HashMap<>();
+        values.put("x", new BigDecimal("2.01"));
+        values.put("y", new BigDecimal("0.5"));
+        values.put("z", new BigDecimal("-0.004"));
+
+        BigDecimal separate = builder.build("x * y + z").evaluate(values);
+        builder.enable(Optimization.SIMPLIFY);
+        Expression<BigDecimal> fused = builder.build("x * y + z");
+
+        assertEquals("fma(x, y, z)", fused.toString());
+        assertEquals(0, new BigDecimal("1.01").compareTo(separate));
+        assertEquals(0, separate.compareTo(fused.evaluate(values)));
+        assertThrows(Expr4jException.class, () -> builder.build("fma(x, y, z)").evaluate(values));
+    }
+}
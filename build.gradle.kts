@@ -2,6 +2,7 @@ plugins {
     id("java-library")
     id("io.freefair.lombok") version "8.10"
     id("com.gradleup.shadow") version "8.3.0"
+    id("me.champeau.jmh") version "0.7.2" apply false
 }
 
 allprojects {
@@ -52,5 +53,13 @@ subprojects {
 
         compileOnly("org.projectlombok:lombok:1.18.38")
         annotationProcessor("org.projectlombok:lombok:1.18.38")
+
+        testImplementation(platform("org.junit:junit-bom:5.10.2"))
+        testImplementation("org.junit.jupiter:junit-jupiter")
+        testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+    }
+
+    tasks.withType<Test>().configureEach {
+        useJUnitPlatform()
     }
 }
@@ -1,4 +1,15 @@
+plugins {
+    id("me.champeau.jmh")
+}
+
 dependencies {
     compileOnly(project(":core"))
     compileOnly("org.apache.commons:commons-numbers-complex:1.2")
-}
\ No newline at end of file
+
+    jmh(project(":core"))
+    jmh("org.apache.commons:commons-numbers-complex:1.2")
+}
+
+jmh {
+    profilers.add("gc")
+}
@@ -3,6 +3,7 @@ package me.croabeast.expr4j;
 import lombok.experimental.UtilityClass;
 import me.croabeast.expr4j.expression.Builder;
 import me.croabeast.expr4j.expression.Codec;
+import me.croabeast.expr4j.token.VariadicOperation;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
@@ -75,17 +76,26 @@ public class ComplexBuilder extends Builder<Complex> {
                 .addFunction(Operations.radians(Utils::toRadians))
                 .addFunction(Operations.logarithm(Utils::log))
                 .addFunction(Operations.exponential(Complex::exp))
-                .addFunction(Operations.maximum(p -> p.isEmpty() ? Complex.ZERO : Utils.max(p.results())))
-                .addFunction(Operations.minimum(p -> p.isEmpty() ? Complex.ZERO : Utils.min(p.results())))
-                .addFunction(Operations.average(p -> p.isEmpty() ? Complex.ZERO : Utils.average(p.results())))
-                .addFunction(Operations.mean(p -> p.isEmpty() ? Complex.ZERO : Utils.average(p.results())))
+                .addFunction(Operations.maximum((VariadicOperation<Complex>) v -> v.isEmpty() ? Complex.ZERO : Utils.max(v)))
+                .addFunction(Operations.minimum((VariadicOperation<Complex>) v -> v.isEmpty() ? Complex.ZERO : Utils.min(v)))
+                .addFunction(Operations.average((VariadicOperation<Complex>) v -> v.isEmpty() ? Complex.ZERO : Utils.average(v)))
+                .addFunction(Operations.mean((VariadicOperation<Complex>) v -> v.isEmpty() ? Complex.ZERO : Utils.average(v)))
                 .addFunction(Operations.random(p -> Complex.random()))
-                .addConstant("pi", Complex.PI).addConstant("e", Complex.E).addConstant("i", Complex.I);
+                .addConstant("pi", Complex.PI).addConstant("e", Complex.E).addConstant("i", Complex.I)
+                .addRule(Rules.identities(Complex.ZERO::equals, Complex.ONE::equals))
+                .addRule(Rules.squareOfRoot(c -> c.equals(new Complex(2.0, 0.0))))
+                .addRule(Rules.polynomials(32, Complex.ONE, Utils::exponent, null))
+                .addRule(Rules.integerPowers(16, Utils::exponent));
     }
 
     @UtilityClass
     class Utils {
 
+        int exponent(Complex x) {
+            double real = x.getReal();
+            return x.getImaginary() == 0 && real == Math.rint(real) && Math.abs(real) <= Integer.MAX_VALUE ? (int) real : -1;
+        }
+
         Complex toDegrees(Complex complex) {
             return new Complex(Math.toDegrees(complex.getReal()), Math.toDegrees(complex.getImaginary()));
         }
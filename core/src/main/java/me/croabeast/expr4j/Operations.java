@@ -4,11 +4,15 @@ import lombok.experimental.UtilityClass;
 import me.croabeast.expr4j.expression.Parameters;
 import me.croabeast.expr4j.token.*;
 
+import java.lang.reflect.Method;
+
 /**
  * Convenience factory for commonly used operators and functions. The methods
- * in this utility class only wire metadata (labels, precedence, arity) to the
- * provided {@link UnaryOperation}, {@link BinaryOperation}, or {@link Operation}
- * implementations, leaving the mathematical logic to the caller.
+ * in this utility class only wire metadata (labels, precedence, arity and
+ * {@link Characteristics}) to the provided {@link UnaryOperation},
+ * {@link BinaryOperation}, or {@link Operation} implementations, leaving the
+ * mathematical logic to the caller. The declared characteristics assume the
+ * supplied logic implements the usual mathematical meaning of each symbol.
  */
 @UtilityClass
 public class Operations {
@@ -20,7 +24,7 @@ public class Operations {
      * @return prefix operator wired to return its operand untouched
      */
     public <T> Operator<T> positive() {
-        return new Operator<>("+", Operator.Type.PREFIX, Integer.MAX_VALUE, Parameters::result);
+        return new Operator<>("+", Operator.Type.PREFIX, Integer.MAX_VALUE, Parameters::result, Characteristics.pure().idempotent().cost(0));
     }
 
     /**
@@ -31,35 +35,35 @@ public class Operations {
      * @return configured operator instance
      */
     public <T> Operator<T> negative(UnaryOperation<T> operation) {
-        return new Operator<>("-", Operator.Type.PREFIX, Integer.MAX_VALUE, operation);
+        return new Operator<>("-", Operator.Type.PREFIX, Integer.MAX_VALUE, operation, Characteristics.pure());
     }
 
     /**
      * Creates an infix addition operator.
      */
     public <T> Operator<T> add(BinaryOperation<T> operation) {
-        return new Operator<>("+", Operator.Type.INFIX, 1, operation);
+        return new Operator<>("+", Operator.Type.INFIX, 1, operation, Characteristics.pure().commutative().associative());
     }
 
     /**
      * Creates an infix subtraction operator.
      */
     public <T> Operator<T> subtract(BinaryOperation<T> operation) {
-        return new Operator<>("-", Operator.Type.INFIX, 1, operation);
+        return new Operator<>("-", Operator.Type.INFIX, 1, operation, Characteristics.pure());
     }
 
     /**
      * Creates an infix multiplication operator.
      */
     public <T> Operator<T> multiply(BinaryOperation<T> operation) {
-        return new Operator<>("*", Operator.Type.INFIX, 2, operation);
+        return new Operator<>("*", Operator.Type.INFIX, 2, operation, Characteristics.pure().commutative().associative());
     }
 
     /**
      * Creates an infix division operator.
      */
     public <T> Operator<T> divide(BinaryOperation<T> operation) {
-        return new Operator<>("/", Operator.Type.INFIX, 2, operation);
+        return new Operator<>("/", Operator.Type.INFIX, 2, operation, Characteristics.pure().cost(4));
     }
 
     /**
@@ -67,223 +71,297 @@ public class Operations {
      * operation.
      */
     public <T> Operator<T> percent(BinaryOperation<T> operation) {
-        return new Operator<>("%", Operator.Type.INFIX, 2, operation);
+        return new Operator<>("%", Operator.Type.INFIX, 2, operation, Characteristics.pure().cost(4));
     }
 
     /**
      * Creates a right-to-left exponentiation operator.
      */
     public <T> Operator<T> power(BinaryOperation<T> operation) {
-        return new Operator<>("^", Operator.Type.INFIX_RTL, 3, operation);
+        return new Operator<>("^", Operator.Type.INFIX_RTL, 3, operation, Characteristics.pure().cost(16));
     }
 
     /**
      * Creates a postfix factorial operator.
      */
     public <T> Operator<T> factorial(UnaryOperation<T> operation) {
-        return new Operator<>("!", Operator.Type.POSTFIX, 5, operation);
+        return new Operator<>("!", Operator.Type.POSTFIX, 5, operation, Characteristics.pure().cost(8));
     }
 
     /**
      * Creates a prefix absolute value operator.
      */
     public <T> Operator<T> absolute(UnaryOperation<T> operation) {
-        return new Operator<>("abs", Operator.Type.PREFIX, 4, operation);
+        return new Operator<>("abs", Operator.Type.PREFIX, 4, operation, Characteristics.pure().idempotent());
     }
 
     /**
      * Creates a prefix sine operator.
      */
     public <T> Operator<T> sine(UnaryOperation<T> operation) {
-        return new Operator<>("sin", Operator.Type.PREFIX, 4, operation);
+        return new Operator<>("sin", Operator.Type.PREFIX, 4, operation, Characteristics.pure().cost(16));
     }
 
     /**
      * Creates a prefix cosine operator.
      */
     public <T> Operator<T> cosine(UnaryOperation<T> operation) {
-        return new Operator<>("cos", Operator.Type.PREFIX, 4, operation);
+        return new Operator<>("cos", Operator.Type.PREFIX, 4, operation, Characteristics.pure().cost(16));
     }
 
     /**
      * Creates a prefix tangent operator.
      */
     public <T> Operator<T> tangent(UnaryOperation<T> operation) {
-        return new Operator<>("tan", Operator.Type.PREFIX, 4, operation);
+        return new Operator<>("tan", Operator.Type.PREFIX, 4, operation, Characteristics.pure().cost(16));
     }
 
     /**
      * Creates a prefix arcsine operator.
      */
     public <T> Operator<T> arcsine(UnaryOperation<T> operation) {
-        return new Operator<>("asin", Operator.Type.PREFIX, 4, operation);
+        return new Operator<>("asin", Operator.Type.PREFIX, 4, operation, Characteristics.pure().cost(16));
     }
 
     /**
      * Creates a prefix arccosine operator.
      */
     public <T> Operator<T> arccosine(UnaryOperation<T> operation) {
-        return new Operator<>("acos", Operator.Type.PREFIX, 4, operation);
+        return new Operator<>("acos", Operator.Type.PREFIX, 4, operation, Characteristics.pure().cost(16));
     }
 
     /**
      * Creates a prefix arctangent operator.
      */
     public <T> Operator<T> arctangent(UnaryOperation<T> operation) {
-        return new Operator<>("atan", Operator.Type.PREFIX, 4, operation);
+        return new Operator<>("atan", Operator.Type.PREFIX, 4, operation, Characteristics.pure().cost(16));
     }
 
     /**
      * Creates a prefix hyperbolic sine operator.
      */
     public <T> Operator<T> hSine(UnaryOperation<T> operation) {
-        return new Operator<>("sinh", Operator.Type.PREFIX, 4, operation);
+        return new Operator<>("sinh", Operator.Type.PREFIX, 4, operation, Characteristics.pure().cost(16));
     }
 
     /**
      * Creates a prefix hyperbolic cosine operator.
      */
     public <T> Operator<T> hCosine(UnaryOperation<T> operation) {
-        return new Operator<>("cosh", Operator.Type.PREFIX, 4, operation);
+        return new Operator<>("cosh", Operator.Type.PREFIX, 4, operation, Characteristics.pure().cost(16));
     }
 
     /**
      * Creates a prefix hyperbolic tangent operator.
      */
     public <T> Operator<T> hTangent(UnaryOperation<T> operation) {
-        return new Operator<>("tanh", Operator.Type.PREFIX, 4, operation);
+        return new Operator<>("tanh", Operator.Type.PREFIX, 4, operation, Characteristics.pure().cost(16));
     }
 
     /**
      * Creates a prefix inverse hyperbolic sine operator.
      */
     public <T> Operator<T> arcHSine(UnaryOperation<T> operation) {
-        return new Operator<>("asinh", Operator.Type.PREFIX, 4, operation);
+        return new Operator<>("asinh", Operator.Type.PREFIX, 4, operation, Characteristics.pure().cost(16));
     }
 
     /**
      * Creates a prefix inverse hyperbolic cosine operator.
      */
     public <T> Operator<T> arcHCosine(UnaryOperation<T> operation) {
-        return new Operator<>("acosh", Operator.Type.PREFIX, 4, operation);
+        return new Operator<>("acosh", Operator.Type.PREFIX, 4, operation, Characteristics.pure().cost(16));
     }
 
     /**
      * Creates a prefix inverse hyperbolic tangent operator.
      */
     public <T> Operator<T> arcHTangent(UnaryOperation<T> operation) {
-        return new Operator<>("atanh", Operator.Type.PREFIX, 4, operation);
+        return new Operator<>("atanh", Operator.Type.PREFIX, 4, operation, Characteristics.pure().cost(16));
     }
 
     /**
      * Creates a prefix rounding operator.
      */
     public <T> Operator<T> round(UnaryOperation<T> operation) {
-        return new Operator<>("round", Operator.Type.PREFIX, 4, operation);
+        return new Operator<>("round", Operator.Type.PREFIX, 4, operation, Characteristics.pure().idempotent());
     }
 
     /**
      * Creates a prefix floor operator.
      */
     public <T> Operator<T> floor(UnaryOperation<T> operation) {
-        return new Operator<>("floor", Operator.Type.PREFIX, 4, operation);
+        return new Operator<>("floor", Operator.Type.PREFIX, 4, operation, Characteristics.pure().idempotent());
     }
 
     /**
      * Creates a prefix ceiling operator.
      */
     public <T> Operator<T> ceiling(UnaryOperation<T> operation) {
-        return new Operator<>("ceil", Operator.Type.PREFIX, 4, operation);
+        return new Operator<>("ceil", Operator.Type.PREFIX, 4, operation, Characteristics.pure().idempotent());
     }
 
     /**
      * Creates a prefix natural logarithm operator.
      */
     public <T> Operator<T> naturalLogarithm(UnaryOperation<T> operation) {
-        return new Operator<>("ln", Operator.Type.PREFIX, 4, operation);
+        return new Operator<>("ln", Operator.Type.PREFIX, 4, operation, Characteristics.pure().cost(16));
     }
 
     /**
      * Creates a prefix base-10 logarithm operator.
      */
     public <T> Operator<T> base10Logarithm(UnaryOperation<T> operation) {
-        return new Operator<>("log10", Operator.Type.PREFIX, 4, operation);
+        return new Operator<>("log10", Operator.Type.PREFIX, 4, operation, Characteristics.pure().cost(16));
     }
 
     /**
      * Creates a prefix square-root operator.
      */
     public <T> Operator<T> squareRoot(UnaryOperation<T> operation) {
-        return new Operator<>("sqrt", Operator.Type.PREFIX, 4, operation);
+        return new Operator<>("sqrt", Operator.Type.PREFIX, 4, operation, Characteristics.pure().cost(4));
     }
 
     /**
      * Creates a prefix cube-root operator.
      */
     public <T> Operator<T> cubeRoot(UnaryOperation<T> operation) {
-        return new Operator<>("cbrt", Operator.Type.PREFIX, 4, operation);
+        return new Operator<>("cbrt", Operator.Type.PREFIX, 4, operation, Characteristics.pure().cost(8));
     }
 
     /**
      * Declares a one-argument function that converts radians to degrees.
      */
     public <T> Function<T> degrees(UnaryOperation<T> operation) {
-        return new Function<>("deg", 1, operation);
+        return new Function<>("deg", 1, operation, Characteristics.pure());
     }
 
     /**
      * Declares a one-argument function that converts degrees to radians.
      */
     public <T> Function<T> radians(UnaryOperation<T> operation) {
-        return new Function<>("rad", 1, operation);
+        return new Function<>("rad", 1, operation, Characteristics.pure());
     }
 
     /**
      * Declares a two-argument logarithm function with a configurable base.
      */
     public <T> Function<T> logarithm(BinaryOperation<T> operation) {
-        return new Function<>("log", 2, operation);
+        return new Function<>("log", 2, operation, Characteristics.pure().cost(32));
     }
 
     /**
      * Declares a one-argument exponential function.
      */
     public <T> Function<T> exponential(UnaryOperation<T> operation) {
-        return new Function<>("exp", 1, operation);
+        return new Function<>("exp", 1, operation, Characteristics.pure().cost(16));
     }
 
     /**
      * Declares a variadic maximum function.
      */
     public <T> Function<T> maximum(Operation<T> operation) {
-        return new Function<>("max", operation);
+        return new Function<>("max", -1, operation, Characteristics.pure().commutative().associative().idempotent());
     }
 
     /**
      * Declares a variadic minimum function.
      */
     public <T> Function<T> minimum(Operation<T> operation) {
-        return new Function<>("min", operation);
+        return new Function<>("min", -1, operation, Characteristics.pure().commutative().associative().idempotent());
     }
 
     /**
      * Declares a variadic average function.
      */
     public <T> Function<T> average(Operation<T> operation) {
-        return new Function<>("average", operation);
+        return new Function<>("average", -1, operation, Characteristics.pure().commutative().cost(2));
     }
 
     /**
      * Declares a variadic mean function (alias of average).
      */
     public <T> Function<T> mean(Operation<T> operation) {
-        return new Function<>("mean", operation);
+        return new Function<>("mean", -1, operation, Characteristics.pure().commutative().cost(2));
+    }
+
+    /**
+     * Declares the three-argument {@code fma(a, b, c)} call computing
+     * {@code a*b + c}, ideally with a single rounding, that
+     * {@link Rules#fusedMultiplyAdd(Function)} and
+     * {@link Rules#polynomials(int, Object, java.util.function.ToIntFunction, Function)}
+     * rewrite trees into. It is not meant to be added to a dictionary, so
+     * formulas cannot call it.
+     */
+    public <T> Function<T> fusedMultiplyAdd(Operation<T> operation) {
+        return new Function<>("fma", 3, operation, Characteristics.pure().cost(2));
     }
 
     /**
      * Declares a random-number generator function without parameters.
      */
     public <T> Function<T> random(Operation<T> operation) {
-        return new Function<>("rand", 0, operation);
+        return new Function<>("rand", 0, operation, Characteristics.impure().cost(4));
+    }
+
+    /**
+     * Class declaring the {@link Operation#evaluate(Parameters)} method each
+     * operation class runs, looked up once per class.
+     */
+    private final ClassValue<Class<?>> DECLARING = new ClassValue<Class<?>>() {
+        @Override
+        protected Class<?> computeValue(Class<?> type) {
+            try {
+                Method method = type.getMethod("evaluate", Parameters.class);
+                return method.getDeclaringClass();
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+    };
+
+    /**
+     * Returns the operation a plain {@link Function} or {@link Operator}
+     * delegates to, so evaluators can call it without going through the
+     * token. Subclasses of those tokens and every other operation are
+     * returned unchanged.
+     *
+     * @param operation operation or token to resolve
+     * @param <T>       evaluation type handled by the operation
+     * @return the delegate operation, or the given one
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Operation<T> resolve(Operation<T> operation) {
+        if (operation.getClass() == Function.class)
+            return ((Function<T>) operation).getOperation();
+
+        if (operation.getClass() == Operator.class)
+            return ((Operator<T>) operation).getOperation();
+
+        return operation;
+    }
+
+    /**
+     * Tells whether an operation implements the given functional interface,
+     * such as {@link UnaryOperation}, and keeps the interface's own
+     * {@link Operation#evaluate(Parameters)}. Such operations may be called
+     * with already computed arguments instead of lazy {@link Parameters}.
+     *
+     * @param operation resolved operation
+     * @param type      functional interface to check
+     * @return {@code true} if arguments can be passed eagerly
+     */
+    public boolean isDirect(Operation<?> operation, Class<?> type) {
+        return isDirect(operation.getClass(), type);
+    }
+
+    /**
+     * Class-based variant of {@link #isDirect(Operation, Class)}.
+     *
+     * @param operation operation class
+     * @param type      functional interface to check
+     * @return {@code true} if arguments can be passed eagerly
+     */
+    public boolean isDirect(Class<?> operation, Class<?> type) {
+        return type.isAssignableFrom(operation) && DECLARING.get(operation) == type;
     }
 }
@@ -0,0 +1,288 @@
+package me.croabeast.expr4j;
+
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.expression.*;
+import me.croabeast.expr4j.token.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Recognizes a subtree as a polynomial in a single free variable and rewrites
+ * it in Horner form, backing {@link Rules#polynomials}.
+ *
+ * <p>Sums, differences, signs, products where at least one side is a single
+ * term, powers of a single term with a constant integer exponent and the
+ * fused multiply-add calls of the rule itself are understood. Products of two sums
+ * are never expanded, since that would change how the value is rounded.
+ * Coefficients are computed with the operators of the dictionary itself.</p>
+ *
+ * @param <T> value type of the expression
+ */
+@SuppressWarnings("unchecked")
+final class Polynomial<T> {
+
+    private final Dictionary<T> dictionary;
+    private final int degree;
+    private final T one;
+    private final ToIntFunction<T> exponent;
+    private final Function<T> fused;
+
+    private Node variable;
+
+    Polynomial(Dictionary<T> dictionary, int degree, T one, ToIntFunction<T> exponent, Function<T> fused) {
+        this.dictionary = dictionary;
+        this.degree = degree;
+        this.one = one;
+        this.exponent = exponent;
+        this.fused = fused;
+    }
+
+    private boolean is(Node node, String label, Operator.Type type) {
+        Token token = node.getToken();
+        return token instanceof Operator && dictionary.getOperator(label, type) == token &&
+                ((Operator<T>) token).getType() == type;
+    }
+
+    private T apply(Operation<T> operation, T... values) {
+        Parameters<T> parameters = new Parameters<>();
+        for (T value : values) parameters.add(new Parameter<>(() -> value));
+
+        return operation.evaluate(parameters);
+    }
+
+    private T apply(String label, Operator.Type type, T... values) {
+        Operation<T> operation = dictionary.getOperator(label, type);
+        if (operation == null)
+            throw new Expr4jException("Missing operator: " + label);
+
+        return apply(operation, values);
+    }
+
+    private Object[] add(Object[] left, Object[] right) {
+        Object[] sum = Arrays.copyOf(left, Math.max(left.length, right.length));
+
+        for (int i = 0; i < right.length; i++) {
+            if (right[i] == null) continue;
+
+            sum[i] = sum[i] == null ? right[i] :
+                    apply("+", Operator.Type.INFIX, (T) sum[i], (T) right[i]);
+        }
+
+        return sum;
+    }
+
+    private Object[] negate(Object[] terms) {
+        Object[] negated = new Object[terms.length];
+
+        for (int i = 0; i < terms.length; i++)
+            if (terms[i] != null)
+                negated[i] = apply("-", Operator.Type.PREFIX, (T) terms[i]);
+
+        return negated;
+    }
+
+    /**
+     * Returns the degree of a single term, or {@code -1} if the polynomial
+     * has several terms.
+     */
+    private static int monomial(Object[] terms) {
+        int found = -1;
+
+        for (int i = 0; i < terms.length; i++) {
+            if (terms[i] == null) continue;
+            if (found >= 0) return -1;
+
+            found = i;
+        }
+
+        return found;
+    }
+
+    private Object[] multiply(Object[] left, Object[] right) {
+        int d = monomial(left);
+        if (d < 0) {
+            d = monomial(right);
+            if (d < 0) return null;
+
+            Object[] swap = left;
+            left = right;
+            right = swap;
+        }
+
+        if (d + right.length - 1 > degree) return null;
+
+        T factor = (T) left[d];
+        Object[] product = new Object[d + right.length];
+
+        for (int i = 0; i < right.length; i++)
+            if (right[i] != null)
+                product[d + i] = one.equals(factor) ? right[i] :
+                        apply("*", Operator.Type.INFIX, factor, (T) right[i]);
+
+        return product;
+    }
+
+    private Object[] power(Object[] base, int n) {
+        int d = monomial(base);
+        if (d < 0 || n < 0 || (long) d * n > degree) return null;
+
+        T coefficient = one;
+        for (int i = 0; i < n; i++)
+            coefficient = apply("*", Operator.Type.INFIX, coefficient, (T) base[d]);
+
+        Object[] power = new Object[d * n + 1];
+        power[d * n] = coefficient;
+        return power;
+    }
+
+    private T constant(Node node) {
+        Token token = node.getToken();
+
+        if (token instanceof Operand) return ((Operand<T>) token).getValue();
+        if (token instanceof Variable) return dictionary.getConstant(token.getLabel());
+
+        return null;
+    }
+
+    /**
+     * Collects the coefficients of the polynomial a subtree computes.
+     *
+     * @return coefficients indexed by degree, {@code null} for absent terms,
+     *         or {@code null} if the subtree is not a polynomial
+     */
+    Object[] parse(Node node) {
+        Token token = node.getToken();
+        List<Node> children = node.getChildren();
+
+        if (children == null) {
+            T constant = constant(node);
+            if (constant != null) return new Object[] {constant};
+
+            if (!(token instanceof Variable)) return null;
+
+            if (variable == null) variable = node;
+            else if (!variable.getToken().getLabel().equals(token.getLabel()))
+                return null;
+
+            return new Object[] {null, one};
+        }
+
+        if (token instanceof Function) {
+            if (token != fused || children.size() != 3) return null;
+
+            Object[] product = parse(children.get(0)), factor = parse(children.get(1));
+            Object[] addend = parse(children.get(2));
+            if (product == null || factor == null || addend == null) return null;
+
+            product = multiply(product, factor);
+            return product == null ? null : add(product, addend);
+        }
+
+        if (children.size() == 1) {
+            Object[] operand = parse(children.get(0));
+            if (operand == null) return null;
+
+            if (is(node, "+", Operator.Type.PREFIX)) return operand;
+            if (is(node, "-", Operator.Type.PREFIX)) return negate(operand);
+
+            return null;
+        }
+
+        if (children.size() != 2) return null;
+
+        Object[] left = parse(children.get(0));
+        if (left == null) return null;
+
+        if (is(node, "^", Operator.Type.INFIX_RTL)) {
+            T value = constant(children.get(1));
+            return value != null ? power(left, exponent.applyAsInt(value)) : null;
+        }
+
+        Object[] right = parse(children.get(1));
+        if (right == null) return null;
+
+        if (is(node, "+", Operator.Type.INFIX)) return add(left, right);
+        if (is(node, "-", Operator.Type.INFIX)) return add(left, negate(right));
+        if (is(node, "*", Operator.Type.INFIX)) return multiply(left, right);
+
+        return null;
+    }
+
+    private Node operator(String label, Node... children) {
+        Node node = new Node((Operator<T>) dictionary.getOperator(label, Operator.Type.INFIX));
+        node.getChildren().addAll(Arrays.asList(children));
+        return node;
+    }
+
+    private Node constant(Object value) {
+        return new Node(new Operand<>((T) value));
+    }
+
+    /**
+     * Builds the Horner form of the given coefficients, using the fused
+     * multiply-add call, if any, for every multiply-add step.
+     *
+     * @return Horner form, or {@code null} if the polynomial has degree below
+     *         two
+     */
+    Node horner(Object[] terms) {
+        int n = terms.length - 1;
+        while (n >= 0 && terms[n] == null) n--;
+
+        if (n < 2 || variable == null) return null;
+
+        if (!(dictionary.getOperator("*", Operator.Type.INFIX) instanceof Operator) ||
+                !(dictionary.getOperator("+", Operator.Type.INFIX) instanceof Operator))
+            return null;
+
+        Node horner = one.equals(terms[n]) ? null : constant(terms[n]);
+
+        for (int k = n - 1; k >= 0; k--) {
+            if (terms[k] == null) {
+                horner = horner == null ? variable : operator("*", horner, variable);
+                continue;
+            }
+
+            if (horner != null && fused != null) {
+                Node node = new Node(fused);
+                node.getChildren().addAll(Arrays.asList(horner, variable, constant(terms[k])));
+
+                horner = node;
+                continue;
+            }
+
+            Node product = horner == null ? variable : operator("*", horner, variable);
+            horner = operator("+", product, constant(terms[k]));
+        }
+
+        return horner;
+    }
+
+    /**
+     * Tells whether two subtrees have the same shape, tokens and values.
+     */
+    static boolean same(Node left, Node right) {
+        Token a = left.getToken(), b = right.getToken();
+
+        if (a instanceof Operand) {
+            if (!(b instanceof Operand)) return false;
+            return ((Operand<?>) a).getValue().equals(((Operand<?>) b).getValue());
+        }
+
+        if (a instanceof Variable)
+            return b instanceof Variable && a.getLabel().equals(b.getLabel());
+
+        if (a != b) return false;
+
+        List<Node> l = left.getChildren(), r = right.getChildren();
+        if (l == null || r == null) return l == r;
+        if (l.size() != r.size()) return false;
+
+        for (int i = 0; i < l.size(); i++)
+            if (!same(l.get(i), r.get(i))) return false;
+
+        return true;
+    }
+}
@@ -0,0 +1,332 @@
+package me.croabeast.expr4j;
+
+import lombok.experimental.UtilityClass;
+import me.croabeast.expr4j.expression.Dictionary;
+import me.croabeast.expr4j.expression.Node;
+import me.croabeast.expr4j.expression.Rule;
+import me.croabeast.expr4j.token.*;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Convenience factory for common simplification {@link Rule rules}. Rules
+ * recognize operations by the labels registered through {@link Operations}
+ * and only match nodes holding the operator currently registered in the
+ * dictionary, so replacing a symbol with a custom operation disables the
+ * rules relying on it.
+ *
+ * <p>Domain knowledge, such as which values count as zero or one, is supplied
+ * by the caller. Builders register the rules that keep their own exactness
+ * guarantees; see {@link Dictionary#addRule(Rule)}.</p>
+ */
+@UtilityClass
+public class Rules {
+
+    private boolean is(Node node, Dictionary<?> dictionary, String label, Operator.Type type) {
+        Token token = node.getToken();
+        if (!(token instanceof Operator)) return false;
+
+        Operator<?> operator = (Operator<?>) token;
+        return operator.getType() == type && operator.getLabel().equals(label) &&
+                dictionary.getOperator(label, type) == operator;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T constant(Node node, Dictionary<T> dictionary) {
+        Token token = node.getToken();
+
+        if (token instanceof Operand) return ((Operand<T>) token).getValue();
+        if (token instanceof Variable) return dictionary.getConstant(token.getLabel());
+
+        return null;
+    }
+
+    private <T> boolean matches(Node node, Dictionary<T> dictionary, Predicate<T> predicate) {
+        T value = constant(node, dictionary);
+        return value != null && predicate.test(value);
+    }
+
+    private boolean isPure(Node node) {
+        List<Node> children = node.getChildren();
+        if (children == null) return true;
+
+        Token token = node.getToken();
+        if (!(token instanceof Operation) || !((Operation<?>) token).getCharacteristics().isPure())
+            return false;
+
+        for (Node child : children)
+            if (!isPure(child)) return false;
+
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Node operator(Dictionary<T> dictionary, String label, Operator.Type type, Node... children) {
+        Operation<T> operation = dictionary.getOperator(label, type);
+        if (!(operation instanceof Operator)) return null;
+
+        Node node = new Node((Operator<T>) operation);
+        for (Node child : children) node.getChildren().add(child);
+
+        return node;
+    }
+
+    /**
+     * Creates a rule removing neutral elements and redundant signs:
+     * {@code x*1}, {@code 1*x}, {@code x/1}, {@code x-0}, {@code x^1},
+     * {@code +x} and {@code --x} all become {@code x}. Additions of zero are
+     * kept, since {@code -0 + 0} is {@code 0} in IEEE 754 arithmetic.
+     *
+     * @param zero tells whether a constant is the additive identity
+     * @param one  tells whether a constant is the multiplicative identity
+     * @param <T>  value type of the expression
+     * @return identity removal rule
+     */
+    public <T> Rule<T> identities(Predicate<T> zero, Predicate<T> one) {
+        return (node, dictionary) -> {
+            List<Node> children = node.getChildren();
+            if (children == null) return null;
+
+            if (children.size() == 1) {
+                Node child = children.get(0);
+
+                if (is(node, dictionary, "+", Operator.Type.PREFIX))
+                    return child;
+
+                if (is(node, dictionary, "-", Operator.Type.PREFIX) &&
+                        is(child, dictionary, "-", Operator.Type.PREFIX))
+                    return child.getChildren().get(0);
+
+                return null;
+            }
+
+            if (children.size() != 2) return null;
+            Node left = children.get(0), right = children.get(1);
+
+            if (is(node, dictionary, "*", Operator.Type.INFIX)) {
+                if (matches(right, dictionary, one)) return left;
+                if (matches(left, dictionary, one)) return right;
+            }
+            else if (is(node, dictionary, "/", Operator.Type.INFIX)) {
+                if (matches(right, dictionary, one)) return left;
+            }
+            else if (is(node, dictionary, "-", Operator.Type.INFIX)) {
+                if (matches(right, dictionary, zero)) return left;
+            }
+            else if (is(node, dictionary, "^", Operator.Type.INFIX_RTL)) {
+                if (matches(right, dictionary, one)) return left;
+            }
+
+            return null;
+        };
+    }
+
+    /**
+     * Creates a rule collapsing {@code x*0} and {@code 0*x} into {@code 0}
+     * when {@code x} is pure. Only suitable for domains without infinities or
+     * NaN, since the result of {@code x} is no longer computed.
+     *
+     * @param zero tells whether a constant is the absorbing element
+     * @param <T>  value type of the expression
+     * @return annihilation rule
+     */
+    public <T> Rule<T> annihilation(Predicate<T> zero) {
+        return (node, dictionary) -> {
+            if (!is(node, dictionary, "*", Operator.Type.INFIX)) return null;
+
+            List<Node> children = node.getChildren();
+            Node left = children.get(0), right = children.get(1);
+
+            if (matches(right, dictionary, zero) && isPure(left)) return right;
+            if (matches(left, dictionary, zero) && isPure(right)) return left;
+
+            return null;
+        };
+    }
+
+    /**
+     * Creates a rule turning {@code x^n}, for a constant integer {@code n}
+     * between {@code 2} and {@code max}, into a chain of multiplications
+     * computed by repeated squaring. The intermediate powers are shared nodes,
+     * so {@code x^8} costs three multiplications. Only applies when {@code x}
+     * is pure.
+     *
+     * @param max      largest exponent to expand
+     * @param exponent returns the integer value of a constant exponent, or a
+     *                 negative value if it is not a non-negative integer
+     * @param <T>      value type of the expression
+     * @return integer power rule
+     */
+    public <T> Rule<T> integerPowers(int max, ToIntFunction<T> exponent) {
+        return (node, dictionary) -> {
+            if (!is(node, dictionary, "^", Operator.Type.INFIX_RTL)) return null;
+
+            List<Node> children = node.getChildren();
+            Node base = children.get(0);
+
+            T value = constant(children.get(1), dictionary);
+            if (value == null || !isPure(base)) return null;
+
+            int n = exponent.applyAsInt(value);
+            return n >= 2 && n <= max ? power(dictionary, base, n) : null;
+        };
+    }
+
+    private <T> Node power(Dictionary<T> dictionary, Node base, int n) {
+        if (n == 1) return base;
+
+        Node half = power(dictionary, base, n / 2);
+        if (half == null) return null;
+
+        Node square = operator(dictionary, "*", Operator.Type.INFIX, half, half);
+        if (square == null || n % 2 == 0) return square;
+
+        return operator(dictionary, "*", Operator.Type.INFIX, square, base);
+    }
+
+    /**
+     * Creates a rule replacing the operation of {@code x^n}, for a constant
+     * integer {@code n} between {@code 2} and {@code max}, with a dedicated
+     * integer power. Meant for domains where a chain of rounded
+     * multiplications would lose accuracy.
+     *
+     * @param max      largest exponent to replace
+     * @param exponent returns the integer value of a constant exponent, or a
+     *                 negative value if it is not a non-negative integer
+     * @param power    computes {@code base^exponent} for the matched exponents
+     * @param <T>      value type of the expression
+     * @return integer power rule
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Rule<T> integerPowers(int max, ToIntFunction<T> exponent, BinaryOperation<T> power) {
+        return (node, dictionary) -> {
+            if (!is(node, dictionary, "^", Operator.Type.INFIX_RTL)) return null;
+
+            List<Node> children = node.getChildren();
+
+            T value = constant(children.get(1), dictionary);
+            if (value == null) return null;
+
+            int n = exponent.applyAsInt(value);
+            if (n < 2 || n > max) return null;
+
+            Operator<T> operator = (Operator<T>) node.getToken();
+            Node rewritten = new Node(new Operator<>(operator.getLabel(), operator.getType(),
+                    operator.getPrecedence(), power, Characteristics.pure().cost(8)));
+
+            rewritten.getChildren().addAll(children);
+            return rewritten;
+        };
+    }
+
+    /**
+     * Creates a rule turning {@code x / c}, for a constant {@code c}, into
+     * {@code x * (1/c)}. The result may differ from the division in the last
+     * digit, so it only suits domains where that rounding is acceptable.
+     *
+     * @param reciprocal computes {@code 1/c}
+     * @param <T>        value type of the expression
+     * @return reciprocal division rule
+     */
+    public <T> Rule<T> reciprocalDivision(UnaryOperation<T> reciprocal) {
+        return (node, dictionary) -> {
+            if (!is(node, dictionary, "/", Operator.Type.INFIX)) return null;
+
+            List<Node> children = node.getChildren();
+
+            T value = constant(children.get(1), dictionary);
+            if (value == null) return null;
+
+            Node inverse = new Node(new Operand<>(reciprocal.evaluate(value)));
+            return operator(dictionary, "*", Operator.Type.INFIX, children.get(0), inverse);
+        };
+    }
+
+    /**
+     * Creates a rule turning {@code sqrt(x)^2} into {@code x}. Only suitable
+     * for domains where the square root is defined for every operand.
+     *
+     * @param two tells whether a constant is two
+     * @param <T> value type of the expression
+     * @return square root cancellation rule
+     */
+    public <T> Rule<T> squareOfRoot(Predicate<T> two) {
+        return (node, dictionary) -> {
+            if (!is(node, dictionary, "^", Operator.Type.INFIX_RTL)) return null;
+
+            List<Node> children = node.getChildren();
+            Node base = children.get(0);
+
+            return is(base, dictionary, "sqrt", Operator.Type.PREFIX) &&
+                    matches(children.get(1), dictionary, two) ?
+                    base.getChildren().get(0) : null;
+        };
+    }
+
+    /**
+     * Creates a rule rewriting polynomials in a single variable, such as
+     * {@code 3x^3 + 2x^2 - x + 7}, in Horner form: one multiplication and one
+     * addition per degree and no power calls. When given a fused call, every
+     * multiply-add step goes through it instead, see
+     * {@link #fusedMultiplyAdd(Function)}.
+     *
+     * @param degree   largest degree to rewrite
+     * @param one      multiplicative identity of the domain
+     * @param exponent returns the integer value of a constant exponent, or a
+     *                 negative value if it is not a non-negative integer
+     * @param fused    fused multiply-add call, or {@code null} to use the
+     *                 operators of the dictionary
+     * @param <T>      value type of the expression
+     * @return polynomial rule
+     */
+    public <T> Rule<T> polynomials(int degree, T one, ToIntFunction<T> exponent, Function<T> fused) {
+        return (node, dictionary) -> {
+            if (node.getChildren() == null) return null;
+
+            Polynomial<T> polynomial = new Polynomial<>(dictionary, degree, one, exponent, fused);
+
+            Object[] terms = polynomial.parse(node);
+            if (terms == null) return null;
+
+            Node horner = polynomial.horner(terms);
+            return horner == null || Polynomial.same(horner, node) ? null : horner;
+        };
+    }
+
+    /**
+     * Creates a rule turning {@code a*b + c} and {@code c + a*b} into a call
+     * of the given fused multiply-add, created with
+     * {@link Operations#fusedMultiplyAdd(Operation)}. The call only exists in
+     * rewritten trees: it is not registered in the dictionary, so formulas
+     * cannot call it, and it is printed as {@code fma(a, b, c)}.
+     *
+     * @param fused fused multiply-add call computing {@code a*b + c}
+     * @param <T>   value type of the expression
+     * @return fused multiply-add rule
+     */
+    public <T> Rule<T> fusedMultiplyAdd(Function<T> fused) {
+        Objects.requireNonNull(fused);
+
+        return (node, dictionary) -> {
+            if (!is(node, dictionary, "+", Operator.Type.INFIX)) return null;
+
+            List<Node> children = node.getChildren();
+            Node product = children.get(0), addend = children.get(1);
+
+            if (!is(product, dictionary, "*", Operator.Type.INFIX)) {
+                product = children.get(1);
+                addend = children.get(0);
+
+                if (!is(product, dictionary, "*", Operator.Type.INFIX)) return null;
+            }
+
+            Node call = new Node(fused);
+            call.getChildren().addAll(product.getChildren());
+            call.getChildren().add(addend);
+            return call;
+        };
+    }
+}
@@ -0,0 +1,310 @@
+package me.croabeast.expr4j.expression;
+
+import lombok.Getter;
+import me.croabeast.expr4j.Operations;
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.token.*;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Columnar form of an {@link Expression} that evaluates many rows per call.
+ * Every variable is read from its own array column, indexed by the slots of
+ * {@link #getSchema()}, and results are written to a single output array.
+ * {@link DoubleBatch} is the primitive counterpart for {@code double}
+ * expressions.
+ *
+ * <p>Rows are processed in batches of {@link #getSize()} rows. For every
+ * batch the tree is walked once, and each {@link UnaryOperation} or
+ * {@link BinaryOperation} runs a loop over the whole batch. Intermediate
+ * columns are reused as soon as no other node needs them.</p>
+ *
+ * <p>Operations receiving lazy {@link Parameters} keep their short-circuit
+ * semantics: their subtrees are evaluated row by row through a
+ * {@link CompiledExpression}, so unused arguments are still never computed.
+ * Nodes shared by several parents are computed once per batch.</p>
+ *
+ * <p>Batches do not hold mutable state and can be shared between threads as
+ * long as the registered operations are thread-safe.</p>
+ *
+ * @param <T> result type produced by the expression
+ */
+@SuppressWarnings("unchecked")
+public final class Batch<T> {
+
+    /**
+     * Number of rows per batch used when none is given.
+     */
+    public static final int DEFAULT_SIZE = 256;
+
+    /**
+     * Variable layout the batch was compiled against. Column {@code i} holds
+     * the values of the variable in slot {@code i}.
+     */
+    @Getter
+    private final Schema<T> schema;
+
+    /**
+     * Number of rows evaluated per pass over the tree.
+     */
+    @Getter
+    private final int size;
+
+    private final Expression<T> expression;
+
+    private final List<Kernel> kernels = new ArrayList<>();
+
+    /**
+     * Intermediate columns: constants are filled once, the others are
+     * {@code null} and allocated for every call.
+     */
+    private final List<Object[]> registers;
+
+    /**
+     * Reference to the column holding the result.
+     */
+    private final int result;
+
+    /**
+     * Declared cost of evaluating a row, used to split parallel evaluations.
+     */
+    private final int cost;
+
+    /**
+     * Compiles the tree of the given expression into column loops.
+     *
+     * @param expression expression to compile
+     * @param size       number of rows per batch
+     * @throws Expr4jException if the size is not positive or the tree is
+     *                         missing or malformed
+     */
+    Batch(Expression<T> expression, int size) {
+        if (size < 1)
+            throw new Expr4jException("Invalid batch size: " + size);
+
+        Node root = expression.getRoot();
+        if (root == null)
+            throw new Expr4jException("Root node not defined");
+
+        this.expression = expression;
+        this.schema = expression.getSchema();
+        this.size = size;
+
+        Compiler compiler = new Compiler();
+        this.result = compiler.plan(root);
+        this.registers = compiler.getRegisters();
+        this.cost = Split.cost(root);
+    }
+
+    /**
+     * Returns the column of a reference, see {@link Planner}.
+     */
+    private static Object[] column(int reference, Object[][] registers, Object[][] columns) {
+        return reference >= 0 ? registers[reference] : columns[~reference];
+    }
+
+    private Object[][] registers() {
+        Object[][] registers = this.registers.toArray(new Object[0][]);
+        for (int i = 0; i < registers.length; i++)
+            if (registers[i] == null) registers[i] = new Object[size];
+
+        return registers;
+    }
+
+    private Object[][] validate(T[][] columns, int rows) {
+        if (columns.length < schema.size())
+            throw new Expr4jException("Expected " + schema.size() + " columns, got " + columns.length);
+
+        Object[][] values = Arrays.copyOf(columns, schema.size(), Object[][].class);
+
+        for (int s = 0; s < values.length; s++) {
+            String name = schema.getNames().get(s);
+            if (values[s] == null)
+                throw new Expr4jException("Variable not found: " + name);
+
+            if (values[s].length < rows)
+                throw new Expr4jException("Column " + name + " has " + values[s].length + " rows, expected " + rows);
+
+            for (int i = 0; i < rows; i++)
+                if (values[s][i] == null)
+                    throw new Expr4jException("Variable not found: " + name);
+        }
+
+        return values;
+    }
+
+    /**
+     * Evaluates the expression for every row of the result array.
+     *
+     * @param columns variable columns ordered by schema slot, each holding at
+     *                least as many rows as {@code results}
+     * @param results array receiving the result of every row
+     * @throws Expr4jException if a column is missing, too short or holds a
+     *                         {@code null} value
+     */
+    public void evaluate(T[][] columns, T[] results) {
+        int rows = results.length;
+        evaluate(validate(columns, rows), results, 0, rows);
+    }
+
+    /**
+     * Evaluates the rows of a range with intermediate columns of its own.
+     */
+    private void evaluate(Object[][] columns, T[] results, int from, int to) {
+        Object[][] registers = registers();
+
+        for (int offset = from; offset < to; offset += size) {
+            int length = Math.min(size, to - offset);
+            for (Kernel kernel : kernels) kernel.run(registers, columns, offset, length);
+
+            Object[] column = column(result, registers, columns);
+            int start = Planner.offset(result, offset);
+
+            for (int i = 0; i < length; i++) results[offset + i] = (T) column[start + i];
+        }
+    }
+
+    /**
+     * Evaluates the expression for every row of the result array, splitting
+     * the rows across the given pool. The number of rows per task adapts to
+     * the measured cost of a row, and tasks only share the input columns and
+     * write to disjoint ranges of {@code results}.
+     *
+     * @param columns variable columns ordered by schema slot, each holding at
+     *                least as many rows as {@code results}
+     * @param results array receiving the result of every row
+     * @param pool    pool running the tasks, such as
+     *                {@link ForkJoinPool#commonPool()}
+     * @throws Expr4jException if a column is missing, too short or holds a
+     *                         {@code null} value
+     */
+    public void evaluate(T[][] columns, T[] results, ForkJoinPool pool) {
+        int rows = results.length;
+        Object[][] values = validate(columns, rows);
+
+        if (rows > 0) Split.run(pool, rows, cost, (from, to) -> evaluate(values, results, from, to));
+    }
+
+    /**
+     * Evaluates the expression for every row of the result array, reading
+     * the variable columns from a map. Columns named after a constant
+     * override it through a batch compiled for the call, see
+     * {@link Expression#overriddenBy(Map)}.
+     *
+     * @param columns mapping of variable names to their columns
+     * @param results array receiving the result of every row
+     * @throws Expr4jException if a column is missing, too short or holds a
+     *                         {@code null} value
+     */
+    public void evaluate(Map<String, T[]> columns, T[] results) {
+        Expression<T> expression = this.expression.overriddenBy(columns);
+        if (expression != this.expression) {
+            expression.toBatch(size).evaluate(columns, results);
+            return;
+        }
+
+        List<String> names = schema.getNames();
+        Object[][] values = new Object[names.size()][];
+
+        for (int s = 0; s < values.length; s++) {
+            values[s] = columns == null ? null : columns.get(names.get(s));
+            if (values[s] == null)
+                throw new Expr4jException("Variable not found: " + names.get(s));
+        }
+
+        evaluate((T[][]) values, results);
+    }
+
+    @Override
+    public String toString() {
+        return expression.toString();
+    }
+
+    /**
+     * Plans the tree into loops over {@code Object[]} columns. Only
+     * {@link UnaryOperation} and {@link BinaryOperation} run column by
+     * column.
+     */
+    private final class Compiler extends Planner<T, Object[]> {
+
+        private Compiler() {
+            super(schema);
+        }
+
+        @Override
+        boolean isEager(Operation<T> operation, int count) {
+            return (count == 1 && Operations.isDirect(operation, UnaryOperation.class)) ||
+                    (count == 2 && Operations.isDirect(operation, BinaryOperation.class));
+        }
+
+        @Override
+        Object[] constant(T value) {
+            Object[] column = new Object[size];
+            Arrays.fill(column, value);
+            return column;
+        }
+
+        @Override
+        void lazy(Node node, int target) {
+            CompiledExpression<T> compiled = new CompiledExpression<>(expression, node);
+
+            kernels.add((registers, columns, offset, length) -> {
+                Object[] results = registers[target];
+                Bindings<T> bindings = schema.bindings();
+
+                for (int i = 0; i < length; i++) {
+                    for (int s = 0; s < columns.length; s++)
+                        bindings.set(s, (T) columns[s][offset + i]);
+
+                    results[i] = compiled.evaluate(bindings);
+                }
+            });
+        }
+
+        @Override
+        void eager(Operation<T> operation, int[] arguments, int target) {
+            if (arguments.length == 1) {
+                UnaryOperation<T> unary = (UnaryOperation<T>) operation;
+                int operand = arguments[0];
+
+                kernels.add((registers, columns, offset, length) -> {
+                    Object[] values = column(operand, registers, columns), results = registers[target];
+                    int from = offset(operand, offset);
+
+                    for (int i = 0; i < length; i++)
+                        results[i] = unary.evaluate((T) values[from + i]);
+                });
+                return;
+            }
+
+            BinaryOperation<T> binary = (BinaryOperation<T>) operation;
+            int left = arguments[0], right = arguments[1];
+
+            kernels.add((registers, columns, offset, length) -> {
+                Object[] a = column(left, registers, columns), b = column(right, registers, columns);
+                Object[] results = registers[target];
+                int l = offset(left, offset), r = offset(right, offset);
+
+                for (int i = 0; i < length; i++)
+                    results[i] = binary.evaluate((T) a[l + i], (T) b[r + i]);
+            });
+        }
+    }
+
+    /**
+     * Loop computing one node for every row of a batch.
+     */
+    @FunctionalInterface
+    private interface Kernel {
+
+        /**
+         * @param registers intermediate columns
+         * @param columns   variable columns
+         * @param offset    index of the first row of the batch in the variable
+         *                  columns
+         * @param length    number of rows in the batch
+         */
+        void run(Object[][] registers, Object[][] columns, int offset, int length);
+    }
+}
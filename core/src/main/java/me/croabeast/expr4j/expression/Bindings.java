@@ -0,0 +1,157 @@
+package me.croabeast.expr4j.expression;
+
+import lombok.Getter;
+import me.croabeast.expr4j.exception.Expr4jException;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Reusable variable values laid out according to a {@link Schema}. Values are
+ * stored in a plain array indexed by slot, so evaluating with bindings does
+ * not perform any map lookups or copies.
+ *
+ * <p>Bindings are mutable and not thread-safe; use one instance per thread
+ * when evaluating concurrently.</p>
+ *
+ * @param <T> value type of the variables
+ */
+@SuppressWarnings("unchecked")
+public class Bindings<T> {
+
+    /**
+     * Schema describing which variable each slot holds.
+     */
+    @Getter
+    private final Schema<T> schema;
+
+    private final Object[] values;
+
+    /**
+     * Values of the shared nodes computed so far by the current evaluation,
+     * or {@code null} outside of one.
+     */
+    private final Object[] memo;
+
+    Bindings(Schema<T> schema) {
+        this.schema = schema;
+        this.values = new Object[schema.size()];
+        this.memo = null;
+    }
+
+    private Bindings(Bindings<T> bindings) {
+        this.schema = bindings.schema;
+        this.values = bindings.values;
+        this.memo = new Object[schema.shares()];
+    }
+
+    /**
+     * Assigns the value of the variable stored in the given slot.
+     *
+     * @param slot  slot index as reported by {@link Schema#slot(String)}
+     * @param value value to assign, or {@code null} to unset it
+     * @return this bindings for chaining
+     */
+    public Bindings<T> set(int slot, T value) {
+        values[slot] = value;
+        return this;
+    }
+
+    /**
+     * Assigns the value of a variable by name.
+     *
+     * @param name  variable name
+     * @param value value to assign, or {@code null} to unset it
+     * @return this bindings for chaining
+     * @throws Expr4jException if the name is not a free variable of the schema
+     */
+    public Bindings<T> set(String name, T value) {
+        int slot = schema.slot(name);
+        if (slot < 0)
+            throw new Expr4jException("Variable not found: " + name);
+
+        return set(slot, value);
+    }
+
+    /**
+     * Returns the value stored in the given slot.
+     *
+     * @param slot slot index
+     * @return stored value, or {@code null} if unset
+     */
+    public T get(int slot) {
+        return (T) values[slot];
+    }
+
+    /**
+     * Unsets every slot.
+     *
+     * @return this bindings for chaining
+     */
+    public Bindings<T> clear() {
+        Arrays.fill(values, null);
+        return this;
+    }
+
+    /**
+     * Returns the value of a slot for evaluation.
+     *
+     * @throws Expr4jException if the slot is unset
+     */
+    @NotNull
+    T value(int slot) {
+        Object value = values[slot];
+        if (value == null)
+            throw new Expr4jException("Variable not found: " + schema.getNames().get(slot));
+
+        return (T) value;
+    }
+
+    /**
+     * Returns a view of these bindings for a single evaluation, writing
+     * through to the same values, that remembers the values of shared nodes.
+     * Returns this instance if the schema has no shared nodes.
+     */
+    Bindings<T> frame() {
+        return schema.shares() > 0 ? new Bindings<>(this) : this;
+    }
+
+    /**
+     * Returns the value of a shared node, computing it with the given
+     * evaluator only the first time it is requested within this frame.
+     */
+    T share(int share, Evaluator<T> evaluator) {
+        if (memo == null) return evaluator.evaluate(this);
+
+        Object value = memo[share];
+        if (value == null) memo[share] = value = evaluator.evaluate(this);
+
+        return (T) value;
+    }
+
+    /**
+     * Returns the value of a shared node already computed within this frame,
+     * or {@code null} if it has not been computed yet.
+     */
+    T shared(int share) {
+        return memo == null ? null : (T) memo[share];
+    }
+
+    /**
+     * Remembers the value of a shared node for the rest of this frame.
+     */
+    void remember(int share, T value) {
+        if (memo != null) memo[share] = value;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) builder.append(", ");
+            builder.append(schema.getNames().get(i)).append('=').append(values[i]);
+        }
+
+        return builder.append('}').toString();
+    }
+}
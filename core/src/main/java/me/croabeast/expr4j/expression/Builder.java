@@ -1,12 +1,12 @@
 package me.croabeast.expr4j.expression;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import me.croabeast.expr4j.exception.Expr4jException;
 import me.croabeast.expr4j.token.*;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.List;
-import java.util.Stack;
+import java.util.*;
 
 /**
  * Base class responsible for tokenizing, parsing and constructing
@@ -19,6 +19,10 @@ import java.util.Stack;
  * between builds unless {@link #reset()} is invoked, making it easy to prepare
  * reusable configurations for your application or plugin.</p>
  *
+ * <p>Builds do not share mutable state, so {@link #build(String)} can be
+ * called from several threads at once, as long as the dictionary and the
+ * options of the builder are not changed meanwhile.</p>
+ *
  * @param <T> computation type managed by the builder
  */
 @SuppressWarnings("unchecked")
@@ -30,7 +34,7 @@ public abstract class Builder<T> {
      * tokenization and evaluation. Builders refresh this instance when
      * {@link #reset()} is called.
      */
-    private Dictionary<T> dictionary = new Dictionary<>();
+    private volatile Dictionary<T> dictionary = new Dictionary<>();
 
     /**
      * Codec describing how to parse and render operands. Swapping this value
@@ -39,11 +43,30 @@ public abstract class Builder<T> {
     private final Codec<T> codec;
 
     /**
-     * Expression produced by the latest call to {@link #build(String)}. Stored
-     * so that helper methods can continue wiring nodes as the postfix notation
-     * is processed.
+     * Engine stamped on every expression built from now on. Defaults to the
+     * tree interpreter.
+     */
+    private volatile Engine engine = Engine.TREE;
+
+    /**
+     * Rewriting passes run on every built tree. All of them are disabled by
+     * default. The set is replaced rather than modified, so builds in progress
+     * keep reading a consistent one.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile Set<Optimization> optimizations = EnumSet.noneOf(Optimization.class);
+
+    /**
+     * Cache of built expressions, or {@code null} while caching is disabled.
      */
-    private Expression<T> expression;
+    private volatile ExpressionCache<T> cache;
+
+    /**
+     * Tokenizer of the current dictionary, which keeps its compiled patterns
+     * between builds.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile Tokenizer<T> tokenizer;
 
     /**
      * Creates a new builder and optionally initializes its dictionary.
@@ -66,6 +89,72 @@ public abstract class Builder<T> {
         this(codec, true);
     }
 
+    /**
+     * Selects how expressions built by this builder are evaluated.
+     *
+     * @param engine engine to use for subsequent builds
+     */
+    public void setEngine(Engine engine) {
+        this.engine = Objects.requireNonNull(engine);
+    }
+
+    /**
+     * Enables rewriting passes for subsequent builds.
+     *
+     * @param optimizations passes to enable
+     */
+    public void enable(Optimization... optimizations) {
+        Set<Optimization> set = EnumSet.noneOf(Optimization.class);
+        set.addAll(this.optimizations);
+        set.addAll(Arrays.asList(optimizations));
+        this.optimizations = set;
+    }
+
+    /**
+     * Disables rewriting passes for subsequent builds.
+     *
+     * @param optimizations passes to disable
+     */
+    public void disable(Optimization... optimizations) {
+        Set<Optimization> set = EnumSet.noneOf(Optimization.class);
+        set.addAll(this.optimizations);
+        set.removeAll(Arrays.asList(optimizations));
+        this.optimizations = set;
+    }
+
+    /**
+     * Tells whether a rewriting pass is enabled.
+     *
+     * @param optimization pass to check
+     * @return {@code true} if subsequent builds run the pass
+     */
+    public boolean isEnabled(Optimization optimization) {
+        return optimizations.contains(optimization);
+    }
+
+    /**
+     * Enables caching of built expressions, replacing the current cache if
+     * any. Building a source already cached with the same dictionary version,
+     * optimizations and engine skips parsing and optimizing: the caller gets
+     * its own copy of the cached expression, sharing the tree and compiled
+     * programs, so replacing its root or engine does not affect other callers.
+     *
+     * @param capacity maximum number of cached expressions
+     * @return new cache, exposing its statistics
+     * @throws Expr4jException if the capacity is not positive
+     */
+    @NotNull
+    public ExpressionCache<T> enableCache(int capacity) {
+        return cache = new ExpressionCache<>(capacity);
+    }
+
+    /**
+     * Disables caching of built expressions, dropping the current cache.
+     */
+    public void disableCache() {
+        cache = null;
+    }
+
     /**
      * Clears the underlying dictionary so new operators or functions can be
      * registered from scratch.
@@ -74,59 +163,73 @@ public abstract class Builder<T> {
         dictionary = new Dictionary<>();
     }
 
-    private boolean formTree(Node node, Token token) {
-        Token last = node.getToken();
-
-        List<Node> children = node.getChildren();
-        if (children == null) return false;
+    /**
+     * Builds the tree of a postfix sequence in one pass, keeping the nodes
+     * still waiting for a parent on a stack.
+     */
+    private Node formTree(List<Token> postfix) {
+        List<Node> stack = new ArrayList<>();
 
-        if (last instanceof Function) {
-            Function<T> function = (Function<T>) last;
+        for (Token token : postfix) {
+            Node node = new Node(token);
+            int count = 0;
 
-            if (!children.isEmpty() && formTree(children.get(0), token))
-                return true;
+            if (token instanceof Function)
+                count = ((Function<T>) token).getParameters();
 
-            if (children.size() < function.getParameters()) {
-                children.add(0, new Node(token));
-                return true;
+            else if (token instanceof Operator) {
+                Operator.Type type = ((Operator<T>) token).getType();
+                count = type == Operator.Type.INFIX || type == Operator.Type.INFIX_RTL ? 2 : 1;
             }
-        }
 
-        if (last instanceof Operator) {
-            Operator<T> operator = (Operator<T>) last;
-            Operator.Type type = operator.getType();
-
-            if (!children.isEmpty() && formTree(children.get(0), token))
-                return true;
+            int size = stack.size();
+            if (count > size)
+                throw new Expr4jException("Token tree not parsed correctly");
 
-            if (children.size() < (type == Operator.Type.INFIX || type == Operator.Type.INFIX_RTL ? 2 : 1)) {
-                children.add(0, new Node(token));
-                return true;
+            if (count > 0) {
+                List<Node> operands = stack.subList(size - count, size);
+                node.getChildren().addAll(operands);
+                operands.clear();
             }
+
+            stack.add(node);
         }
 
-        return false;
-    }
+        if (stack.size() > 1)
+            throw new Expr4jException("Token tree not parsed correctly");
 
-    private void formTree(Stack<Token> postfix) {
-        while (!postfix.isEmpty()) {
-            final Token token = postfix.pop();
+        return stack.isEmpty() ? null : stack.get(0);
+    }
 
-            if (expression.getRoot() == null) {
-                expression.setRoot(new Node(token));
-                continue;
-            }
+    private Tokenizer<T> tokenizer() {
+        Tokenizer<T> tokenizer = this.tokenizer;
+        Dictionary<T> dictionary = this.dictionary;
 
-            if (!formTree(expression.getRoot(), token))
-                throw new Expr4jException("Token tree not parsed correctly");
-        }
+        if (tokenizer != null && tokenizer.getDictionary() == dictionary) return tokenizer;
+        return this.tokenizer = new Tokenizer<>(dictionary, codec);
     }
 
     protected abstract void initialize();
 
+    /**
+     * Creates the empty expression every build fills. Builders returning a
+     * specialized {@link Expression} override it, so cached instances already
+     * have that type.
+     *
+     * @param dictionary dictionary the expression is built with
+     * @return new expression using the given dictionary and the codec of this
+     *         builder
+     */
+    @NotNull
+    protected Expression<T> newExpression(Dictionary<T> dictionary) {
+        return new Expression<>(dictionary, codec);
+    }
+
     /**
      * Parses the supplied textual expression into an executable
-     * {@link Expression} tree.
+     * {@link Expression} tree. While a cache is enabled, see
+     * {@link #enableCache(int)}, the expression may be a copy of one built by
+     * a previous call, sharing its read-only tree.
      *
      * @param expression input expression in infix notation
      * @return compiled expression ready to evaluate
@@ -134,30 +237,125 @@ public abstract class Builder<T> {
      */
     @NotNull
     public Expression<T> build(String expression) throws Expr4jException {
-        try {
-            Tokenizer<T> tokenizer = new Tokenizer<>(dictionary, codec);
-            List<Token> list = tokenizer.tokenize(expression);
+        ExpressionCache<T> cache = this.cache;
+        if (cache == null) return compile(expression);
+
+        Key key = new Key(expression, dictionary, engine, optimizations);
+        Expression<T> cached = cache.get(key, () -> compile(expression));
+
+        return cached.share(newExpression(cached.getDictionary()));
+    }
+
+    private Expression<T> compile(String source) {
+        Tokenizer<T> tokenizer = tokenizer();
+        Set<Optimization> optimizations = this.optimizations;
+
+        List<Token> list = tokenizer.tokenize(source);
+
+        Expression<T> expression = newExpression(tokenizer.getDictionary());
+        expression.setRoot(formTree(new Parser<T>().parse(list)));
+
+        if (optimizations.contains(Optimization.FOLD_CONSTANTS))
+            new ConstantFolder<>(expression).fold();
+
+        if (optimizations.contains(Optimization.SIMPLIFY)) {
+            new Simplifier<>(expression).simplify();
+
+            if (optimizations.contains(Optimization.FOLD_CONSTANTS))
+                new ConstantFolder<>(expression).fold();
+        }
+
+        if (optimizations.contains(Optimization.ELIMINATE_COMMON_SUBEXPRESSIONS))
+            new SubexpressionEliminator<T>().eliminate(expression);
+
+        expression.getSchema();
+        expression.setEngine(engine);
+        return expression;
+    }
+
+    /**
+     * Builds several named expressions into a single {@link Program}. Every
+     * expression is built as {@link #build(String)} does, then pure subtrees
+     * appearing in several of them are merged into shared nodes, whether
+     * {@link Optimization#ELIMINATE_COMMON_SUBEXPRESSIONS} is enabled or not.
+     *
+     * @param expressions input expressions in infix notation by output name,
+     *                    in the order the outputs are evaluated
+     * @return program evaluating every output in one pass
+     * @throws Expr4jException if there is no expression, or tokenization or
+     *                         parsing of one of them fails
+     */
+    @NotNull
+    public Program<T> build(Map<String, String> expressions) throws Expr4jException {
+        SubexpressionEliminator<T> eliminator = new SubexpressionEliminator<>();
+        Map<String, Node> outputs = new LinkedHashMap<>();
+
+        for (Map.Entry<String, String> entry : expressions.entrySet()) {
+            Expression<T> expression;
+            try {
+                expression = compile(entry.getValue());
+            } catch (Expr4jException e) {
+                throw new Expr4jException("Invalid output " + entry.getKey() + ": " + e.getMessage(), e);
+            }
 
-            this.expression = new Expression<>(dictionary, codec);
-            Parser<T> parser = new Parser<>();
-            formTree(parser.parse(list));
+            outputs.put(entry.getKey(), eliminator.eliminate(expression.getRoot()));
+        }
 
-            return this.expression;
+        return new Program<>(dictionary, codec, outputs);
+    }
+
+    /**
+     * Identifies a build: its source, the dictionary state and the options
+     * that shape the resulting tree.
+     */
+    private static final class Key {
+
+        private final String source;
+        private final Dictionary<?> dictionary;
+        private final long version;
+        private final int options;
+
+        private Key(String source, Dictionary<?> dictionary, Engine engine, Set<Optimization> optimizations) {
+            this.source = Objects.requireNonNull(source);
+            this.dictionary = dictionary;
+            this.version = dictionary.getVersion();
+
+            int options = engine.ordinal();
+            for (Optimization optimization : optimizations)
+                options |= 1 << optimization.ordinal() + 8;
+
+            this.options = options;
         }
-        finally {
-            this.expression = null;
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key key = (Key) o;
+            return dictionary == key.dictionary && version == key.version &&
+                    options == key.options && source.equals(key.source);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = source.hashCode();
+            result = 31 * result + System.identityHashCode(dictionary);
+            result = 31 * result + Long.hashCode(version);
+            return 31 * result + options;
         }
     }
 
     static class Parser<T> {
 
-        private Stack<Token> postfix, operatorStack;
-        private Stack<Integer> functionStack;
+        private List<Token> postfix;
+        private Deque<Token> operatorStack;
+        private Deque<Integer> functionStack;
 
         void resetStacks() {
-            postfix = new Stack<>();
-            operatorStack = new Stack<>();
-            functionStack = new Stack<>();
+            postfix = new ArrayList<>();
+            operatorStack = new ArrayDeque<>();
+            functionStack = new ArrayDeque<>();
         }
 
         Parser() {
@@ -180,7 +378,13 @@ public abstract class Builder<T> {
             validate(s == Separator.OPEN_BRACKET || s == Separator.COMMA, "Open bracket or comma");
         }
 
-        Stack<Token> parse(List<Token> tokenList) {
+        /**
+         * Converts infix tokens into postfix order with the shunting-yard
+         * algorithm. Prefix operators wait on the operator stack for their
+         * operand, and infix operators first pop the operators binding at
+         * least as tight, as told by {@link Operator#compareTo(Operator)}.
+         */
+        List<Token> parse(List<Token> tokenList) {
             resetStacks();
 
             boolean probableZeroFunction = false;
@@ -219,12 +423,13 @@ public abstract class Builder<T> {
 
                                     int parameters = functionStack.pop();
                                     if (function.getParameters() == -1)
-                                        function = new Function<>(function.getLabel(), parameters, function.getOperation());
+                                        function = new Function<>(function.getLabel(), parameters, function.getOperation(),
+                                                function.getCharacteristics());
 
                                     else if (function.getParameters() != parameters)
                                         throw new Expr4jException("Incorrect number of parameters for function: " + function.getLabel());
 
-                                    postfix.push(function);
+                                    postfix.add(function);
                                     flag = false;
                                     break;
                                 }
@@ -235,13 +440,13 @@ public abstract class Builder<T> {
                                     if (!operatorStack.isEmpty() &&
                                             (t = operatorStack.peek()) instanceof Operator &&
                                             ((Operator<T>) t).getType() == Operator.Type.PREFIX)
-                                        postfix.push(operatorStack.pop());
+                                        postfix.add(operatorStack.pop());
 
                                     flag = false;
                                     break;
                                 }
 
-                                postfix.push(operatorStack.pop());
+                                postfix.add(operatorStack.pop());
                             }
 
                             if (flag) throw new Expr4jException("Unmatched closing parenthesis");
@@ -254,7 +459,7 @@ public abstract class Builder<T> {
                             validateOpenSeparator(lastToken);
 
                             while (!operatorStack.isEmpty() && !(operatorStack.peek() instanceof Function))
-                                postfix.push(operatorStack.pop());
+                                postfix.add(operatorStack.pop());
 
                             validate(functionStack.isEmpty(), "Invalid empty function");
                             functionStack.push(functionStack.pop() + 1);
@@ -289,17 +494,13 @@ public abstract class Builder<T> {
 
                     switch (operator.getType()) {
                         case PREFIX:
-                            Token temp;
-                            while (!operatorStack.isEmpty() &&
-                                    (temp = operatorStack.peek()) instanceof Operator &&
-                                    operator.compareTo((Operator<T>) temp) > 0)
-                                postfix.push(operatorStack.pop());
+                            operatorStack.push(operator);
                             break;
 
                         case POSTFIX:
                             validate(lastToken == null, "Last token is null");
                             validateNotPostfix(lastToken);
-                            postfix.push(operator);
+                            postfix.add(operator);
                             break;
 
                         case INFIX:
@@ -309,6 +510,12 @@ public abstract class Builder<T> {
                             validateNotPostfix(lastToken);
                             validateOpenSeparator(lastToken);
 
+                            Token temp;
+                            while (!operatorStack.isEmpty() &&
+                                    (temp = operatorStack.peek()) instanceof Operator &&
+                                    operator.compareTo((Operator<T>) temp) > 0)
+                                postfix.add(operatorStack.pop());
+
                             operatorStack.push(operator);
                             break;
 
@@ -319,7 +526,7 @@ public abstract class Builder<T> {
                 }
 
                 else if (token instanceof Operand || token instanceof Variable) {
-                    postfix.push(token);
+                    postfix.add(token);
                     probableZeroFunction = false;
                 }
 
@@ -337,7 +544,7 @@ public abstract class Builder<T> {
                 if (temp instanceof Separator)
                     throw new Expr4jException("Dangling separator in expression");
 
-                postfix.push(operatorStack.pop());
+                postfix.add(operatorStack.pop());
             }
 
             return postfix;
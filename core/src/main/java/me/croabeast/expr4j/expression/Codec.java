@@ -34,6 +34,8 @@ public interface Codec<T> {
 
     /**
      * Supplies regex patterns that help the tokenizer detect literal tokens.
+     * Codecs overriding them without overriding {@link #scan(CharSequence, int)}
+     * are scanned with these patterns instead of the default recognizer.
      *
      * @return list of regex patterns ordered by priority
      */
@@ -44,4 +46,45 @@ public interface Codec<T> {
         list.add("\\d*\\.?\\d+");
         return list;
     }
+
+    /**
+     * Finds the end of the literal starting at the given index, so the
+     * tokenizer can recognize literals without regular expressions. The
+     * default implementation accepts the decimal numbers described by the
+     * default {@link #getPatterns()}: an optional fraction such as
+     * {@code 1.5} or {@code .5}, and an exponent such as {@code 2e5},
+     * {@code 2e-5} or {@code 2e+5} after an integer part.
+     *
+     * @param text  text being tokenized
+     * @param index position the literal would start at
+     * @return position right after the literal, or {@code index} if there is
+     *         no literal there
+     */
+    default int scan(@NotNull CharSequence text, int index) {
+        int length = text.length(), i = index;
+        if (i + 1 < length && text.charAt(i) == '-' && text.charAt(i + 1) >= '0' && text.charAt(i + 1) <= '9') i++;
+
+        int start = i;
+        while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') i++;
+
+        boolean integer = i > start;
+        if (i + 1 < length && text.charAt(i) == '.' && text.charAt(i + 1) >= '0' && text.charAt(i + 1) <= '9') {
+            i += 2;
+            while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') i++;
+        }
+        else if (!integer) return index;
+
+        if (integer && i + 1 < length && text.charAt(i) == 'e') {
+            int exponent = i + 1;
+            char c = text.charAt(exponent);
+            if ((c == '-' || c == '+') && exponent + 1 < length) c = text.charAt(++exponent);
+
+            if (c >= '0' && c <= '9') {
+                i = exponent + 1;
+                while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') i++;
+            }
+        }
+
+        return i;
+    }
 }
@@ -0,0 +1,240 @@
+package me.croabeast.expr4j.expression;
+
+import lombok.Getter;
+import me.croabeast.expr4j.Operations;
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.token.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executable form of an {@link Expression} where the syntax tree has been
+ * turned into a tree of pre-resolved {@link Evaluator} closures. Token types,
+ * operation delegates and arities are resolved once while compiling, so every
+ * evaluation only runs the operations themselves.
+ *
+ * <p>Operations implementing {@link UnaryOperation} or {@link BinaryOperation}
+ * without overriding {@link Operation#evaluate(Parameters)} are called
+ * directly with their operand values. Any other operation still receives lazy
+ * {@link Parameters}, keeping the same short-circuit semantics offered by the
+ * tree interpreter.</p>
+ *
+ * <p>Nodes shared by several parents are compiled once and computed at most
+ * once per evaluation.</p>
+ *
+ * <p>Compiled expressions do not hold mutable state and can be shared between
+ * threads as long as the registered operations are thread-safe.</p>
+ *
+ * @param <T> result type produced by the expression
+ */
+@SuppressWarnings("unchecked")
+public class CompiledExpression<T> {
+
+    /**
+     * Expression this instance was compiled from. Kept to expose its
+     * dictionary, codec and textual representation, and to evaluate maps
+     * overriding its constants.
+     */
+    @Getter
+    private final Expression<T> expression;
+
+    private final Node root;
+
+    /**
+     * Variable layout the evaluator was compiled against. Variables are read
+     * straight from their slot and constants are embedded as values.
+     */
+    @Getter
+    private final Schema<T> schema;
+
+    /**
+     * Evaluator compiled from the root node of the expression.
+     */
+    private final Evaluator<T> evaluator;
+
+    /**
+     * Evaluators of the nodes shared by several parents, only used while
+     * compiling.
+     */
+    private final Map<Node, Evaluator<T>> shares = new IdentityHashMap<>();
+
+    /**
+     * Compiles the tree of the given expression.
+     *
+     * @param expression expression to compile
+     * @throws Expr4jException if the tree is missing or malformed
+     */
+    CompiledExpression(Expression<T> expression) {
+        this(expression, expression.getRoot());
+    }
+
+    /**
+     * Compiles a subtree of the given expression against its schema.
+     *
+     * @param expression expression owning the subtree
+     * @param root       root of the subtree
+     * @throws Expr4jException if the subtree is missing or malformed
+     */
+    CompiledExpression(Expression<T> expression, Node root) {
+        this.expression = expression;
+        this.root = root;
+
+        if (root == null)
+            throw new Expr4jException("Root node not defined");
+
+        this.schema = expression.getSchema();
+        this.evaluator = compile(root);
+        shares.clear();
+    }
+
+    /**
+     * Returns the evaluator of the root, to be called with a frame of
+     * bindings created from {@link #getSchema()}.
+     */
+    Evaluator<T> evaluator() {
+        return evaluator;
+    }
+
+    private Evaluator<T> compile(Operation<T> token, List<Node> children) {
+        Evaluator<T>[] arguments = new Evaluator[children.size()];
+        for (int i = 0; i < arguments.length; i++)
+            arguments[i] = compile(children.get(i));
+
+        Operation<T> operation = Operations.resolve(token);
+
+        if (arguments.length == 1 && Operations.isDirect(operation, UnaryOperation.class)) {
+            UnaryOperation<T> unary = (UnaryOperation<T>) operation;
+            Evaluator<T> operand = arguments[0];
+            return bindings -> unary.evaluate(operand.evaluate(bindings));
+        }
+
+        if (arguments.length == 2 && Operations.isDirect(operation, BinaryOperation.class)) {
+            BinaryOperation<T> binary = (BinaryOperation<T>) operation;
+            Evaluator<T> left = arguments[0], right = arguments[1];
+            return bindings -> binary.evaluate(left.evaluate(bindings), right.evaluate(bindings));
+        }
+
+        return bindings -> {
+            Parameters<T> parameters = new Parameters<>();
+            for (Evaluator<T> argument : arguments)
+                parameters.add(new Parameter<>(argument, bindings));
+
+            return operation.evaluate(parameters);
+        };
+    }
+
+    private Evaluator<T> compile(Node node) {
+        if (node.getChildren() == null) return compute(node);
+
+        int share = schema.share(node);
+        if (share < 0) return compute(node);
+
+        Evaluator<T> evaluator = shares.get(node);
+        if (evaluator != null) return evaluator;
+
+        Evaluator<T> shared = compute(node);
+        evaluator = bindings -> bindings.share(share, shared);
+
+        shares.put(node, evaluator);
+        return evaluator;
+    }
+
+    private Evaluator<T> compute(Node node) {
+        Token token = node.getToken();
+        List<Node> children = node.getChildren();
+        String label = token.getLabel();
+
+        if (token instanceof Variable) {
+            int slot = schema.slot(label);
+            if (slot >= 0) return bindings -> bindings.value(slot);
+
+            T constant = schema.getConstant(label);
+            if (constant == null)
+                throw new Expr4jException("Variable not found: " + label);
+
+            return bindings -> constant;
+        }
+
+        if (token instanceof Function) {
+            Function<T> function = (Function<T>) token;
+            if (children == null || children.size() != function.getParameters())
+                throw new Expr4jException("Invalid function: " + label);
+
+            return compile(function, children);
+        }
+
+        if (token instanceof Operator) {
+            Operator<T> operator = (Operator<T>) token;
+            Operator.Type type = operator.getType();
+
+            int count = type == Operator.Type.INFIX || type == Operator.Type.INFIX_RTL ? 2 : 1;
+            if (children == null || children.size() != count)
+                throw new Expr4jException("Invalid operator: " + label);
+
+            return compile(operator, children);
+        }
+
+        if (!(token instanceof Operand))
+            throw new Expr4jException("Invalid token: " + token.getClass());
+
+        T value = ((Operand<T>) token).getValue();
+        return bindings -> value;
+    }
+
+    /**
+     * Evaluates the compiled expression using the provided variable
+     * assignments, matching {@link Expression#evaluate(Map)}. Entries named
+     * after a constant override it, see {@link Expression#overriddenBy(Map)}.
+     *
+     * @param variables mapping of variable names to values, may be {@code null}
+     * @return computed result of the expression
+     */
+    @NotNull
+    public T evaluate(Map<String, T> variables) {
+        Expression<T> expression = this.expression.overriddenBy(variables);
+        if (expression != this.expression)
+            return new CompiledExpression<>(expression, root).evaluate(variables);
+
+        return evaluator.evaluate(schema.bindings(variables).frame());
+    }
+
+    /**
+     * Evaluates the compiled expression using reusable slot-indexed bindings.
+     *
+     * @param bindings bindings created from {@link #getSchema()}
+     * @return computed result of the expression
+     * @throws Expr4jException if the bindings belong to another schema or a
+     *                         required variable is unset
+     */
+    @NotNull
+    public T evaluate(Bindings<T> bindings) {
+        if (bindings.getSchema() != schema)
+            throw new Expr4jException("Bindings do not match the expression schema");
+
+        return evaluator.evaluate(bindings.frame());
+    }
+
+    /**
+     * Evaluates the compiled expression relying solely on dictionary
+     * constants.
+     *
+     * @return computed result
+     */
+    @NotNull
+    public T evaluate() {
+        return evaluator.evaluate(schema.bindings().frame());
+    }
+
+    /**
+     * Returns the infix representation of the source expression.
+     *
+     * @return human-readable representation of the expression
+     */
+    @Override
+    public String toString() {
+        return expression.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package me.croabeast.expr4j.expression;
+
+import me.croabeast.expr4j.token.*;
+
+import java.util.List;
+
+/**
+ * Implements {@link Optimization#FOLD_CONSTANTS}. Subtrees whose leaves are
+ * all literals or dictionary constants are evaluated once and replaced by an
+ * {@link Operand} holding the result.
+ *
+ * <p>Only operations whose {@link Characteristics} declare them pure are
+ * folded, so {@code rand} and operations declaring nothing keep their
+ * subtree. So does any subtree whose evaluation fails, so the error is still
+ * reported when the expression is evaluated.</p>
+ *
+ * @param <T> value type of the expression
+ */
+@SuppressWarnings("unchecked")
+final class ConstantFolder<T> {
+
+    private final Expression<T> expression;
+    private final Bindings<T> bindings;
+
+    ConstantFolder(Expression<T> expression) {
+        this.expression = expression;
+        this.bindings = expression.getSchema().bindings();
+    }
+
+    private static boolean isPure(Token token) {
+        return token instanceof Operation && ((Operation<?>) token).getCharacteristics().isPure();
+    }
+
+    /**
+     * Folds the given subtree in place where possible.
+     *
+     * @return whether the subtree only depends on literals and constants
+     */
+    private boolean fold(Node node) {
+        Token token = node.getToken();
+
+        if (token instanceof Variable)
+            return expression.getSchema().slot(token.getLabel()) < 0;
+
+        List<Node> children = node.getChildren();
+        if (children == null) return token instanceof Operand;
+
+        boolean[] constants = new boolean[children.size()];
+        boolean constant = isPure(token);
+
+        for (int i = 0; i < constants.length; i++)
+            if (!(constants[i] = fold(children.get(i)))) constant = false;
+
+        if (constant) return true;
+
+        for (int i = 0; i < constants.length; i++) {
+            if (!constants[i]) continue;
+
+            Node folded = evaluate(children.get(i));
+            if (folded != null) children.set(i, folded);
+        }
+
+        return false;
+    }
+
+    private Node evaluate(Node node) {
+        if (node.getChildren() == null) return null;
+
+        try {
+            T value = expression.evaluate(node, bindings).getValue();
+            return value != null ? new Node(new Operand<>(value)) : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Folds the whole tree of the expression.
+     */
+    void fold() {
+        Node root = expression.getRoot();
+        if (root == null) return;
+
+        if (fold(root)) {
+            Node folded = evaluate(root);
+            if (folded != null) root = folded;
+        }
+
+        expression.setRoot(root);
+    }
+}
@@ -0,0 +1,294 @@
+package me.croabeast.expr4j.expression;
+
+import lombok.Getter;
+import me.croabeast.expr4j.Operations;
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.token.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Reusable evaluation state for an {@link Expression}. The syntax tree is
+ * flattened once into arrays, and the {@link Parameters} handed to every
+ * generic operation are created with the context and reused across calls.
+ * Evaluating through a context therefore allocates nothing besides the values
+ * produced by the domain operations themselves.
+ *
+ * <p>Contexts are not thread-safe. Either keep one context per thread, as
+ * {@link Expression#getContext()} does, or supply your own. Operations must
+ * not keep the received {@link Parameters} after returning, since the same
+ * instance is handed to them on the next evaluation.</p>
+ *
+ * <p>Nodes shared by several parents are flattened once and computed at most
+ * once per evaluation.</p>
+ *
+ * <p>A context reflects the tree of its expression at the moment it was
+ * created; replacing the root node requires a new context.</p>
+ *
+ * @param <T> result type produced by the expression
+ */
+@SuppressWarnings("unchecked")
+public final class Context<T> {
+
+    private static final int VALUE = 0, VARIABLE = 1, UNARY = 2, BINARY = 3, GENERIC = 4;
+
+    /**
+     * Schema the context reads variables with.
+     */
+    @Getter
+    private final Schema<T> schema;
+
+    private final Expression<T> expression;
+
+    private final int[] kinds, slots, shares;
+    private final int[][] children;
+    private final Object[] values;
+    private final Operation<T>[] operations;
+
+    private final Parameters<T>[] parameters;
+
+    /**
+     * Values of the shared nodes computed by the current evaluation.
+     */
+    private final Object[] memo;
+
+    private Bindings<T> bindings;
+    private boolean busy;
+
+    /**
+     * Flattens the tree of the given expression into a new context.
+     *
+     * @param expression expression to evaluate
+     * @throws Expr4jException if the tree is missing or malformed
+     */
+    public Context(Expression<T> expression) {
+        Node root = expression.getRoot();
+        if (root == null)
+            throw new Expr4jException("Root node not defined");
+
+        this.schema = expression.getSchema();
+        this.expression = expression;
+
+        List<Node> nodes = new ArrayList<>();
+        Map<Node, Integer> indices = new IdentityHashMap<>();
+        collect(root, nodes, indices);
+
+        int size = nodes.size();
+        this.kinds = new int[size];
+        this.slots = new int[size];
+        this.shares = new int[size];
+        this.children = new int[size][];
+        this.values = new Object[size];
+        this.operations = new Operation[size];
+
+        for (int i = 0; i < size; i++) {
+            Node node = nodes.get(i);
+            int count = define(i, node);
+
+            children[i] = new int[count];
+            for (int j = 0; j < count; j++)
+                children[i][j] = indices.get(node.getChildren().get(j));
+
+            shares[i] = count > 0 ? schema.share(node) : -1;
+        }
+
+        this.parameters = parameters();
+        this.memo = new Object[schema.shares()];
+    }
+
+    private Context(Context<T> context) {
+        this.schema = context.schema;
+        this.expression = context.expression;
+        this.kinds = context.kinds;
+        this.slots = context.slots;
+        this.shares = context.shares;
+        this.children = context.children;
+        this.values = context.values;
+        this.operations = context.operations;
+        this.parameters = parameters();
+        this.memo = new Object[context.memo.length];
+    }
+
+    /**
+     * Returns a new context sharing the flattened tree of this one, with
+     * evaluation state of its own.
+     */
+    Context<T> copy() {
+        return new Context<>(this);
+    }
+
+    /**
+     * Lists the nodes breadth first, giving nodes reachable from several
+     * parents a single index.
+     */
+    private static void collect(Node root, List<Node> nodes, Map<Node, Integer> indices) {
+        nodes.add(root);
+        indices.put(root, 0);
+
+        for (int i = 0; i < nodes.size(); i++) {
+            List<Node> children = nodes.get(i).getChildren();
+            if (children == null) continue;
+
+            for (Node child : children)
+                if (indices.putIfAbsent(child, nodes.size()) == null) nodes.add(child);
+        }
+    }
+
+    private int define(int index, Node node) {
+        Token token = node.getToken();
+        List<Node> children = node.getChildren();
+        String label = token.getLabel();
+
+        if (token instanceof Variable) {
+            int slot = schema.slot(label);
+            if (slot >= 0) {
+                kinds[index] = VARIABLE;
+                slots[index] = slot;
+                return 0;
+            }
+
+            T constant = schema.getConstant(label);
+            if (constant == null)
+                throw new Expr4jException("Variable not found: " + label);
+
+            values[index] = constant;
+            return 0;
+        }
+
+        int count;
+        if (token instanceof Function) {
+            count = ((Function<T>) token).getParameters();
+            if (children == null || children.size() != count)
+                throw new Expr4jException("Invalid function: " + label);
+        }
+        else if (token instanceof Operator) {
+            Operator.Type type = ((Operator<T>) token).getType();
+
+            count = type == Operator.Type.INFIX || type == Operator.Type.INFIX_RTL ? 2 : 1;
+            if (children == null || children.size() != count)
+                throw new Expr4jException("Invalid operator: " + label);
+        }
+        else if (token instanceof Operand) {
+            values[index] = ((Operand<T>) token).getValue();
+            return 0;
+        }
+        else throw new Expr4jException("Invalid token: " + token.getClass());
+
+        Operation<T> operation = Operations.resolve((Operation<T>) token);
+        operations[index] = operation;
+
+        if (count == 1 && Operations.isDirect(operation, UnaryOperation.class))
+            kinds[index] = UNARY;
+        else if (count == 2 && Operations.isDirect(operation, BinaryOperation.class))
+            kinds[index] = BINARY;
+        else kinds[index] = GENERIC;
+
+        return count;
+    }
+
+    private Parameters<T>[] parameters() {
+        Parameters<T>[] parameters = new Parameters[kinds.length];
+
+        for (int i = 0; i < kinds.length; i++) {
+            if (kinds[i] != GENERIC) continue;
+
+            Parameters<T> list = new Parameters<>();
+            for (int child : children[i])
+                list.add(new Parameter<>(current -> evaluate(child), null));
+
+            parameters[i] = list;
+        }
+
+        return parameters;
+    }
+
+    private T evaluate(int index) {
+        int share = shares[index];
+        if (share < 0) return compute(index);
+
+        Object value = memo[share];
+        if (value == null) memo[share] = value = compute(index);
+
+        return (T) value;
+    }
+
+    private T compute(int index) {
+        switch (kinds[index]) {
+            case VARIABLE:
+                return bindings.value(slots[index]);
+
+            case UNARY:
+                return ((UnaryOperation<T>) operations[index]).evaluate(evaluate(children[index][0]));
+
+            case BINARY:
+                int[] operands = children[index];
+                return ((BinaryOperation<T>) operations[index])
+                        .evaluate(evaluate(operands[0]), evaluate(operands[1]));
+
+            case GENERIC:
+                return operations[index].evaluate(parameters[index]);
+
+            default:
+                return (T) values[index];
+        }
+    }
+
+    /**
+     * Evaluates the expression with the given bindings. If the context is
+     * already evaluating on the current call stack, for example because an
+     * operation evaluates the same expression again, a temporary context is
+     * used instead.
+     *
+     * @param bindings bindings created from {@link #getSchema()}
+     * @return computed result of the expression
+     * @throws Expr4jException if the bindings belong to another schema or a
+     *                         required variable is unset
+     */
+    @NotNull
+    public T evaluate(Bindings<T> bindings) {
+        if (bindings.getSchema() != schema)
+            throw new Expr4jException("Bindings do not match the expression schema");
+
+        if (busy) return new Context<>(this).evaluate(bindings);
+
+        busy = true;
+        this.bindings = bindings;
+
+        try {
+            return evaluate(0);
+        }
+        finally {
+            Arrays.fill(memo, null);
+            this.bindings = null;
+            busy = false;
+        }
+    }
+
+    /**
+     * Evaluates the expression using the provided variable assignments.
+     * Entries named after a constant override it through a temporary
+     * context, see {@link Expression#overriddenBy(Map)}.
+     *
+     * @param variables mapping of variable names to values, may be {@code null}
+     * @return computed result of the expression
+     */
+    @NotNull
+    public T evaluate(Map<String, T> variables) {
+        Expression<T> expression = this.expression.overriddenBy(variables);
+        if (expression != this.expression)
+            return new Context<>(expression).evaluate(variables);
+
+        return evaluate(schema.bindings(variables));
+    }
+
+    /**
+     * Evaluates the expression relying solely on dictionary constants.
+     *
+     * @return computed result
+     */
+    @NotNull
+    public T evaluate() {
+        return evaluate(schema.bindings());
+    }
+}
@@ -1,6 +1,7 @@
 package me.croabeast.expr4j.expression;
 
 import lombok.Getter;
+import me.croabeast.expr4j.exception.Expr4jException;
 import me.croabeast.expr4j.token.Function;
 import me.croabeast.expr4j.token.Operation;
 import me.croabeast.expr4j.token.Operator;
@@ -39,6 +40,28 @@ public class Dictionary<T> {
     @Getter
     private final Map<String, T> constants = new TreeMap<>();
 
+    /**
+     * Rewrite rules applied in order by {@link Optimization#SIMPLIFY}.
+     * Builders register the rules that are exact enough for their domain.
+     */
+    @Getter
+    private final List<Rule<T>> rules = new ArrayList<>();
+
+    /**
+     * Symbolic derivative rules of custom functions and operators, keyed by
+     * the identity of the registered token.
+     */
+    private final Map<Operation<T>, Differentiation<T>> derivatives = new IdentityHashMap<>();
+
+    /**
+     * Number of changes made through the methods of this dictionary, so
+     * caches can tell whether what they derived from it is still current.
+     * Changes made directly on {@link #getConstants()} or {@link #getRules()}
+     * are not counted.
+     */
+    @Getter
+    private volatile long version;
+
     /**
      * Registers an operator so it can be parsed in expressions.
      *
@@ -63,6 +86,7 @@ public class Dictionary<T> {
                 break;
         }
 
+        version++;
         return this;
     }
 
@@ -79,6 +103,7 @@ public class Dictionary<T> {
             prefixes.remove(label);
             postfixes.remove(label);
             infixes.remove(label);
+            version++;
             return this;
         }
 
@@ -96,6 +121,7 @@ public class Dictionary<T> {
                 break;
         }
 
+        version++;
         return this;
     }
 
@@ -152,6 +178,7 @@ public class Dictionary<T> {
         Objects.requireNonNull(function);
 
         functions.put(function.getLabel(), function);
+        version++;
         return this;
     }
 
@@ -163,6 +190,7 @@ public class Dictionary<T> {
      */
     public Dictionary<T> removeFunction(String label) {
         functions.remove(label);
+        version++;
         return this;
     }
 
@@ -196,6 +224,7 @@ public class Dictionary<T> {
     public Dictionary<T> addConstant(String label, T constant) {
         Objects.requireNonNull(constant);
         constants.put(label, constant);
+        version++;
         return this;
     }
 
@@ -207,6 +236,7 @@ public class Dictionary<T> {
      */
     public Dictionary<T> removeConstant(String label) {
         constants.remove(label);
+        version++;
         return this;
     }
 
@@ -240,4 +270,137 @@ public class Dictionary<T> {
         executables.addAll(functions.keySet());
         return executables;
     }
+
+    /**
+     * Registers a simplification rule after the existing ones.
+     *
+     * @param rule rule to register
+     * @return this dictionary for chaining
+     */
+    public Dictionary<T> addRule(Rule<T> rule) {
+        Objects.requireNonNull(rule);
+        rules.add(rule);
+        version++;
+        return this;
+    }
+
+    /**
+     * Unregisters a simplification rule.
+     *
+     * @param rule rule to remove
+     * @return this dictionary for chaining
+     */
+    public Dictionary<T> removeRule(Rule<T> rule) {
+        rules.remove(rule);
+        version++;
+        return this;
+    }
+
+    /**
+     * Registers the symbolic derivative of a function or operator, used by
+     * {@link Expression#derivative(String)}. It replaces the built-in rule of
+     * the operations created by {@link me.croabeast.expr4j.Operations}.
+     *
+     * @param operation  function or operator as registered in this dictionary
+     * @param derivative derivative rule of the operation
+     * @return this dictionary for chaining
+     */
+    public Dictionary<T> addDerivative(Operation<T> operation, Differentiation<T> derivative) {
+        Objects.requireNonNull(operation);
+        Objects.requireNonNull(derivative);
+
+        derivatives.put(operation, derivative);
+        version++;
+        return this;
+    }
+
+    /**
+     * Unregisters the symbolic derivative of a function or operator.
+     *
+     * @param operation function or operator as registered in this dictionary
+     * @return this dictionary for chaining
+     */
+    public Dictionary<T> removeDerivative(Operation<T> operation) {
+        derivatives.remove(operation);
+        version++;
+        return this;
+    }
+
+    /**
+     * Retrieves the symbolic derivative registered for a function or
+     * operator.
+     *
+     * @param operation function or operator as registered in this dictionary
+     * @return registered rule, or {@code null} if there is none
+     */
+    @Nullable
+    public Differentiation<T> getDerivative(Operation<T> operation) {
+        return derivatives.get(operation);
+    }
+
+    /**
+     * Replaces a registered function with a copy caching up to the given
+     * number of results, see {@link MemoizedOperation}. Expressions built
+     * afterwards share the cache; those built before keep calling the
+     * original function. Memoizing the same function again returns its
+     * current cache.
+     *
+     * @param label    function identifier
+     * @param capacity maximum number of cached results
+     * @return cache of the function, exposing its statistics
+     * @throws Expr4jException if the function is not registered or not pure,
+     *                         or the capacity is not positive
+     */
+    @NotNull
+    public MemoizedOperation<T> memoizeFunction(String label, int capacity) {
+        Operation<T> token = getFunction(label);
+        if (!(token instanceof Function))
+            throw new Expr4jException("Function not found: " + label);
+
+        Function<T> function = (Function<T>) token;
+        if (function.getOperation() instanceof MemoizedOperation)
+            return (MemoizedOperation<T>) function.getOperation();
+
+        MemoizedOperation<T> memo = new MemoizedOperation<>(function, capacity);
+        Function<T> copy = new Function<>(label, function.getParameters(), memo, function.getCharacteristics());
+
+        addFunction(copy);
+        moveDerivative(function, copy);
+        return memo;
+    }
+
+    /**
+     * Replaces a registered operator with a copy caching up to the given
+     * number of results, as {@link #memoizeFunction(String, int)} does.
+     *
+     * @param label    operator symbol
+     * @param type     operator type
+     * @param capacity maximum number of cached results
+     * @return cache of the operator, exposing its statistics
+     * @throws Expr4jException if the operator is not registered or not pure,
+     *                         or the capacity is not positive
+     */
+    @NotNull
+    public MemoizedOperation<T> memoizeOperator(String label, Operator.Type type, int capacity) {
+        Operation<T> token = getOperator(label, type);
+        if (!(token instanceof Operator))
+            throw new Expr4jException("Operator not found: " + label);
+
+        Operator<T> operator = (Operator<T>) token;
+        if (operator.getOperation() instanceof MemoizedOperation)
+            return (MemoizedOperation<T>) operator.getOperation();
+
+        MemoizedOperation<T> memo = new MemoizedOperation<>(operator, capacity);
+        Operator<T> copy = new Operator<>(label, operator.getType(), operator.getPrecedence(), memo,
+                operator.getCharacteristics());
+
+        addOperator(copy);
+        moveDerivative(operator, copy);
+        return memo;
+    }
+
+    private void moveDerivative(Operation<T> from, Operation<T> to) {
+        Differentiation<T> derivative = derivatives.remove(from);
+        if (derivative != null) derivatives.put(to, derivative);
+    }
 }
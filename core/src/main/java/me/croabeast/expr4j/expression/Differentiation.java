@@ -0,0 +1,38 @@
+package me.croabeast.expr4j.expression;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Symbolic derivative rule of a function or operator, used by
+ * {@link Expression#derivative(String)} to apply the chain rule through a
+ * custom operation. Rules are registered per {@link Dictionary} with
+ * {@link Dictionary#addDerivative(me.croabeast.expr4j.token.Operation, Differentiation)}.
+ *
+ * <pre>{@code
+ * dictionary.addDerivative(hypot, (node, derivatives, d) -> d.divide(
+ *         d.add(d.multiply(d.operand(node, 0), derivatives[0]),
+ *               d.multiply(d.operand(node, 1), derivatives[1])),
+ *         node));
+ * }</pre>
+ *
+ * @param <T> value type of the expression
+ */
+@FunctionalInterface
+public interface Differentiation<T> {
+
+    /**
+     * Builds the derivative of a call from the derivatives of its operands.
+     * The rule must not modify the received nodes, but the returned subtree
+     * may reuse them.
+     *
+     * @param node           call to differentiate
+     * @param derivatives    derivative of every operand, in order, or
+     *                       {@code null} for operands not depending on the
+     *                       variable
+     * @param differentiator helper creating the nodes of the derivative
+     * @return derivative of the call, or {@code null} if it is zero
+     */
+    @Nullable
+    Node differentiate(@NotNull Node node, @Nullable Node[] derivatives, @NotNull Differentiator<T> differentiator);
+}
@@ -0,0 +1,404 @@
+package me.croabeast.expr4j.expression;
+
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.token.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the symbolic derivative of an expression tree with respect to one
+ * variable, for {@link Expression#derivative(String)}. The chain rule is
+ * applied bottom up: every operation combines the derivatives of its operands
+ * through the derivative rule of its token, and subtrees not depending on the
+ * variable have a derivative of {@code null}, standing for zero, so they
+ * never appear in the result.
+ *
+ * <p>Operations created by {@link me.croabeast.expr4j.Operations} have
+ * built-in rules, which only apply while the dictionary still holds them
+ * under their usual symbol. Any other operation depending on the variable
+ * needs a {@link Differentiation} registered with
+ * {@link Dictionary#addDerivative(Operation, Differentiation)}, which also
+ * replaces a built-in rule. Rounding operations and {@code n!} are piecewise
+ * constant and have a zero derivative; {@code max} and {@code min} are
+ * differentiated through {@code max(a, b) = (a + b + abs(a - b)) / 2}, which
+ * is undefined where operands are equal.</p>
+ *
+ * <p>The helpers creating nodes treat {@code null} as zero, so rules can
+ * combine derivatives without checking for it, and look operations up in the
+ * dictionary of the expression by their usual symbol.</p>
+ *
+ * @param <T> value type of the expression
+ */
+@SuppressWarnings("unchecked")
+public final class Differentiator<T> {
+
+    private final Dictionary<T> dictionary;
+    private final Codec<T> codec;
+    private final Schema<T> schema;
+    private final String variable;
+
+    private final Node root, one;
+
+    /**
+     * Copies of the source nodes and their derivatives, so the source tree is
+     * never modified by the passes simplifying the result.
+     */
+    private final Map<Node, Node> copies = new IdentityHashMap<>(), derivatives = new IdentityHashMap<>();
+
+    Differentiator(Expression<T> expression, String variable) {
+        Node root = expression.getRoot();
+        if (root == null)
+            throw new Expr4jException("Root node not defined");
+
+        this.dictionary = expression.getDictionary();
+        this.codec = expression.getCodec();
+        this.schema = expression.getSchema();
+        this.variable = variable;
+
+        this.root = copy(root);
+        this.one = number("1");
+    }
+
+    private Node copy(Node node) {
+        Node copy = copies.get(node);
+        if (copy != null) return copy;
+
+        copy = new Node(node.getToken());
+        List<Node> children = node.getChildren();
+        if (children != null)
+            for (Node child : children) copy.getChildren().add(copy(child));
+
+        copies.put(node, copy);
+        return copy;
+    }
+
+    /**
+     * Returns the derivative of the whole tree.
+     */
+    @NotNull
+    Node differentiate() {
+        Node derivative = differentiate(root);
+        return derivative != null ? derivative : number("0");
+    }
+
+    private Node differentiate(Node node) {
+        if (derivatives.containsKey(node)) return derivatives.get(node);
+
+        Node derivative = compute(node);
+        derivatives.put(node, derivative);
+        return derivative;
+    }
+
+    private Node compute(Node node) {
+        Token token = node.getToken();
+        List<Node> children = node.getChildren();
+
+        if (children == null)
+            return token instanceof Variable && token.getLabel().equals(variable) &&
+                    schema.slot(variable) >= 0 ? one : null;
+
+        Node[] derivatives = new Node[children.size()];
+        boolean constant = true;
+
+        for (int i = 0; i < derivatives.length; i++)
+            if ((derivatives[i] = differentiate(children.get(i))) != null) constant = false;
+
+        if (constant) return null;
+
+        Operation<T> registered = registered(token);
+        Differentiation<T> rule = token instanceof Operation ?
+                dictionary.getDerivative((Operation<T>) token) : null;
+
+        if (rule == null && registered != null)
+            rule = dictionary.getDerivative(registered);
+
+        if (rule != null)
+            return rule.differentiate(node, derivatives, this);
+
+        if (registered == null)
+            throw new Expr4jException("No derivative defined for: " + token.getLabel());
+
+        return builtIn(node, derivatives);
+    }
+
+    /**
+     * Returns the dictionary entry a token was parsed from, accepting the
+     * fixed-arity copies builders make of variadic functions and the powers
+     * {@link me.croabeast.expr4j.Rules#integerPowers(int, java.util.function.ToIntFunction, BinaryOperation)}
+     * rewrites under the same label and type, or {@code null} if the
+     * dictionary no longer holds it.
+     */
+    private Operation<T> registered(Token token) {
+        String label = token.getLabel();
+
+        if (token instanceof Function) {
+            Operation<T> function = dictionary.getFunction(label);
+
+            return function == token || function instanceof Function &&
+                    ((Function<T>) function).getOperation() == ((Function<T>) token).getOperation() ?
+                    function : null;
+        }
+
+        if (!(token instanceof Operator)) return null;
+
+        Operator.Type type = ((Operator<T>) token).getType();
+        Operation<T> operator = dictionary.getOperator(label, type);
+
+        return operator == token || operator != null && label.equals("^") && type == Operator.Type.INFIX_RTL ?
+                operator : null;
+    }
+
+    private Node builtIn(Node node, Node[] d) {
+        Token token = node.getToken();
+        String label = token.getLabel();
+        Node u = operand(node, 0);
+
+        if (token instanceof Operator) {
+            switch (((Operator<T>) token).getType()) {
+                case INFIX:
+                case INFIX_RTL:
+                    Node v = operand(node, 1);
+
+                    switch (label) {
+                        case "+": return add(d[0], d[1]);
+                        case "-": return subtract(d[0], d[1]);
+                        case "*": return add(multiply(d[0], v), multiply(u, d[1]));
+                        case "/":
+                            return d[1] == null ?
+                                    divide(d[0], v) :
+                                    divide(subtract(multiply(d[0], v), multiply(u, d[1])), multiply(v, v));
+                        case "%":
+                            Node quotient = divide(subtract(u, node), v);
+                            return subtract(d[0], multiply(d[1], quotient));
+                        case "^":
+                            if (d[1] == null)
+                                return multiply(multiply(v, power(u, subtract(v, one))), d[0]);
+
+                            Node logarithm = multiply(d[1], call("ln", u));
+                            return multiply(node, d[0] == null ?
+                                    logarithm :
+                                    add(logarithm, divide(multiply(v, d[0]), u)));
+                    }
+                    break;
+
+                case POSTFIX:
+                    if (label.equals("!")) return null;
+                    break;
+
+                default:
+                    return prefix(label, node, u, d[0]);
+            }
+        }
+        else {
+            switch (label) {
+                case "deg":
+                case "rad":
+                    return call(label, d[0]);
+                case "exp": return multiply(node, d[0]);
+                case "log":
+                    Node base = call("ln", u), value = call("ln", operand(node, 1));
+                    Node numerator = subtract(
+                            multiply(divide(d[1], operand(node, 1)), base),
+                            multiply(value, divide(d[0], u))
+                    );
+                    return divide(numerator, multiply(base, base));
+                case "mean":
+                case "average":
+                    Node sum = null;
+                    for (Node derivative : d) sum = add(sum, derivative);
+                    return divide(sum, number(String.valueOf(d.length)));
+                case "max": return extremum(node, d, true);
+                case "min": return extremum(node, d, false);
+            }
+        }
+
+        throw new Expr4jException("No derivative defined for: " + label);
+    }
+
+    private Node prefix(String label, Node node, Node u, Node du) {
+        switch (label) {
+            case "+": return du;
+            case "-": return negate(du);
+            case "abs": return multiply(divide(u, node), du);
+            case "sin": return multiply(call("cos", u), du);
+            case "cos": return negate(multiply(call("sin", u), du));
+            case "tan": return divide(du, square(call("cos", u)));
+            case "asin": return divide(du, call("sqrt", subtract(one, square(u))));
+            case "acos": return negate(divide(du, call("sqrt", subtract(one, square(u)))));
+            case "atan": return divide(du, add(one, square(u)));
+            case "sinh": return multiply(call("cosh", u), du);
+            case "cosh": return multiply(call("sinh", u), du);
+            case "tanh": return divide(du, square(call("cosh", u)));
+            case "asinh": return divide(du, call("sqrt", add(square(u), one)));
+            case "acosh": return divide(du, call("sqrt", subtract(square(u), one)));
+            case "atanh": return divide(du, subtract(one, square(u)));
+            case "round":
+            case "floor":
+            case "ceil":
+                return null;
+            case "ln": return divide(du, u);
+            case "log10": return divide(du, multiply(u, call("ln", number("10"))));
+            case "sqrt": return divide(du, multiply(number("2"), node));
+            case "cbrt": return divide(du, multiply(number("3"), square(node)));
+            default: throw new Expr4jException("No derivative defined for: " + label);
+        }
+    }
+
+    /**
+     * Differentiates {@code max} or {@code min} by folding the operands
+     * pairwise.
+     */
+    private Node extremum(Node node, Node[] d, boolean max) {
+        Function<T> token = (Function<T>) node.getToken();
+        Function<T> function = new Function<>(token.getLabel(), 2, token.getOperation(), token.getCharacteristics());
+
+        List<Node> operands = node.getChildren();
+
+        Node left = operands.get(0), derivative = d[0];
+
+        for (int i = 1; i < operands.size(); i++) {
+            Node right = operands.get(i);
+            Node difference = subtract(left, right);
+
+            Node slope = divide(multiply(difference, subtract(derivative, d[i])), call("abs", difference));
+            derivative = divide(max ? add(add(derivative, d[i]), slope) : subtract(add(derivative, d[i]), slope),
+                    number("2"));
+
+            Node pair = new Node(function);
+            pair.getChildren().add(left);
+            pair.getChildren().add(right);
+            left = pair;
+        }
+
+        return derivative;
+    }
+
+    private Node operator(String label, Operator.Type type, Node... operands) {
+        Operation<T> operation = dictionary.getOperator(label, type);
+        if (!(operation instanceof Operator))
+            throw new Expr4jException("Operator not found: " + label);
+
+        Node node = new Node((Operator<T>) operation);
+        for (Node operand : operands) node.getChildren().add(operand);
+
+        return node;
+    }
+
+    private Node square(Node node) {
+        return multiply(node, node);
+    }
+
+    /**
+     * Returns an operand of a call.
+     *
+     * @param node  call node
+     * @param index index of the operand
+     * @return operand node
+     */
+    @NotNull
+    public Node operand(Node node, int index) {
+        return node.getChildren().get(index);
+    }
+
+    /**
+     * Creates a literal parsed by the codec of the expression.
+     *
+     * @param literal literal value, such as {@code "2"}
+     * @return operand node
+     */
+    @NotNull
+    public Node number(String literal) {
+        return new Node(new Operand<>(codec.toOperand(literal)));
+    }
+
+    /**
+     * @return {@code a + b}, or the other operand if one is zero
+     */
+    @Nullable
+    public Node add(@Nullable Node a, @Nullable Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+
+        return operator("+", Operator.Type.INFIX, a, b);
+    }
+
+    /**
+     * @return {@code a - b}, {@code a} if {@code b} is zero, or {@code -b} if
+     *         {@code a} is zero
+     */
+    @Nullable
+    public Node subtract(@Nullable Node a, @Nullable Node b) {
+        if (b == null) return a;
+        if (a == null) return negate(b);
+
+        return operator("-", Operator.Type.INFIX, a, b);
+    }
+
+    /**
+     * @return {@code a * b}, or zero if one of them is zero
+     */
+    @Nullable
+    public Node multiply(@Nullable Node a, @Nullable Node b) {
+        if (a == null || b == null) return null;
+        if (a == one) return b;
+        if (b == one) return a;
+
+        return operator("*", Operator.Type.INFIX, a, b);
+    }
+
+    /**
+     * @return {@code a / b}, or zero if {@code a} is zero
+     * @throws Expr4jException if {@code b} is zero
+     */
+    @Nullable
+    public Node divide(@Nullable Node a, @Nullable Node b) {
+        if (b == null)
+            throw new Expr4jException("Division by zero in derivative");
+
+        if (a == null) return null;
+        if (b == one) return a;
+
+        return operator("/", Operator.Type.INFIX, a, b);
+    }
+
+    /**
+     * @return {@code -a}, or zero if {@code a} is zero
+     */
+    @Nullable
+    public Node negate(@Nullable Node a) {
+        return a == null ? null : operator("-", Operator.Type.PREFIX, a);
+    }
+
+    /**
+     * @return {@code a ^ b}
+     */
+    @NotNull
+    public Node power(@NotNull Node a, @Nullable Node b) {
+        return b == null ? one : operator("^", Operator.Type.INFIX_RTL, a, b);
+    }
+
+    /**
+     * Calls a function, or a prefix operator such as {@code sin}, registered
+     * in the dictionary of the expression.
+     *
+     * @param label    function or operator symbol
+     * @param operands operands of the call
+     * @return call node
+     * @throws Expr4jException if no such function or prefix operator exists
+     */
+    @NotNull
+    public Node call(String label, Node... operands) {
+        Operation<T> function = dictionary.getFunction(label);
+        if (!(function instanceof Function))
+            return operator(label, Operator.Type.PREFIX, operands);
+
+        Node node = new Node((Function<T>) function);
+        for (Node operand : operands) node.getChildren().add(operand);
+
+        return node;
+    }
+}
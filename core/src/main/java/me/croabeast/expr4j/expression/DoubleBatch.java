@@ -0,0 +1,374 @@
+package me.croabeast.expr4j.expression;
+
+import lombok.Getter;
+import me.croabeast.expr4j.Operations;
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.token.*;
+
+import java.nio.DoubleBuffer;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Columnar form of a {@link DoubleExpression} that evaluates many rows per
+ * call. Every variable is read from its own {@code double[]} or
+ * {@link DoubleBuffer} column, indexed by the slots of {@link #getSchema()},
+ * and results are written to a single output column.
+ *
+ * <p>Rows are processed in batches of {@link #getSize()} rows. For every
+ * batch the tree is walked once, and each operation runs a loop over the whole
+ * batch through the column methods of {@link DoubleUnaryOperation},
+ * {@link DoubleBinaryOperation} and {@link DoubleVariadicOperation}, which
+ * operations can override with vectorizable loops. Intermediate columns are
+ * reused as soon as no other node needs them, so a batch size of a few
+ * thousand rows keeps them in cache.</p>
+ *
+ * <p>Operations receiving lazy {@link Parameters} keep their short-circuit
+ * semantics: their subtrees are evaluated row by row through
+ * {@link DoubleExpression}, so unused arguments are still never computed.
+ * Nodes shared by several parents are computed once per batch.</p>
+ *
+ * <p>Batches do not hold mutable state and can be shared between threads as
+ * long as the registered operations are thread-safe.</p>
+ */
+@SuppressWarnings("unchecked")
+public final class DoubleBatch {
+
+    /**
+     * Number of rows per batch used when none is given.
+     */
+    public static final int DEFAULT_SIZE = 1024;
+
+    /**
+     * Variable layout the batch was compiled against. Column {@code i} holds
+     * the values of the variable in slot {@code i}.
+     */
+    @Getter
+    private final Schema<Double> schema;
+
+    /**
+     * Number of rows evaluated per pass over the tree.
+     */
+    @Getter
+    private final int size;
+
+    private final DoubleExpression expression;
+
+    private final List<Kernel> kernels = new ArrayList<>();
+
+    /**
+     * Intermediate columns: constants are filled once, the others are
+     * {@code null} and allocated for every call.
+     */
+    private final List<double[]> registers;
+
+    /**
+     * Reference to the column holding the result.
+     */
+    private final int result;
+
+    /**
+     * Declared cost of evaluating a row, used to split parallel evaluations.
+     */
+    private final int cost;
+
+    /**
+     * Compiles the tree of the given expression into column loops.
+     *
+     * @param expression expression to compile
+     * @param size       number of rows per batch
+     * @throws Expr4jException if the size is not positive or the tree is
+     *                         missing or malformed
+     */
+    DoubleBatch(DoubleExpression expression, int size) {
+        if (size < 1)
+            throw new Expr4jException("Invalid batch size: " + size);
+
+        Node root = expression.getRoot();
+        if (root == null)
+            throw new Expr4jException("Root node not defined");
+
+        this.expression = expression;
+        this.schema = expression.getSchema();
+        this.size = size;
+
+        Compiler compiler = new Compiler();
+        this.result = compiler.plan(root);
+        this.registers = compiler.getRegisters();
+        this.cost = Split.cost(root);
+    }
+
+    /**
+     * Returns the column of a reference, see {@link Planner}.
+     */
+    private static double[] column(int reference, double[][] registers, double[][] columns) {
+        return reference >= 0 ? registers[reference] : columns[~reference];
+    }
+
+    private double[][] registers() {
+        double[][] registers = this.registers.toArray(new double[0][]);
+        for (int i = 0; i < registers.length; i++)
+            if (registers[i] == null) registers[i] = new double[size];
+
+        return registers;
+    }
+
+    private void validate(int columns) {
+        if (columns < schema.size())
+            throw new Expr4jException("Expected " + schema.size() + " columns, got " + columns);
+    }
+
+    private void validate(double[][] columns, int rows) {
+        validate(columns.length);
+
+        for (int s = 0; s < schema.size(); s++) {
+            if (columns[s] == null)
+                throw new Expr4jException("Variable not found: " + schema.getNames().get(s));
+
+            if (columns[s].length < rows)
+                throw new Expr4jException("Column " + schema.getNames().get(s) + " has " +
+                        columns[s].length + " rows, expected " + rows);
+        }
+    }
+
+    /**
+     * Evaluates the expression for every row of the result column.
+     *
+     * @param columns variable columns ordered by schema slot, each holding at
+     *                least as many rows as {@code results}
+     * @param results column receiving the result of every row
+     * @throws Expr4jException if a column is missing or too short
+     */
+    public void evaluate(double[][] columns, double[] results) {
+        int rows = results.length;
+        validate(columns, rows);
+
+        evaluate(columns, results, 0, rows);
+    }
+
+    /**
+     * Evaluates the rows of a range with intermediate columns of its own.
+     */
+    private void evaluate(double[][] columns, double[] results, int from, int to) {
+        double[][] registers = registers();
+
+        for (int offset = from; offset < to; offset += size) {
+            int length = Math.min(size, to - offset);
+            for (Kernel kernel : kernels) kernel.run(registers, columns, offset, length);
+
+            System.arraycopy(column(result, registers, columns), Planner.offset(result, offset),
+                    results, offset, length);
+        }
+    }
+
+    /**
+     * Evaluates the expression for every row of the result column, splitting
+     * the rows across the given pool. The number of rows per task adapts to
+     * the measured cost of a row, and tasks only share the input columns and
+     * write to disjoint ranges of {@code results}.
+     *
+     * @param columns variable columns ordered by schema slot, each holding at
+     *                least as many rows as {@code results}
+     * @param results column receiving the result of every row
+     * @param pool    pool running the tasks, such as
+     *                {@link ForkJoinPool#commonPool()}
+     * @throws Expr4jException if a column is missing or too short
+     */
+    public void evaluate(double[][] columns, double[] results, ForkJoinPool pool) {
+        int rows = results.length;
+        validate(columns, rows);
+
+        if (rows > 0) Split.run(pool, rows, cost, (from, to) -> evaluate(columns, results, from, to));
+    }
+
+    /**
+     * Evaluates the expression for every row of the result column, reading
+     * the variable columns from a map. Columns named after a constant
+     * override it through a batch compiled for the call, see
+     * {@link Expression#overriddenBy(Map)}.
+     *
+     * @param columns mapping of variable names to their columns
+     * @param results column receiving the result of every row
+     * @throws Expr4jException if a column is missing or too short
+     */
+    public void evaluate(Map<String, double[]> columns, double[] results) {
+        DoubleExpression expression = this.expression.overriddenBy(columns);
+        if (expression != this.expression) {
+            expression.toDoubleBatch(size).evaluate(columns, results);
+            return;
+        }
+
+        List<String> names = schema.getNames();
+        double[][] values = new double[names.size()][];
+
+        for (int s = 0; s < values.length; s++) {
+            values[s] = columns == null ? null : columns.get(names.get(s));
+            if (values[s] == null)
+                throw new Expr4jException("Variable not found: " + names.get(s));
+        }
+
+        evaluate(values, results);
+    }
+
+    /**
+     * Evaluates the expression for every remaining element of the result
+     * buffer, reading each variable from the remaining elements of its
+     * column. Heap and direct buffers are both supported; the positions of
+     * the given buffers are left unchanged.
+     *
+     * @param columns variable columns ordered by schema slot
+     * @param results buffer receiving the result of every row
+     * @throws Expr4jException if a column is missing or too short
+     */
+    public void evaluate(DoubleBuffer[] columns, DoubleBuffer results) {
+        int rows = results.remaining();
+        validate(columns.length);
+
+        DoubleBuffer[] views = new DoubleBuffer[schema.size()];
+        for (int s = 0; s < views.length; s++) {
+            if (columns[s] == null)
+                throw new Expr4jException("Variable not found: " + schema.getNames().get(s));
+
+            if (columns[s].remaining() < rows)
+                throw new Expr4jException("Column " + schema.getNames().get(s) + " has " +
+                        columns[s].remaining() + " rows, expected " + rows);
+
+            views[s] = columns[s].duplicate();
+        }
+
+        DoubleBuffer target = results.duplicate();
+
+        double[][] registers = registers(), chunks = new double[views.length][size];
+
+        for (int offset = 0; offset < rows; offset += size) {
+            int length = Math.min(size, rows - offset);
+            for (int s = 0; s < views.length; s++) views[s].get(chunks[s], 0, length);
+
+            for (Kernel kernel : kernels) kernel.run(registers, chunks, 0, length);
+            target.put(column(result, registers, chunks), Planner.offset(result, 0), length);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return expression.toString();
+    }
+
+    /**
+     * Plans the tree into loops over {@code double[]} columns through the
+     * column methods of the primitive operations.
+     */
+    private final class Compiler extends Planner<Double, double[]> {
+
+        private Compiler() {
+            super(schema);
+        }
+
+        @Override
+        boolean isEager(Operation<Double> operation, int count) {
+            return (count == 1 && Operations.isDirect(operation, UnaryOperation.class)) ||
+                    (count == 2 && Operations.isDirect(operation, BinaryOperation.class)) ||
+                    Operations.isDirect(operation, DoubleVariadicOperation.class);
+        }
+
+        @Override
+        double[] constant(Double value) {
+            double[] column = new double[size];
+            Arrays.fill(column, value);
+            return column;
+        }
+
+        @Override
+        void lazy(Node node, int target) {
+            DoubleEvaluator evaluator = expression.compile(node);
+            int slots = schema.size();
+
+            kernels.add((registers, columns, offset, length) -> {
+                double[] results = registers[target], row = new double[slots];
+
+                for (int i = 0; i < length; i++) {
+                    for (int s = 0; s < slots; s++) row[s] = columns[s][offset + i];
+                    results[i] = evaluator.evaluate(row);
+                }
+            });
+        }
+
+        @Override
+        void eager(Operation<Double> operation, int[] arguments, int target) {
+            kernels.add(kernel(operation, arguments, target));
+        }
+
+        private Kernel kernel(Operation<Double> operation, int[] arguments, int target) {
+            if (arguments.length == 1 && Operations.isDirect(operation, UnaryOperation.class)) {
+                int operand = arguments[0];
+
+                if (operation instanceof DoubleUnaryOperation) {
+                    DoubleUnaryOperation unary = (DoubleUnaryOperation) operation;
+                    return (registers, columns, offset, length) -> unary.evaluate(
+                            column(operand, registers, columns), offset(operand, offset),
+                            registers[target], 0, length);
+                }
+
+                UnaryOperation<Double> unary = (UnaryOperation<Double>) operation;
+                return (registers, columns, offset, length) -> {
+                    double[] values = column(operand, registers, columns), results = registers[target];
+                    int from = offset(operand, offset);
+
+                    for (int i = 0; i < length; i++)
+                        results[i] = unary.evaluate(Double.valueOf(values[from + i]));
+                };
+            }
+
+            if (arguments.length == 2 && Operations.isDirect(operation, BinaryOperation.class)) {
+                int left = arguments[0], right = arguments[1];
+
+                if (operation instanceof DoubleBinaryOperation) {
+                    DoubleBinaryOperation binary = (DoubleBinaryOperation) operation;
+                    return (registers, columns, offset, length) -> binary.evaluate(
+                            column(left, registers, columns), offset(left, offset),
+                            column(right, registers, columns), offset(right, offset),
+                            registers[target], 0, length);
+                }
+
+                BinaryOperation<Double> binary = (BinaryOperation<Double>) operation;
+                return (registers, columns, offset, length) -> {
+                    double[] a = column(left, registers, columns), b = column(right, registers, columns);
+                    double[] results = registers[target];
+                    int l = offset(left, offset), r = offset(right, offset);
+
+                    for (int i = 0; i < length; i++)
+                        results[i] = binary.evaluate(Double.valueOf(a[l + i]), Double.valueOf(b[r + i]));
+                };
+            }
+
+            DoubleVariadicOperation variadic = (DoubleVariadicOperation) operation;
+            return (registers, columns, offset, length) -> {
+                double[][] values = new double[arguments.length][];
+                int[] from = new int[arguments.length];
+
+                for (int j = 0; j < arguments.length; j++) {
+                    values[j] = column(arguments[j], registers, columns);
+                    from[j] = offset(arguments[j], offset);
+                }
+
+                variadic.evaluate(values, from, registers[target], 0, length);
+            };
+        }
+    }
+
+    /**
+     * Loop computing one node for every row of a batch.
+     */
+    @FunctionalInterface
+    private interface Kernel {
+
+        /**
+         * @param registers intermediate columns
+         * @param columns   variable columns
+         * @param offset    index of the first row of the batch in the variable
+         *                  columns
+         * @param length    number of rows in the batch
+         */
+        void run(double[][] registers, double[][] columns, int offset, int length);
+    }
+}
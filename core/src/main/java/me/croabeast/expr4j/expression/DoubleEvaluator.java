@@ -0,0 +1,18 @@
+package me.croabeast.expr4j.expression;
+
+/**
+ * Primitive counterpart of {@link Evaluator} used by
+ * {@link DoubleExpression}. Each compiled node returns a plain {@code double},
+ * so nested primitive operations never box their intermediate results.
+ */
+@FunctionalInterface
+interface DoubleEvaluator {
+
+    /**
+     * Computes the value of the compiled subtree.
+     *
+     * @param variables variable values indexed by schema slot
+     * @return computed value
+     */
+    double evaluate(double[] variables);
+}
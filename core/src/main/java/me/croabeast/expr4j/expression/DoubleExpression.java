@@ -0,0 +1,398 @@
+package me.croabeast.expr4j.expression;
+
+import me.croabeast.expr4j.Operations;
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.token.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.stream.DoubleStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * {@link Expression} over {@link Double} values that can be evaluated on
+ * primitive {@code double} values end to end. Operations implementing
+ * {@link DoubleUnaryOperation}, {@link DoubleBinaryOperation} or
+ * {@link DoubleVariadicOperation} are called with primitive operands, so no
+ * intermediate {@link Double} objects are created between them. Any other
+ * operation is still supported and only boxes its own operands.
+ *
+ * <p>The primitive evaluator is compiled on first use and rebuilt whenever the
+ * root node is replaced. Variables are read from a {@code double[]} indexed by
+ * the slots of {@link #getSchema()}. Nodes shared by several parents are
+ * computed at most once per evaluation.</p>
+ *
+ * <p>The values of shared nodes and the operands of variadic operations are
+ * kept in arrays reused by the evaluations of each thread, so only operations
+ * without a primitive form allocate while evaluating.</p>
+ */
+@SuppressWarnings("unchecked")
+public class DoubleExpression extends Expression<Double> {
+
+    private volatile DoubleEvaluator evaluator;
+
+    /**
+     * Creates an empty expression bound to the given dictionary and codec.
+     *
+     * @param dictionary registry used to resolve constants
+     * @param codec      codec used to render operands
+     */
+    public DoubleExpression(Dictionary<Double> dictionary, Codec<Double> codec) {
+        super(dictionary, codec);
+    }
+
+    /**
+     * Creates a primitive view sharing the tree, dictionary and codec of an
+     * existing expression. Its schema is resolved right away.
+     *
+     * @param expression expression to wrap
+     */
+    public DoubleExpression(Expression<Double> expression) {
+        this(expression.getDictionary(), expression.getCodec());
+        setRoot(expression.getRoot());
+        setEngine(expression.getEngine());
+        getSchema();
+    }
+
+    @Override
+    public void setRoot(Node root) {
+        super.setRoot(root);
+        this.evaluator = null;
+    }
+
+    @NotNull
+    @Override
+    public DoubleExpression overriddenBy(Map<String, ?> variables) {
+        Set<String> names = getSchema().overrides(variables);
+        return names.isEmpty() ? this : override(new DoubleExpression(getDictionary(), getCodec()), names);
+    }
+
+    private DoubleEvaluator compile(Operation<Double> token, List<Node> children, Map<Node, DoubleEvaluator> shares) {
+        DoubleEvaluator[] arguments = new DoubleEvaluator[children.size()];
+        for (int i = 0; i < arguments.length; i++)
+            arguments[i] = compile(children.get(i), shares);
+
+        Operation<Double> operation = Operations.resolve(token);
+
+        if (arguments.length == 1 && Operations.isDirect(operation, UnaryOperation.class)) {
+            DoubleEvaluator operand = arguments[0];
+
+            if (operation instanceof DoubleUnaryOperation) {
+                DoubleUnaryOperation unary = (DoubleUnaryOperation) operation;
+                return variables -> unary.evaluate(operand.evaluate(variables));
+            }
+
+            UnaryOperation<Double> unary = (UnaryOperation<Double>) operation;
+            return variables -> unary.evaluate(Double.valueOf(operand.evaluate(variables)));
+        }
+
+        if (arguments.length == 2 && Operations.isDirect(operation, BinaryOperation.class)) {
+            DoubleEvaluator left = arguments[0], right = arguments[1];
+
+            if (operation instanceof DoubleBinaryOperation) {
+                DoubleBinaryOperation binary = (DoubleBinaryOperation) operation;
+                return variables -> binary.evaluate(left.evaluate(variables), right.evaluate(variables));
+            }
+
+            BinaryOperation<Double> binary = (BinaryOperation<Double>) operation;
+            return variables -> binary.evaluate(
+                    Double.valueOf(left.evaluate(variables)),
+                    Double.valueOf(right.evaluate(variables))
+            );
+        }
+
+        if (Operations.isDirect(operation, DoubleVariadicOperation.class)) {
+            DoubleVariadicOperation variadic = (DoubleVariadicOperation) operation;
+            Scratch scratch = new Scratch(arguments.length);
+
+            return variables -> {
+                double[] operands = scratch.take();
+                for (int i = 0; i < operands.length; i++)
+                    operands[i] = arguments[i].evaluate(variables);
+
+                double result = variadic.evaluate(operands);
+                scratch.set(operands);
+                return result;
+            };
+        }
+
+        return variables -> {
+            Parameters<Double> parameters = new Parameters<>();
+            for (DoubleEvaluator argument : arguments)
+                parameters.add(new Parameter<>(() -> argument.evaluate(variables)));
+
+            return operation.evaluate(parameters);
+        };
+    }
+
+    /**
+     * Compiles a subtree into a primitive evaluator reading variables by
+     * schema slot. If the subtree contains shared nodes, each call copies the
+     * variables into a scratch frame that also holds the value of every
+     * shared node and whether it was computed yet. Each thread reuses its own
+     * frame.
+     */
+    DoubleEvaluator compile(Node node) {
+        Schema<Double> schema = getSchema();
+
+        Map<Node, DoubleEvaluator> shares = new IdentityHashMap<>();
+        DoubleEvaluator evaluator = compile(node, shares);
+        if (shares.isEmpty()) return evaluator;
+
+        int size = schema.size(), flags = size + schema.shares(), frame = flags + schema.shares();
+        Scratch scratch = new Scratch(frame);
+
+        return variables -> {
+            double[] values = scratch.take();
+            System.arraycopy(variables, 0, values, 0, size);
+            Arrays.fill(values, flags, frame, 0);
+
+            double result = evaluator.evaluate(values);
+            scratch.set(values);
+            return result;
+        };
+    }
+
+    private DoubleEvaluator compile(Node node, Map<Node, DoubleEvaluator> shares) {
+        Schema<Double> schema = getSchema();
+
+        int share = schema.share(node);
+        if (share < 0) return compute(node, shares);
+
+        DoubleEvaluator evaluator = shares.get(node);
+        if (evaluator != null) return evaluator;
+
+        DoubleEvaluator shared = compute(node, shares);
+        int value = schema.size() + share, computed = value + schema.shares();
+
+        evaluator = variables -> {
+            if (variables[computed] != 0) return variables[value];
+
+            double result = shared.evaluate(variables);
+            variables[value] = result;
+            variables[computed] = 1;
+            return result;
+        };
+
+        shares.put(node, evaluator);
+        return evaluator;
+    }
+
+    private DoubleEvaluator compute(Node node, Map<Node, DoubleEvaluator> shares) {
+        Token token = node.getToken();
+        List<Node> children = node.getChildren();
+        String label = token.getLabel();
+
+        if (token instanceof Variable) {
+            Schema<Double> schema = getSchema();
+
+            int slot = schema.slot(label);
+            if (slot >= 0) return variables -> variables[slot];
+
+            Double constant = schema.getConstant(label);
+            if (constant == null)
+                throw new Expr4jException("Variable not found: " + label);
+
+            double value = constant;
+            return variables -> value;
+        }
+
+        if (token instanceof Function) {
+            Function<Double> function = (Function<Double>) token;
+            if (children == null || children.size() != function.getParameters())
+                throw new Expr4jException("Invalid function: " + label);
+
+            return compile(function, children, shares);
+        }
+
+        if (token instanceof Operator) {
+            Operator<Double> operator = (Operator<Double>) token;
+            Operator.Type type = operator.getType();
+
+            int count = type == Operator.Type.INFIX || type == Operator.Type.INFIX_RTL ? 2 : 1;
+            if (children == null || children.size() != count)
+                throw new Expr4jException("Invalid operator: " + label);
+
+            return compile(operator, children, shares);
+        }
+
+        if (!(token instanceof Operand))
+            throw new Expr4jException("Invalid token: " + token.getClass());
+
+        double value = ((Operand<Double>) token).getValue();
+        return variables -> value;
+    }
+
+    private DoubleEvaluator evaluator() {
+        DoubleEvaluator evaluator = this.evaluator;
+        if (evaluator != null) return evaluator;
+
+        Expression<Double> origin = getOrigin();
+        if (origin instanceof DoubleExpression)
+            return this.evaluator = ((DoubleExpression) origin).evaluator();
+
+        Node root = getRoot();
+        if (root == null)
+            throw new Expr4jException("Root node not defined");
+
+        return this.evaluator = compile(root);
+    }
+
+    /**
+     * Evaluates the expression on primitive values using the provided variable
+     * assignments, matching {@link #evaluate(Map)}.
+     *
+     * @param variables mapping of variable names to values, may be {@code null}
+     * @return computed result of the expression
+     * @throws Expr4jException if a free variable has no assigned value
+     */
+    public double evaluateAsDouble(Map<String, Double> variables) {
+        DoubleExpression expression = overriddenBy(variables);
+        if (expression != this) return expression.evaluateAsDouble(variables);
+
+        List<String> names = getSchema().getNames();
+        double[] values = new double[names.size()];
+
+        for (int i = 0; i < values.length; i++) {
+            Double value = variables == null ? null : variables.get(names.get(i));
+            if (value == null)
+                throw new Expr4jException("Variable not found: " + names.get(i));
+
+            values[i] = value;
+        }
+
+        return evaluator().evaluate(values);
+    }
+
+    /**
+     * Evaluates the expression on primitive values read from an array
+     * indexed by the slots of {@link #getSchema()}. The array can be reused
+     * between calls.
+     *
+     * @param variables variable values ordered by schema slot
+     * @return computed result of the expression
+     * @throws Expr4jException if the array is shorter than the schema
+     */
+    public double evaluateAsDouble(double[] variables) {
+        if (variables.length < getSchema().size())
+            throw new Expr4jException("Expected " + getSchema().size() + " variables, got " + variables.length);
+
+        return evaluator().evaluate(variables);
+    }
+
+    /**
+     * Builds the symbolic derivative of the expression, keeping the primitive
+     * evaluation path.
+     *
+     * @param variable name of the variable to differentiate by
+     * @return new primitive expression computing the derivative
+     * @throws Expr4jException if the tree is missing or an operation depending
+     *                         on the variable has no derivative rule
+     */
+    @NotNull
+    @Override
+    public DoubleExpression derivative(String variable) {
+        return new DoubleExpression(super.derivative(variable));
+    }
+
+    /**
+     * Compiles the expression into a columnar {@link DoubleBatch} evaluating
+     * many rows per call.
+     *
+     * @param size number of rows evaluated per pass over the tree
+     * @return columnar form of this expression
+     * @throws Expr4jException if the size is not positive or the tree is
+     *                         missing or malformed
+     */
+    @NotNull
+    public DoubleBatch toDoubleBatch(int size) {
+        return new DoubleBatch(this, size);
+    }
+
+    /**
+     * Compiles the expression into a columnar {@link DoubleBatch} using
+     * {@link DoubleBatch#DEFAULT_SIZE} rows per batch.
+     *
+     * @return columnar form of this expression
+     * @throws Expr4jException if the tree is missing or malformed
+     */
+    @NotNull
+    public DoubleBatch toDoubleBatch() {
+        return toDoubleBatch(DoubleBatch.DEFAULT_SIZE);
+    }
+
+    /**
+     * Lazily evaluates the expression on primitive values for every row of a
+     * stream, matching {@link #stream(Stream)}. Rows can also be given as
+     * {@code double[]} ordered by schema slot, which are evaluated without
+     * copying or boxing.
+     *
+     * <p>The compiled primitive evaluator is shared by every split of the
+     * stream, while each split unpacks its rows into a reusable array.
+     * Closing the returned stream closes the source.</p>
+     *
+     * @param rows variable rows
+     * @return stream of the results, in the order of the rows
+     * @throws Expr4jException if the tree is missing or malformed; invalid
+     *                         rows fail once they are evaluated
+     */
+    @NotNull
+    public DoubleStream doubleStream(Stream<?> rows) {
+        Spliterator.OfDouble results = new DoubleRows(this, evaluator(), rows.spliterator(), Split.cost(getRoot()));
+        return StreamSupport.doubleStream(results, rows.isParallel()).onClose(rows::close);
+    }
+
+    /**
+     * Lazily evaluates the expression on primitive values for every row of an
+     * iterator, as {@link #doubleStream(Stream)} does. The returned stream is
+     * sequential.
+     *
+     * @param rows variable rows
+     * @return stream of the results, in the order of the rows
+     * @throws Expr4jException if the tree is missing or malformed; invalid
+     *                         rows fail once they are evaluated
+     */
+    @NotNull
+    public DoubleStream doubleStream(Iterator<?> rows) {
+        return doubleStream(StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows, Spliterator.ORDERED), false));
+    }
+
+    /**
+     * Evaluates the expression on primitive values relying solely on
+     * dictionary constants.
+     *
+     * @return computed result
+     */
+    public double evaluateAsDouble() {
+        return evaluateAsDouble((Map<String, Double>) null);
+    }
+
+    /**
+     * Array of a fixed length reused by the evaluations of each thread. An
+     * evaluation nested in another one on the same thread, started by an
+     * operation, finds the array taken and works on a new one until the
+     * array is given back through {@link #set(Object)}.
+     */
+    private static final class Scratch extends ThreadLocal<double[]> {
+
+        private final int length;
+
+        private Scratch(int length) {
+            this.length = length;
+        }
+
+        @Override
+        protected double[] initialValue() {
+            return new double[length];
+        }
+
+        private double[] take() {
+            double[] array = get();
+            if (array == null) return new double[length];
+
+            set(null);
+            return array;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package me.croabeast.expr4j.expression;
+
+import me.croabeast.expr4j.exception.Expr4jException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.DoubleConsumer;
+
+/**
+ * {@link Feed} producing the primitive results of a {@link DoubleExpression}.
+ * The compiled primitive evaluator holds no state and is shared by every
+ * spliterator, while each spliterator unpacks its rows into a
+ * {@code double[]} of its own. Rows given as {@code double[]} are evaluated
+ * as they are.
+ */
+final class DoubleRows extends Feed implements Spliterator.OfDouble {
+
+    private final DoubleExpression expression;
+    private final DoubleEvaluator evaluator;
+    private final Schema<Double> schema;
+    private final double[] values;
+
+    DoubleRows(DoubleExpression expression, DoubleEvaluator evaluator, Spliterator<?> rows, int cost) {
+        super(rows, cost);
+        this.expression = expression;
+        this.evaluator = evaluator;
+        this.schema = expression.getSchema();
+        this.values = new double[schema.size()];
+    }
+
+    private double value(String name, Object value) {
+        if (value == null)
+            throw new Expr4jException("Variable not found: " + name);
+
+        return (Double) value;
+    }
+
+    /**
+     * Evaluates a row given as a map of variables, an array ordered by schema
+     * slot, or bindings of the schema.
+     */
+    @SuppressWarnings("unchecked")
+    private double evaluate(Object row) {
+        List<String> names = schema.getNames();
+
+        if (row instanceof double[]) {
+            double[] variables = (double[]) row;
+            if (variables.length < values.length)
+                throw new Expr4jException("Expected " + values.length + " variables, got " + variables.length);
+
+            return evaluator.evaluate(variables);
+        }
+
+        if (row instanceof Map) {
+            Map<String, Double> variables = (Map<String, Double>) row;
+            if (!schema.overrides(variables).isEmpty()) return expression.evaluateAsDouble(variables);
+
+            for (int i = 0; i < values.length; i++)
+                values[i] = value(names.get(i), variables.get(names.get(i)));
+        }
+        else if (row instanceof Object[]) {
+            Object[] variables = (Object[]) row;
+            if (variables.length < values.length)
+                throw new Expr4jException("Expected " + values.length + " variables, got " + variables.length);
+
+            for (int i = 0; i < values.length; i++)
+                values[i] = value(names.get(i), variables[i]);
+        }
+        else if (row instanceof Bindings) {
+            Bindings<Double> bindings = (Bindings<Double>) row;
+            if (bindings.getSchema() != schema)
+                throw new Expr4jException("Bindings do not match the expression schema");
+
+            for (int i = 0; i < values.length; i++)
+                values[i] = bindings.value(i);
+        }
+        else throw new Expr4jException("Invalid row: " + (row == null ? null : row.getClass().getName()));
+
+        return evaluator.evaluate(values);
+    }
+
+    @Override
+    public boolean tryAdvance(DoubleConsumer action) {
+        return advance(row -> action.accept(evaluate(row)));
+    }
+
+    @Override
+    public void forEachRemaining(DoubleConsumer action) {
+        forEach(row -> action.accept(evaluate(row)));
+    }
+
+    @Override
+    public Spliterator.OfDouble trySplit() {
+        Spliterator<?> rows = split();
+        return rows == null ? null : new DoubleRows(expression, evaluator, rows, getCost());
+    }
+
+    @Override
+    public int characteristics() {
+        return characteristics(0);
+    }
+}
@@ -0,0 +1,20 @@
+package me.croabeast.expr4j.expression;
+
+/**
+ * Strategy used by {@link Expression#evaluate(Bindings)} and its overloads
+ * to run an expression. Builders stamp their configured engine on every
+ * expression they build, see {@link Builder#setEngine(Engine)}.
+ */
+public enum Engine {
+
+    /**
+     * Walks the {@link Node} tree with an explicit stack, see
+     * {@link Expression#evaluate(Bindings)}. This is the default engine.
+     */
+    TREE,
+
+    /**
+     * Runs a flat postfix {@link StackMachine} program over an operand stack.
+     */
+    STACK_MACHINE
+}
@@ -0,0 +1,21 @@
+package me.croabeast.expr4j.expression;
+
+/**
+ * Pre-resolved evaluation step produced when an {@link Expression} is
+ * compiled. Every node of the syntax tree is turned into one evaluator that
+ * already knows which operation to call and which child evaluators feed it, so
+ * no token inspection or arity validation happens while evaluating.
+ *
+ * @param <T> result type produced by the evaluator
+ */
+@FunctionalInterface
+interface Evaluator<T> {
+
+    /**
+     * Computes the value of the compiled subtree.
+     *
+     * @param bindings variable values supplied by the caller
+     * @return computed value
+     */
+    T evaluate(Bindings<T> bindings);
+}
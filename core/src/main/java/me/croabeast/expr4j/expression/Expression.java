@@ -1,16 +1,16 @@
 package me.croabeast.expr4j.expression;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import lombok.Setter;
+import me.croabeast.expr4j.Operations;
 import me.croabeast.expr4j.exception.Expr4jException;
 import me.croabeast.expr4j.token.*;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Immutable representation of a parsed expression tree. Instances can be
@@ -29,7 +29,27 @@ import java.util.stream.Collectors;
 @SuppressWarnings("unchecked")
 public class Expression<T> {
 
-    @Setter
+    private static final int EXPAND = 0, LAZY = 1, UNARY = 2, BINARY = 3, VARIADIC = 4, LIST = 5;
+
+    /**
+     * Ways each operation class can be called with operand values, as a mask
+     * of {@code 1 << UNARY}, {@code 1 << BINARY}, {@code 1 << VARIADIC} and
+     * {@code 1 << LIST}, looked up once per class.
+     */
+    private static final ClassValue<Integer> DIRECT = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            int mask = 0;
+
+            if (Operations.isDirect(type, UnaryOperation.class)) mask |= 1 << UNARY;
+            if (Operations.isDirect(type, BinaryOperation.class)) mask |= 1 << BINARY;
+            if (Operations.isDirect(type, DoubleVariadicOperation.class)) mask |= 1 << VARIADIC;
+            if (Operations.isDirect(type, VariadicOperation.class)) mask |= 1 << LIST;
+
+            return mask;
+        }
+    };
+
     /**
      * Root node of the parsed abstract syntax tree. Set during the build
      * process and later reused for evaluation and pretty-printing.
@@ -50,68 +70,341 @@ public class Expression<T> {
      */
     private final Codec<T> codec;
 
+    /**
+     * Variable layout of the current tree, resolved on first use and
+     * discarded whenever the root node changes.
+     */
+    private volatile Schema<T> schema;
+
+    /**
+     * Engine used by the public {@code evaluate} methods. Builders set it to
+     * their own configured engine.
+     */
+    private Engine engine = Engine.TREE;
+
+    /**
+     * Postfix program of the current tree, built on first use by the
+     * {@link Engine#STACK_MACHINE} engine.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile StackMachine<T> machine;
+
+    /**
+     * Evaluation context of each thread, see {@link #getContext()}.
+     */
+    @Getter(AccessLevel.NONE)
+    private final ThreadLocal<Context<T>> contexts = new ThreadLocal<>();
+
+    /**
+     * Cached expression this one was copied from, which compiles the shared
+     * tree once for all of its copies. Dropped when the root node changes.
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private volatile Expression<T> origin;
+
+    /**
+     * Replaces the root node of the syntax tree.
+     *
+     * @param root new root node
+     */
+    public void setRoot(Node root) {
+        this.root = root;
+        this.schema = null;
+        this.machine = null;
+        this.origin = null;
+    }
+
+    /**
+     * Selects the engine used by the public {@code evaluate} methods.
+     *
+     * @param engine engine to use
+     */
+    public void setEngine(Engine engine) {
+        this.engine = Objects.requireNonNull(engine);
+    }
+
+    /**
+     * Returns the variable layout of the expression: the slot of every free
+     * variable and the values of the referenced dictionary constants. Builders
+     * resolve it while building, so later dictionary changes do not affect
+     * constants already referenced by the expression.
+     *
+     * @return schema of the current tree
+     */
+    @NotNull
+    public Schema<T> getSchema() {
+        Schema<T> schema = this.schema;
+        if (schema != null) return schema;
+
+        return this.schema = new Schema<>(root, dictionary);
+    }
+
+    /**
+     * Returns the expression to evaluate with a map of variables. Map entries
+     * take precedence over the constants of the dictionary, so if the map
+     * assigns a constant the expression references, the result is a copy of
+     * this expression reading that constant as a free variable. The copy is
+     * created and compiled for the call, which makes such evaluations slower.
+     *
+     * @param variables variable assignments, may be {@code null}
+     * @return this expression, or a copy if the map overrides a constant
+     */
+    @NotNull
+    public Expression<T> overriddenBy(Map<String, ?> variables) {
+        Set<String> names = getSchema().overrides(variables);
+        return names.isEmpty() ? this : override(new Expression<>(dictionary, codec), names);
+    }
+
+    /**
+     * Makes an empty expression share the tree and engine of this one, with
+     * a schema reading the given constants as free variables.
+     */
+    <E extends Expression<T>> E override(E copy, Set<String> names) {
+        copy.setRoot(root);
+        copy.setEngine(engine);
+
+        ((Expression<T>) copy).schema = new Schema<>(root, dictionary, names);
+        return copy;
+    }
+
+    /**
+     * Makes an empty expression a copy of this one, sharing its tree, schema
+     * and compiled programs but not its engine or evaluation contexts.
+     */
+    <E extends Expression<T>> E share(E copy) {
+        copy.setRoot(root);
+        copy.setEngine(engine);
+
+        Expression<T> expression = copy;
+        expression.schema = getSchema();
+        expression.origin = this;
+        return copy;
+    }
+
     protected Operand<T> evaluate(Node node, Map<String, T> variables) {
-        Token token = node.getToken();
-        List<Node> children = node.getChildren();
-        String label = token.getLabel();
+        Expression<T> expression = overriddenBy(variables);
+        return expression.evaluate(node, expression.getSchema().bindings(variables));
+    }
+
+    /**
+     * Evaluates a subtree without recursing once per level: nodes wait on an
+     * explicit work stack and their values are collected on an operand stack,
+     * so deep trees only cost heap. Operations taking their operands directly,
+     * such as {@link UnaryOperation}, {@link BinaryOperation} and
+     * {@link VariadicOperation}, are applied to the values of their children.
+     * Any other operation still receives lazy {@link Parameters} and
+     * evaluates only the parameters it requests, each through a nested call:
+     * trees nesting such operations deeper than the thread stack allows can
+     * still overflow it.
+     */
+    protected Operand<T> evaluate(Node node, Bindings<T> bindings) {
+        return new Operand<>(compute(node, bindings));
+    }
+
+    private static int kind(Operation<?> operation, int count) {
+        int mask = DIRECT.get(operation.getClass());
 
-        if (token instanceof Variable) {
-            if (!variables.containsKey(label))
-                throw new Expr4jException("Variable not found: " + label);
+        if (count == 1 && (mask & 1 << UNARY) != 0) return UNARY;
+        if (count == 2 && (mask & 1 << BINARY) != 0) return BINARY;
+
+        if ((mask & 1 << VARIADIC) != 0) return VARIADIC;
+        return (mask & 1 << LIST) != 0 ? LIST : LAZY;
+    }
 
-            return new Operand<>(variables.get(label));
+    /**
+     * Replaces the last operands of a stack with the result of a direct
+     * operation on them.
+     *
+     * @return new size of the stack
+     */
+    private static <T> int apply(Operation<T> operation, int kind, int count, Object[] values, int size) {
+        if (kind == UNARY) {
+            values[size - 1] = ((UnaryOperation<T>) operation).evaluate((T) values[size - 1]);
+            return size;
         }
 
-        if (token instanceof Function) {
-            Function<T> function = (Function<T>) token;
-            if (children == null || children.size() != function.getParameters())
-                throw new Expr4jException("Invalid function: " + label);
+        if (kind == BINARY) {
+            T right = (T) values[--size];
+            values[size - 1] = ((BinaryOperation<T>) operation).evaluate((T) values[size - 1], right);
+            return size;
+        }
 
-            Parameters<T> parameters = new Parameters<>();
-            for (Node n : children)
-                parameters.add(new Parameter<>(this, n, variables));
+        size -= count;
+
+        if (kind == LIST) {
+            Object[] operands = Arrays.copyOfRange(values, size, size + count);
+            Arrays.fill(values, size, size + count, null);
 
-            return new Operand<>(function.evaluate(parameters));
+            values[size] = ((VariadicOperation<T>) operation).evaluate((List<T>) Arrays.asList(operands));
+            return size + 1;
         }
 
-        if (token instanceof Operator) {
-            Operator<T> operator = (Operator<T>) token;
-            Operator.Type type = operator.getType();
+        double[] operands = new double[count];
 
-            int count = type == Operator.Type.INFIX || type == Operator.Type.INFIX_RTL ? 2 : 1;
-            if (children == null || children.size() != count)
-                throw new Expr4jException("Invalid operator: " + label);
+        for (int i = 0; i < count; i++) {
+            operands[i] = (Double) values[size + i];
+            values[size + i] = null;
+        }
+
+        values[size] = ((DoubleVariadicOperation) operation).evaluate(operands);
+        return size + 1;
+    }
+
+    private T compute(Node root, Bindings<T> bindings) {
+        Schema<T> schema = bindings.getSchema();
+        boolean shares = schema.shares() > 0;
+
+        Node[] work = new Node[16];
+        int[] kinds = new int[16];
+        Object[] values = new Object[16];
+
+        int top = 0, size = 0;
+        work[top++] = root;
+
+        while (top > 0) {
+            Node node = work[--top];
+            int kind = kinds[top];
+
+            Token token = node.getToken();
+            List<Node> children = node.getChildren();
+
+            if (size == values.length) values = Arrays.copyOf(values, size << 1);
+
+            if (kind != EXPAND) {
+                Operation<T> operation = Operations.resolve((Operation<T>) token);
+                size = apply(operation, kind, children.size(), values, size);
+
+                if (shares) {
+                    int share = schema.share(node);
+                    if (share >= 0) bindings.remember(share, (T) values[size - 1]);
+                }
+                continue;
+            }
+
+            if (children == null) {
+                if (token instanceof Operand) {
+                    values[size++] = ((Operand<T>) token).getValue();
+                    continue;
+                }
+
+                if (!(token instanceof Variable))
+                    throw new Expr4jException("Invalid token: " + token.getClass());
+
+                String label = token.getLabel();
+
+                int slot = schema.slot(label);
+                if (slot >= 0) {
+                    values[size++] = bindings.value(slot);
+                    continue;
+                }
+
+                T constant = schema.getConstant(label);
+                if (constant == null)
+                    throw new Expr4jException("Variable not found: " + label);
+
+                values[size++] = constant;
+                continue;
+            }
+
+            int share = shares ? schema.share(node) : -1;
+            if (share >= 0) {
+                T value = bindings.shared(share);
+
+                if (value != null) {
+                    values[size++] = value;
+                    continue;
+                }
+            }
+
+            int count = children.size();
+
+            if (token instanceof Function) {
+                if (count != ((Function<T>) token).getParameters())
+                    throw new Expr4jException("Invalid function: " + token.getLabel());
+            }
+
+            else if (token instanceof Operator) {
+                Operator.Type type = ((Operator<T>) token).getType();
+                if (count != (type == Operator.Type.INFIX || type == Operator.Type.INFIX_RTL ? 2 : 1))
+                    throw new Expr4jException("Invalid operator: " + token.getLabel());
+            }
+
+            else throw new Expr4jException("Invalid token: " + token.getClass());
+
+            kind = kind(Operations.resolve((Operation<T>) token), count);
+
+            if (kind != LAZY) {
+                if (top + count + 1 > work.length) {
+                    int length = Math.max(work.length << 1, top + count + 1);
+                    work = Arrays.copyOf(work, length);
+                    kinds = Arrays.copyOf(kinds, length);
+                }
+
+                work[top] = node;
+                kinds[top++] = kind;
+
+                for (int i = count - 1; i >= 0; i--) {
+                    work[top] = children.get(i);
+                    kinds[top++] = EXPAND;
+                }
+                continue;
+            }
 
             Parameters<T> parameters = new Parameters<>();
             for (Node n : children)
-                parameters.add(new Parameter<>(this, n, variables));
+                parameters.add(new Parameter<>(this, n, bindings));
 
-            return new Operand<>(operator.evaluate(parameters));
-        }
+            T value = ((Operation<T>) token).evaluate(parameters);
+            if (share >= 0) bindings.remember(share, value);
 
-        try {
-            return (Operand<T>) token;
-        } catch (Exception e) {
-            throw new Expr4jException("Invalid token: " + token.getClass());
+            values[size++] = value;
         }
+
+        return (T) values[0];
     }
 
     /**
      * Evaluates the expression using the provided variable assignments.
+     * Entries named after a constant override it, see
+     * {@link #overriddenBy(Map)}.
      *
      * @param variables mapping of variable names to values
      * @return computed result of the expression
+     * @throws Expr4jException if a variable is missing
      */
     @NotNull
     public T evaluate(Map<String, T> variables) {
         if (root == null)
             throw new Expr4jException("Root node not defined");
 
-        Map<String, T> map = new HashMap<>(dictionary.getConstants());
-        if (variables != null && !variables.isEmpty())
-            map.putAll(variables);
+        Expression<T> expression = overriddenBy(variables);
+        if (expression != this) return expression.evaluate(variables);
 
-        return evaluate(root, map).getValue();
+        Bindings<T> bindings = getSchema().bindings(variables);
+        return engine == Engine.STACK_MACHINE ?
+                toStackMachine().evaluate(bindings) :
+                evaluate(root, bindings.frame()).getValue();
+    }
+
+    /**
+     * Evaluates the expression using reusable slot-indexed bindings.
+     *
+     * @param bindings bindings created from this expression's schema
+     * @return computed result of the expression
+     * @throws Expr4jException if the bindings belong to another schema or a
+     *                         required variable is unset
+     */
+    @NotNull
+    public T evaluate(Bindings<T> bindings) {
+        if (root == null)
+            throw new Expr4jException("Root node not defined");
+
+        if (bindings.getSchema() != getSchema())
+            throw new Expr4jException("Bindings do not match the expression schema");
+
+        return engine == Engine.STACK_MACHINE ?
+                toStackMachine().evaluate(bindings) :
+                evaluate(root, bindings.frame()).getValue();
     }
 
     /**
@@ -122,13 +415,196 @@ public class Expression<T> {
      */
     @NotNull
     public T evaluate() {
-        return evaluate(new HashMap<>());
+        return evaluate(Collections.<String, T>emptyMap());
     }
 
+    /**
+     * Returns the evaluation context of the calling thread, creating it on
+     * first use or after the root node has been replaced. Evaluating through
+     * the returned context reuses all of its internal state, so only the
+     * values produced by the operations are allocated.
+     *
+     * @return context owned by the calling thread
+     * @throws Expr4jException if the tree is missing or malformed
+     */
     @NotNull
-    protected String toString(Node node) {
-        if (node == null) return "";
+    public Context<T> getContext() {
+        Context<T> context = contexts.get();
+        if (context != null && context.getSchema() == getSchema())
+            return context;
+
+        context = new Context<>(this);
+        contexts.set(context);
+        return context;
+    }
+
+    /**
+     * Creates a stateful evaluator that caches the value of every node and
+     * only recomputes the subtrees whose variables changed since its previous
+     * evaluation.
+     *
+     * @return new incremental context with every variable unset
+     * @throws Expr4jException if the tree is missing or malformed
+     */
+    @NotNull
+    public IncrementalContext<T> toIncrementalContext() {
+        return new IncrementalContext<>(this);
+    }
+
+    /**
+     * Builds the symbolic derivative of the expression with respect to a
+     * variable, see {@link Differentiator}. The result is folded, simplified
+     * and has its common subexpressions shared, and uses the same dictionary,
+     * codec and engine. A name that is not a free variable of the expression
+     * yields zero.
+     *
+     * @param variable name of the variable to differentiate by
+     * @return new expression computing the derivative
+     * @throws Expr4jException if the tree is missing or an operation depending
+     *                         on the variable has no derivative rule
+     */
+    @NotNull
+    public Expression<T> derivative(String variable) {
+        Node root = new Differentiator<>(this, Objects.requireNonNull(variable)).differentiate();
+
+        Expression<T> derivative = new Expression<>(dictionary, codec);
+        derivative.setRoot(root);
+
+        new ConstantFolder<>(derivative).fold();
+        new Simplifier<>(derivative).simplify();
+        new ConstantFolder<>(derivative).fold();
+        new SubexpressionEliminator<T>().eliminate(derivative);
+
+        derivative.getSchema();
+        derivative.setEngine(engine);
+        return derivative;
+    }
+
+    /**
+     * Returns the flat postfix program of the current tree, translating it on
+     * first use. The program is shared by every thread.
+     *
+     * @return stack machine program of this expression
+     * @throws Expr4jException if the tree is missing or malformed
+     */
+    @NotNull
+    public StackMachine<T> toStackMachine() {
+        StackMachine<T> machine = this.machine;
+        if (machine != null) return machine;
+
+        Expression<T> origin = this.origin;
+        return this.machine = origin != null ? origin.toStackMachine() : new StackMachine<>(this);
+    }
+
+    /**
+     * Compiles the expression tree into pre-resolved evaluator closures.
+     * Dispatch decisions and arity checks are performed once, so the returned
+     * instance is the preferred way to evaluate the same expression many
+     * times.
+     *
+     * @return compiled form of this expression
+     * @throws Expr4jException if the tree is missing or malformed
+     */
+    @NotNull
+    public CompiledExpression<T> compile() {
+        return new CompiledExpression<>(this);
+    }
+
+    /**
+     * Compiles the expression into a columnar {@link Batch} evaluating many
+     * rows per call.
+     *
+     * @param size number of rows evaluated per pass over the tree
+     * @return columnar form of this expression
+     * @throws Expr4jException if the size is not positive or the tree is
+     *                         missing or malformed
+     */
+    @NotNull
+    public Batch<T> toBatch(int size) {
+        return new Batch<>(this, size);
+    }
 
+    /**
+     * Compiles the expression into a columnar {@link Batch} using
+     * {@link Batch#DEFAULT_SIZE} rows per batch.
+     *
+     * @return columnar form of this expression
+     * @throws Expr4jException if the tree is missing or malformed
+     */
+    @NotNull
+    public Batch<T> toBatch() {
+        return toBatch(Batch.DEFAULT_SIZE);
+    }
+
+    /**
+     * Lazily evaluates the expression on every row of a stream. Each row is a
+     * {@code Map} of variable names to values, an array of values ordered by
+     * the slots of {@link #getSchema()}, or {@link Bindings} of that schema.
+     * Rows are only pulled from the source as results are consumed, so the
+     * source may be unbounded.
+     *
+     * <p>The returned stream is parallel if the source is, and splits well
+     * under {@link Stream#parallel()} even when the source does not know its
+     * size: rows are then handed to other threads in batches sized from the
+     * declared cost of the expression. Every split evaluates with its own
+     * reusable {@link Context}, sharing the tree flattened once for the whole
+     * stream. Closing the returned stream closes the source.</p>
+     *
+     * @param rows variable rows
+     * @return stream of the results, in the order of the rows
+     * @throws Expr4jException if the tree is missing or malformed; invalid
+     *                         rows fail once they are evaluated
+     */
+    @NotNull
+    public Stream<T> stream(Stream<?> rows) {
+        Spliterator<T> results = new Rows<>(new Context<>(this), rows.spliterator(), Split.cost(root));
+        return StreamSupport.stream(results, rows.isParallel()).onClose(rows::close);
+    }
+
+    /**
+     * Lazily evaluates the expression on every row of an iterator, as
+     * {@link #stream(Stream)} does. The returned stream is sequential.
+     *
+     * @param rows variable rows
+     * @return stream of the results, in the order of the rows
+     * @throws Expr4jException if the tree is missing or malformed; invalid
+     *                         rows fail once they are evaluated
+     */
+    @NotNull
+    public Stream<T> stream(Iterator<?> rows) {
+        return stream(StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows, Spliterator.ORDERED), false));
+    }
+
+    /**
+     * Tells whether a child of an infix operator is printed in brackets: only
+     * infix children other than products that bind looser than the operator.
+     */
+    private boolean isBracketed(Operator<T> operator, Node child) {
+        Token token = child.getToken();
+        if (!(token instanceof Operator)) return false;
+
+        Operator<T> inner = (Operator<T>) token;
+        Operator.Type type = inner.getType();
+
+        return !inner.getLabel().equals("*") &&
+                (type == Operator.Type.INFIX || type == Operator.Type.INFIX_RTL) &&
+                operator.compareTo(inner) < 0;
+    }
+
+    /**
+     * Pushes pieces on a work stack so they are popped in the given order,
+     * skipping empty strings.
+     */
+    private static void push(List<Object> work, Object... pieces) {
+        for (int i = pieces.length - 1; i >= 0; i--)
+            if (!"".equals(pieces[i])) work.add(pieces[i]);
+    }
+
+    /**
+     * Pushes the pieces a node is printed as: strings printed as they are and
+     * child nodes printed in their place.
+     */
+    private void expand(Node node, List<Object> work) {
         Token token = node.getToken();
         List<Node> children = node.getChildren();
         String label = token.getLabel();
@@ -139,9 +615,14 @@ public class Expression<T> {
             if (children == null || children.size() != function.getParameters())
                 throw new Expr4jException("Invalid function: " + label);
 
-            return label + "(" + children.stream()
-                    .map(this::toString)
-                    .collect(Collectors.joining(", ")) + ")";
+            work.add(")");
+            for (int i = children.size() - 1; i >= 0; i--) {
+                work.add(children.get(i));
+                if (i > 0) work.add(", ");
+            }
+
+            work.add(label + "(");
+            return;
         }
 
         if (token instanceof Operator) {
@@ -153,63 +634,59 @@ public class Expression<T> {
                 throw new Expr4jException("Invalid operator: " + label);
 
             if (count == 2) {
-                StringBuilder sb = new StringBuilder();
-
-                Node left = children.get(0);
-                Token leftToken = left.getToken();
-
-                Node right = children.get(1);
-                Token rightToken = right.getToken();
-
-                if (leftToken instanceof Operator) {
-                    Operator<T> leftOperator = (Operator<T>) leftToken;
-                    Operator.Type leftType = leftOperator.getType();
-
-                    if (!leftOperator.getLabel().equals("*") &&
-                            (leftType == Operator.Type.INFIX || leftType == Operator.Type.INFIX_RTL) &&
-                            operator.compareTo(leftOperator) < 0)
-                        sb.append("(").append(toString(left)).append(")");
-                    else sb.append(toString(left));
-                }
-                else sb.append(toString(left));
-
-                if (rightToken instanceof Operator) {
-                    Operator<T> rightOperator = (Operator<T>) rightToken;
-                    Operator.Type rightType = rightOperator.getType();
-
-                    if (!rightOperator.getLabel().equals("*") &&
-                            (rightType == Operator.Type.INFIX || rightType == Operator.Type.INFIX_RTL) &&
-                            operator.compareTo(rightOperator) < 0)
-                        sb.append("(").append(toString(right)).append(")");
-                    else sb.append(toString(right));
-                }
-                else sb.append(toString(right));
+                Node left = children.get(0), right = children.get(1);
+                boolean l = isBracketed(operator, left), r = isBracketed(operator, right);
 
-                return sb.toString();
+                push(work, l ? "(" : "", left, l ? ")" : "", label, r ? "(" : "", right, r ? ")" : "");
+                return;
             }
 
-            boolean prefix = operator.getType() == Operator.Type.PREFIX;
+            boolean prefix = type == Operator.Type.PREFIX;
             Node child = children.get(0);
             Token childToken = child.getToken();
 
             if (label.equals("+") || label.equals("-")) {
                 if (childToken instanceof Operator) {
                     prefix = ((Operator<T>) childToken).getType() == Operator.Type.PREFIX;
-                    return label + (prefix ? "" : "(") + toString(child) + (prefix ? "" : ")");
+                    push(work, label + (prefix ? "" : "("), child, prefix ? "" : ")");
                 }
-
-                return label + toString(child);
+                else push(work, label, child);
+                return;
             }
 
             if (childToken instanceof Operator || childToken instanceof Function)
-                return (prefix ? label : "") + "("+ toString(child) + ")" + (prefix ? "" : (" " + label));
+                push(work, (prefix ? label : "") + "(", child, ")" + (prefix ? "" : (" " + label)));
 
-            return (prefix ? (label + " ") : "") + toString(child) + (prefix ? "" : (" " + label));
+            else push(work, prefix ? (label + " ") : "", child, prefix ? "" : (" " + label));
+            return;
         }
 
-        return token instanceof Operand ?
+        work.add(token instanceof Operand ?
                 codec.toString(((Operand<T>) token).getValue()) :
-                label;
+                label);
+    }
+
+    /**
+     * Prints a subtree as an infix string without recursing once per level:
+     * the pieces of each node are pushed on an explicit work stack, so deep
+     * trees only cost heap.
+     */
+    @NotNull
+    protected String toString(Node node) {
+        if (node == null) return "";
+
+        StringBuilder builder = new StringBuilder();
+        List<Object> work = new ArrayList<>();
+        work.add(node);
+
+        while (!work.isEmpty()) {
+            Object item = work.remove(work.size() - 1);
+
+            if (item instanceof String) builder.append((String) item);
+            else expand((Node) item, work);
+        }
+
+        return builder.toString();
     }
 
     /**
@@ -0,0 +1,134 @@
+package me.croabeast.expr4j.expression;
+
+import me.croabeast.expr4j.exception.Expr4jException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of the expressions built by a {@link Builder}, enabled with
+ * {@link Builder#enableCache(int)}. Entries are keyed by the source string
+ * together with the dictionary, its {@link Dictionary#getVersion() version}
+ * and the options of the builder, so changing any of them makes later builds
+ * miss instead of returning stale trees.
+ *
+ * <p>Entries are split into independently locked stripes, each evicting its
+ * least recently used entry once full. Concurrent builds of the same missing
+ * key collapse into one: the first caller builds the expression while the
+ * others wait for its result. Failed builds are not cached, and every caller
+ * waiting on them receives the same exception.</p>
+ *
+ * @param <T> result type produced by the cached expressions
+ */
+public final class ExpressionCache<T> {
+
+    private final StripedCache<Object, CompletableFuture<Expression<T>>> entries;
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacity maximum number of cached expressions
+     * @throws Expr4jException if the capacity is not positive
+     */
+    ExpressionCache(int capacity) {
+        this.entries = new StripedCache<>(capacity);
+    }
+
+    /**
+     * Returns the expression cached for a key, building it on a miss. Only the
+     * first of several concurrent callers missing the same key builds it.
+     *
+     * @param key     key of the expression
+     * @param builder builds the expression on a miss
+     * @return cached or built expression
+     */
+    Expression<T> get(Object key, Supplier<Expression<T>> builder) {
+        CompletableFuture<Expression<T>> future = entries.get(key), created = null;
+
+        if (future == null) {
+            created = new CompletableFuture<>();
+            future = entries.putIfAbsent(key, created);
+        }
+
+        if (future != null) {
+            hits.increment();
+
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw e;
+            }
+        }
+
+        misses.increment();
+
+        try {
+            Expression<T> expression = builder.get();
+            created.complete(expression);
+            return expression;
+        }
+        catch (RuntimeException | Error e) {
+            entries.remove(key, created);
+
+            created.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of builds answered from the cache, including those that
+     *         waited for a concurrent build of the same key
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of builds that had to parse their source
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of entries evicted to make room for new ones
+     */
+    public long getEvictions() {
+        return entries.getEvictions();
+    }
+
+    /**
+     * @return maximum number of cached expressions
+     */
+    public int getCapacity() {
+        return entries.getCapacity();
+    }
+
+    /**
+     * @return number of expressions currently cached
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Forgets every cached expression and resets the counters.
+     */
+    public void clear() {
+        entries.clear();
+        hits.reset();
+        misses.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "ExpressionCache{capacity=" + getCapacity() + ", hits=" + getHits() +
+                ", misses=" + getMisses() + ", evictions=" + getEvictions() + '}';
+    }
+}
@@ -0,0 +1,108 @@
+package me.croabeast.expr4j.expression;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator evaluating an expression on every row of a source of variable
+ * rows, as streamed by {@link Expression#stream(java.util.stream.Stream)} and
+ * {@link DoubleExpression#doubleStream(java.util.stream.Stream)}. Rows are
+ * pulled and evaluated one at a time, so the source is never collected.
+ *
+ * <p>Sources that know their size are split as they split themselves. Other
+ * sources, such as iterators, unbounded feeds or sequential pipelines, are
+ * split by buffering a batch of rows that another thread evaluates. The first batch
+ * holds about {@link #BATCH} units of declared cost, so cheap rows travel in
+ * large batches and expensive rows in small ones, and every following batch
+ * grows by the same amount.</p>
+ *
+ * <p>Every spliterator evaluates with scratch state of its own, created from
+ * the shared compiled form of the expression. Since a spliterator is only
+ * traversed by one thread at a time, no state is shared between threads.</p>
+ */
+abstract class Feed {
+
+    /**
+     * Declared cost of the rows of the first batch split from a source of
+     * unknown size.
+     */
+    static final int BATCH = 1 << 14;
+
+    /**
+     * Largest number of rows buffered by a single split.
+     */
+    private static final int MAX = 1 << 25;
+
+    private final Spliterator<?> rows;
+    private final int cost;
+
+    private int batch;
+    private Object row;
+
+    Feed(Spliterator<?> rows, int cost) {
+        this.rows = rows;
+        this.cost = cost;
+    }
+
+    /**
+     * Evaluates the next row with the given action.
+     */
+    final boolean advance(Consumer<Object> action) {
+        return rows.tryAdvance(action);
+    }
+
+    /**
+     * Evaluates every remaining row with the given action.
+     */
+    final void forEach(Consumer<Object> action) {
+        rows.forEachRemaining(action);
+    }
+
+    /**
+     * Returns the rows split from the source, or {@code null} if it cannot be
+     * split further.
+     */
+    final Spliterator<?> split() {
+        if (rows.hasCharacteristics(Spliterator.SIZED)) {
+            Spliterator<?> split = rows.trySplit();
+            if (split != null) return split;
+        }
+
+        int unit = Math.max(1, BATCH / cost);
+        int size = (int) Math.min(MAX, (long) batch + unit);
+
+        Object[] buffer = new Object[size];
+        int count = 0;
+
+        while (count < size && rows.tryAdvance(this::hold)) {
+            buffer[count++] = row;
+            row = null;
+        }
+
+        if (count == 0) return null;
+
+        batch = size;
+        return Spliterators.spliterator(buffer, 0, count, rows.characteristics() & Spliterator.ORDERED);
+    }
+
+    private void hold(Object row) {
+        this.row = row;
+    }
+
+    public final long estimateSize() {
+        return rows.estimateSize();
+    }
+
+    /**
+     * Returns the characteristics of the source that still hold once every
+     * row is replaced by its result.
+     */
+    final int characteristics(int extra) {
+        return rows.characteristics() & (Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED) | extra;
+    }
+
+    final int getCost() {
+        return cost;
+    }
+}
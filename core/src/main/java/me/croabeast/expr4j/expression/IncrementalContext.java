@@ -0,0 +1,314 @@
+package me.croabeast.expr4j.expression;
+
+import lombok.Getter;
+import me.croabeast.expr4j.Operations;
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.token.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Stateful evaluator of an {@link Expression} that only recomputes what the
+ * latest variable changes affect. Every operation node keeps the value it
+ * computed last, and every variable knows the nodes depending on it. Setting
+ * a variable to a different value marks those nodes stale, and the next
+ * evaluation recomputes stale nodes only, reusing the cached value of every
+ * other subtree.
+ *
+ * <p>Subtrees containing an operation that is not
+ * {@link Characteristics#isPure() pure}, such as {@code rand}, are recomputed
+ * on every evaluation, as are operations declaring no characteristics at all.
+ * Operations receiving lazy {@link Parameters} keep their short-circuit
+ * semantics: subtrees they skip are not computed and stay stale until an
+ * evaluation asks for them. Results are therefore the same a full
+ * {@link Expression#evaluate(Bindings)} with the same variables would
+ * produce.</p>
+ *
+ * <p>Values are compared with {@link Object#equals(Object)}, so assigning an
+ * equal value does not invalidate anything.</p>
+ *
+ * <p>Incremental contexts are not thread-safe, and reflect the tree of their
+ * expression at the moment they were created.</p>
+ *
+ * @param <T> result type produced by the expression
+ */
+@SuppressWarnings("unchecked")
+public final class IncrementalContext<T> {
+
+    private static final int VALUE = 0, VARIABLE = 1, UNARY = 2, BINARY = 3, GENERIC = 4;
+
+    /**
+     * Schema the context reads variables with.
+     */
+    @Getter
+    private final Schema<T> schema;
+
+    private final Expression<T> expression;
+
+    private final int[] kinds, slots;
+    private final int[][] children;
+    private final Object[] values;
+    private final Operation<T>[] operations;
+    private final Parameters<T>[] parameters;
+
+    /**
+     * Tells whether the subtree of a node only holds pure operations, so its
+     * value can be cached.
+     */
+    private final boolean[] pure;
+
+    /**
+     * Operation nodes depending on every variable slot.
+     */
+    private final int[][] dependents;
+
+    private final Object[] variables, cache;
+    private final boolean[] stale;
+
+    /**
+     * Flattens the tree of the given expression into a new context with every
+     * variable unset.
+     *
+     * @param expression expression to evaluate
+     * @throws Expr4jException if the tree is missing or malformed
+     */
+    public IncrementalContext(Expression<T> expression) {
+        Tape<T> tape = new Tape<>(expression);
+        this.schema = tape.getSchema();
+        this.expression = expression;
+
+        int size = tape.size();
+        this.kinds = new int[size];
+        this.slots = new int[size];
+        this.children = new int[size][];
+        this.values = new Object[size];
+        this.operations = new Operation[size];
+        this.pure = new boolean[size];
+
+        List<BitSet> variables = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            children[i] = tape.getChildren(i);
+            define(i, tape);
+
+            BitSet slots = new BitSet();
+            if (kinds[i] == VARIABLE) slots.set(this.slots[i]);
+
+            for (int child : children[i]) {
+                slots.or(variables.get(child));
+                pure[i] &= pure[child];
+            }
+
+            variables.add(slots);
+        }
+
+        this.dependents = new int[schema.size()][];
+        for (int s = 0; s < dependents.length; s++) {
+            int count = 0;
+            int[] list = new int[size];
+
+            for (int i = 0; i < size; i++)
+                if (operations[i] != null && variables.get(i).get(s)) list[count++] = i;
+
+            dependents[s] = Arrays.copyOf(list, count);
+        }
+
+        this.parameters = parameters();
+        this.variables = new Object[schema.size()];
+        this.cache = new Object[size];
+        this.stale = new boolean[size];
+        Arrays.fill(stale, true);
+    }
+
+    private void define(int index, Tape<T> tape) {
+        Operation<T> operation = tape.getOperation(index);
+        slots[index] = tape.getSlot(index);
+
+        if (operation == null) {
+            pure[index] = true;
+
+            if (slots[index] >= 0) kinds[index] = VARIABLE;
+            else values[index] = tape.getValue(index);
+            return;
+        }
+
+        int count = children[index].length;
+        operations[index] = operation;
+        pure[index] = ((Operation<T>) tape.getNode(index).getToken()).getCharacteristics().isPure();
+
+        if (count == 1 && Operations.isDirect(operation, UnaryOperation.class))
+            kinds[index] = UNARY;
+        else if (count == 2 && Operations.isDirect(operation, BinaryOperation.class))
+            kinds[index] = BINARY;
+        else kinds[index] = GENERIC;
+    }
+
+    private Parameters<T>[] parameters() {
+        Parameters<T>[] parameters = new Parameters[kinds.length];
+
+        for (int i = 0; i < kinds.length; i++) {
+            if (kinds[i] != GENERIC) continue;
+
+            Parameters<T> list = new Parameters<>();
+            for (int child : children[i])
+                list.add(new Parameter<>(current -> evaluate(child), null));
+
+            parameters[i] = list;
+        }
+
+        return parameters;
+    }
+
+    private T evaluate(int index) {
+        if (kinds[index] == VALUE) return (T) values[index];
+
+        if (kinds[index] == VARIABLE) {
+            Object value = variables[slots[index]];
+            if (value == null)
+                throw new Expr4jException("Variable not found: " + schema.getNames().get(slots[index]));
+
+            return (T) value;
+        }
+
+        if (pure[index] && !stale[index]) return (T) cache[index];
+
+        T value = compute(index);
+        cache[index] = value;
+        stale[index] = false;
+        return value;
+    }
+
+    private T compute(int index) {
+        int[] operands = children[index];
+
+        switch (kinds[index]) {
+            case UNARY:
+                return ((UnaryOperation<T>) operations[index]).evaluate(evaluate(operands[0]));
+
+            case BINARY:
+                return ((BinaryOperation<T>) operations[index])
+                        .evaluate(evaluate(operands[0]), evaluate(operands[1]));
+
+            default:
+                return operations[index].evaluate(parameters[index]);
+        }
+    }
+
+    /**
+     * Assigns the value of the variable stored in the given slot. Nodes
+     * depending on it are recomputed by the next evaluation, unless the value
+     * equals the current one.
+     *
+     * @param slot  slot index as reported by {@link Schema#slot(String)}
+     * @param value value to assign, or {@code null} to unset it
+     * @return this context for chaining
+     */
+    public IncrementalContext<T> set(int slot, T value) {
+        if (Objects.equals(variables[slot], value)) return this;
+
+        variables[slot] = value;
+        for (int node : dependents[slot]) stale[node] = true;
+
+        return this;
+    }
+
+    /**
+     * Assigns the value of a variable by name, as {@link #set(int, Object)}
+     * does.
+     *
+     * @param name  variable name
+     * @param value value to assign, or {@code null} to unset it
+     * @return this context for chaining
+     * @throws Expr4jException if the name is not a free variable of the schema
+     */
+    public IncrementalContext<T> set(String name, T value) {
+        int slot = schema.slot(name);
+        if (slot < 0)
+            throw new Expr4jException("Variable not found: " + name);
+
+        return set(slot, value);
+    }
+
+    /**
+     * Returns the value currently assigned to the given slot.
+     *
+     * @param slot slot index
+     * @return assigned value, or {@code null} if unset
+     */
+    public T get(int slot) {
+        return (T) variables[slot];
+    }
+
+    /**
+     * Evaluates the expression with the current variables, recomputing only
+     * the nodes affected by the changes made since the previous evaluation.
+     *
+     * @return computed result of the expression
+     * @throws Expr4jException if a required variable is unset
+     */
+    @NotNull
+    public T evaluate() {
+        return evaluate(kinds.length - 1);
+    }
+
+    /**
+     * Assigns every variable of the given map and evaluates the expression.
+     * Variables missing from the map keep their current value. Entries named
+     * after a constant override it for this evaluation only, which then
+     * computes the whole tree, see {@link Expression#overriddenBy(Map)}.
+     *
+     * @param variables mapping of variable names to values
+     * @return computed result of the expression
+     * @throws Expr4jException if a required variable is unset
+     */
+    @NotNull
+    public T evaluate(Map<String, T> variables) {
+        List<String> names = schema.getNames();
+
+        for (int i = 0; i < names.size(); i++) {
+            T value = variables.get(names.get(i));
+            if (value != null) set(i, value);
+        }
+
+        Expression<T> expression = this.expression.overriddenBy(variables);
+        if (expression == this.expression) return evaluate();
+
+        Map<String, T> values = new HashMap<>(variables);
+        for (int i = 0; i < names.size(); i++)
+            values.put(names.get(i), (T) this.variables[i]);
+
+        return expression.evaluate(values);
+    }
+
+    /**
+     * Assigns every variable from the given bindings and evaluates the
+     * expression.
+     *
+     * @param bindings bindings created from {@link #getSchema()}
+     * @return computed result of the expression
+     * @throws Expr4jException if the bindings belong to another schema or a
+     *                         required variable is unset
+     */
+    @NotNull
+    public T evaluate(Bindings<T> bindings) {
+        if (bindings.getSchema() != schema)
+            throw new Expr4jException("Bindings do not match the expression schema");
+
+        for (int i = 0; i < variables.length; i++) set(i, bindings.get(i));
+
+        return evaluate();
+    }
+
+    /**
+     * Forgets every cached value, so the next evaluation recomputes the whole
+     * tree. Variables keep their values.
+     *
+     * @return this context for chaining
+     */
+    public IncrementalContext<T> invalidate() {
+        Arrays.fill(stale, true);
+        Arrays.fill(cache, null);
+        return this;
+    }
+}
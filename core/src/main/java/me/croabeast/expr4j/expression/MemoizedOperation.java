@@ -0,0 +1,148 @@
+package me.croabeast.expr4j.expression;
+
+import lombok.Getter;
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.token.Characteristics;
+import me.croabeast.expr4j.token.Operation;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link Operation} that remembers the results of a pure operation by operand
+ * values, so repeated calls with equal operands are answered without
+ * recomputing them, across evaluations and across every expression using it.
+ * It pays off for expensive operations, such as high precision
+ * {@code BigDecimal} functions, whose operands recur.
+ *
+ * <p>Results are kept in the same striped LRU cache as
+ * {@link ExpressionCache}. The operation itself is called
+ * outside of any lock, hence two threads missing the same operands at once
+ * may both compute the result.</p>
+ *
+ * <p>Every operand is computed before the cache is looked up, so operations
+ * relying on lazy {@link Parameters} to skip some of them lose that behavior.
+ * Operands are compared with {@link Object#equals(Object)}, and {@code null}
+ * results are never cached.</p>
+ *
+ * @param <T> result type calculated by the operation
+ */
+public final class MemoizedOperation<T> implements Operation<T> {
+
+    /**
+     * Operation whose results are cached.
+     */
+    @Getter
+    private final Operation<T> operation;
+
+    private final StripedCache<Object, T> results;
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+    /**
+     * Creates a cache in front of a pure operation.
+     *
+     * @param operation operation whose results are cached
+     * @param capacity  maximum number of cached results
+     * @throws Expr4jException if the operation is not pure or the capacity is
+     *                         not positive
+     */
+    public MemoizedOperation(Operation<T> operation, int capacity) {
+        if (!operation.getCharacteristics().isPure())
+            throw new Expr4jException("Cannot memoize impure operation: " + operation.getLabel());
+
+        this.operation = operation;
+        this.results = new StripedCache<>(capacity);
+    }
+
+    @NotNull
+    @Override
+    public String getLabel() {
+        return operation.getLabel();
+    }
+
+    @NotNull
+    @Override
+    public Characteristics getCharacteristics() {
+        return operation.getCharacteristics();
+    }
+
+    /**
+     * Returns the cached result for the operands, computing and caching it on
+     * a miss.
+     *
+     * @param parameters operands of the call
+     * @return result of the operation
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T evaluate(Parameters<T> parameters) {
+        int size = parameters.size();
+        Object[] values = new Object[size];
+        for (int i = 0; i < size; i++) values[i] = parameters.result(i);
+
+        Object key = size == 1 ? values[0] : Arrays.asList(values);
+        if (key == null) key = Collections.singletonList(null);
+
+        T result = results.get(key);
+        if (result != null) {
+            hits.increment();
+            return result;
+        }
+
+        misses.increment();
+
+        Parameters<T> operands = new Parameters<>();
+        for (Object value : values) operands.add(new Parameter<>(() -> (T) value));
+
+        T value = operation.evaluate(operands);
+        if (value == null) return null;
+
+        results.put(key, value);
+        return value;
+    }
+
+    /**
+     * @return maximum number of cached results
+     */
+    public int getCapacity() {
+        return results.getCapacity();
+    }
+
+    /**
+     * @return number of calls answered from the cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of calls that had to compute their result
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of results currently cached
+     */
+    public int size() {
+        return results.size();
+    }
+
+    /**
+     * Forgets every cached result and resets the counters.
+     */
+    public void clear() {
+        results.clear();
+        hits.reset();
+        misses.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "MemoizedOperation{label='" + getLabel() + "', capacity=" + getCapacity() +
+                ", hits=" + getHits() + ", misses=" + getMisses() + '}';
+    }
+}
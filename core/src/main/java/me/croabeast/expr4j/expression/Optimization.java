@@ -0,0 +1,34 @@
+package me.croabeast.expr4j.expression;
+
+/**
+ * Optional rewriting passes that {@link Builder#build(String)} can run on the
+ * parsed tree before returning the expression. Every pass is disabled by
+ * default and can be turned on per builder with
+ * {@link Builder#enable(Optimization...)}.
+ */
+public enum Optimization {
+
+    /**
+     * Evaluates every operation whose operands are literals or dictionary
+     * constants once, replacing the subtree with a single {@code Operand}.
+     * Only operations declared {@link me.croabeast.expr4j.token.Characteristics#isPure() pure}
+     * are folded, so {@code rand} is always evaluated. Folded constants are
+     * no longer referenced, so variable maps cannot override them anymore.
+     */
+    FOLD_CONSTANTS,
+
+    /**
+     * Applies the {@link Rule rules} registered in the dictionary, such as
+     * removing {@code x*1} or expanding {@code x^2} into {@code x*x}. When
+     * constant folding is also enabled, the tree is folded again afterwards.
+     */
+    SIMPLIFY,
+
+    /**
+     * Turns the tree into a DAG where structurally identical pure subtrees,
+     * such as both {@code a*b} in {@code (a*b+c)/(a*b-c)}, are a single node.
+     * Every engine computes a shared node at most once per evaluation, and
+     * still only when an operation requests it.
+     */
+    ELIMINATE_COMMON_SUBEXPRESSIONS
+}
@@ -1,8 +1,7 @@
 package me.croabeast.expr4j.expression;
 
-import lombok.RequiredArgsConstructor;
-
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * Represents a single argument in an expression tree. Parameters defer
@@ -11,12 +10,58 @@ import java.util.Map;
  *
  * @param <T> evaluation type
  */
-@RequiredArgsConstructor
 public class Parameter<T> {
 
     private final Expression<T> expression;
     private final Node node;
-    private final Map<String, T> variables;
+    private final Evaluator<T> evaluator;
+    private final Bindings<T> bindings;
+
+    /**
+     * Creates a parameter that interprets the given node on demand.
+     *
+     * @param expression expression owning the node
+     * @param node       node to evaluate
+     * @param bindings   variable values used during evaluation
+     */
+    public Parameter(Expression<T> expression, Node node, Bindings<T> bindings) {
+        this.expression = expression;
+        this.node = node;
+        this.evaluator = null;
+        this.bindings = bindings;
+    }
+
+    /**
+     * Creates a parameter that interprets the given node on demand.
+     *
+     * @param expression expression owning the node
+     * @param node       node to evaluate
+     * @param variables  variable assignments used during evaluation
+     */
+    public Parameter(Expression<T> expression, Node node, Map<String, T> variables) {
+        this.expression = expression.overriddenBy(variables);
+        this.node = node;
+        this.evaluator = null;
+        this.bindings = this.expression.getSchema().bindings(variables);
+    }
+
+    /**
+     * Creates a parameter whose value is produced by the given supplier. This
+     * lets alternative evaluation engines hand lazily computed values to
+     * operations without exposing a syntax tree.
+     *
+     * @param supplier supplier invoked each time the result is requested
+     */
+    public Parameter(Supplier<T> supplier) {
+        this(bindings -> supplier.get(), null);
+    }
+
+    Parameter(Evaluator<T> evaluator, Bindings<T> bindings) {
+        this.expression = null;
+        this.node = null;
+        this.evaluator = evaluator;
+        this.bindings = bindings;
+    }
 
     /**
      * Evaluates the associated node within its expression context.
@@ -24,6 +69,8 @@ public class Parameter<T> {
      * @return computed parameter value
      */
     public T result() {
-        return expression.evaluate(node, variables).getValue();
+        return evaluator != null ?
+                evaluator.evaluate(bindings) :
+                expression.evaluate(node, bindings).getValue();
     }
 }
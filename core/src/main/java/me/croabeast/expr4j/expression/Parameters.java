@@ -33,6 +33,15 @@ public class Parameters<T> {
         return parameters.isEmpty();
     }
 
+    /**
+     * Returns the number of parameters.
+     *
+     * @return parameter count
+     */
+    public int size() {
+        return parameters.size();
+    }
+
     /**
      * Evaluates and returns the parameter at the specified index.
      *
@@ -0,0 +1,194 @@
+package me.croabeast.expr4j.expression;
+
+import lombok.Getter;
+import me.croabeast.expr4j.Operations;
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.token.*;
+
+import java.util.*;
+
+/**
+ * Register allocation shared by the columnar batches, see {@link Batch} and
+ * {@link DoubleBatch}. The planner walks the tree once, assigns every node a
+ * reference and lets the batch emit one kernel per operation node.
+ *
+ * <p>References are register indices, or the complement of a variable slot
+ * for values read straight from the input columns. The register of a node is
+ * reused as soon as its last eager parent has been planned, and nodes shared
+ * by several parents are planned once.</p>
+ *
+ * @param <T> value type of the expression
+ * @param <C> column type of the batch
+ */
+@SuppressWarnings("unchecked")
+abstract class Planner<T, C> {
+
+    private final Schema<T> schema;
+
+    /**
+     * Intermediate columns: constants are filled once, the others are
+     * {@code null} and allocated for every call.
+     */
+    @Getter
+    private final List<C> registers = new ArrayList<>();
+
+    /**
+     * Remaining eager parents of every node and the column each node was
+     * planned to, only used while planning.
+     */
+    private final Map<Node, Integer> uses = new IdentityHashMap<>(), references = new IdentityHashMap<>();
+    private final Deque<Integer> free = new ArrayDeque<>();
+
+    Planner(Schema<T> schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * Returns the offset of the first row of a batch in the column of a
+     * reference: registers always start at {@code 0}.
+     */
+    static int offset(int reference, int offset) {
+        return reference >= 0 ? 0 : offset;
+    }
+
+    /**
+     * Tells whether a resolved operation receives all of its operands at
+     * once, so its children can be computed column by column.
+     */
+    abstract boolean isEager(Operation<T> operation, int count);
+
+    /**
+     * Creates a column filled with a constant value.
+     */
+    abstract C constant(T value);
+
+    /**
+     * Emits the kernel of a node whose subtree is evaluated row by row.
+     */
+    abstract void lazy(Node node, int target);
+
+    /**
+     * Emits the kernel of an eager operation reading the columns of its
+     * arguments.
+     */
+    abstract void eager(Operation<T> operation, int[] arguments, int target);
+
+    /**
+     * Plans the tree rooted at the given node.
+     *
+     * @return reference to the column holding the result
+     * @throws Expr4jException if the tree is malformed
+     */
+    int plan(Node root) {
+        count(root);
+        int result = compile(root);
+
+        uses.clear();
+        references.clear();
+        free.clear();
+        return result;
+    }
+
+    private boolean isEager(Node node) {
+        Token token = node.getToken();
+        List<Node> children = node.getChildren();
+        if (children == null || !(token instanceof Operation)) return false;
+
+        return isEager(Operations.resolve((Operation<T>) token), children.size());
+    }
+
+    private void count(Node node) {
+        if (uses.merge(node, 1, Integer::sum) > 1 || !isEager(node)) return;
+
+        for (Node child : node.getChildren()) count(child);
+    }
+
+    private int allocate() {
+        Integer register = free.poll();
+        if (register != null) return register;
+
+        registers.add(null);
+        return registers.size() - 1;
+    }
+
+    private void release(Node node) {
+        int reference = references.get(node);
+        if (uses.merge(node, -1, Integer::sum) == 0 && reference >= 0 && registers.get(reference) == null)
+            free.push(reference);
+    }
+
+    private int fill(T value) {
+        registers.add(constant(value));
+        return registers.size() - 1;
+    }
+
+    private int compile(Node node) {
+        Integer reference = references.get(node);
+        if (reference != null) return reference;
+
+        reference = compute(node);
+        references.put(node, reference);
+        return reference;
+    }
+
+    private int compute(Node node) {
+        Token token = node.getToken();
+        List<Node> children = node.getChildren();
+        String label = token.getLabel();
+
+        if (token instanceof Variable) {
+            int slot = schema.slot(label);
+            if (slot >= 0) return ~slot;
+
+            T constant = schema.getConstant(label);
+            if (constant == null)
+                throw new Expr4jException("Variable not found: " + label);
+
+            return fill(constant);
+        }
+
+        if (token instanceof Function) {
+            Function<T> function = (Function<T>) token;
+            if (children == null || children.size() != function.getParameters())
+                throw new Expr4jException("Invalid function: " + label);
+
+            return compile(function, node);
+        }
+
+        if (token instanceof Operator) {
+            Operator<T> operator = (Operator<T>) token;
+            Operator.Type type = operator.getType();
+
+            int count = type == Operator.Type.INFIX || type == Operator.Type.INFIX_RTL ? 2 : 1;
+            if (children == null || children.size() != count)
+                throw new Expr4jException("Invalid operator: " + label);
+
+            return compile(operator, node);
+        }
+
+        if (!(token instanceof Operand))
+            throw new Expr4jException("Invalid token: " + token.getClass());
+
+        return fill(((Operand<T>) token).getValue());
+    }
+
+    private int compile(Operation<T> token, Node node) {
+        if (!isEager(node)) {
+            int target = allocate();
+            lazy(node, target);
+            return target;
+        }
+
+        List<Node> children = node.getChildren();
+
+        int[] arguments = new int[children.size()];
+        for (int i = 0; i < arguments.length; i++)
+            arguments[i] = compile(children.get(i));
+
+        for (Node child : children) release(child);
+
+        int target = allocate();
+        eager(Operations.resolve(token), arguments, target);
+        return target;
+    }
+}
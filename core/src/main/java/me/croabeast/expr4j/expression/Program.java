@@ -0,0 +1,190 @@
+package me.croabeast.expr4j.expression;
+
+import lombok.Getter;
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.token.Function;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Set of named expressions over the same variables, built together by
+ * {@link Builder#build(Map)} and evaluated in a single pass per row. The trees
+ * of all outputs are merged into one DAG: pure subtrees appearing in several
+ * outputs, or several times in one, are a single node computed at most once
+ * per evaluation, whichever output asks for it first.
+ *
+ * <p>Variables of all outputs share one {@link Schema}, so a row is bound once
+ * and every output reads the same {@link Bindings}. Outputs that are not
+ * needed can be left out with {@link #select(String...)}, which evaluates
+ * only the nodes the remaining outputs depend on.</p>
+ *
+ * <p>Programs do not hold mutable state and can be shared between threads as
+ * long as the registered operations are thread-safe.</p>
+ *
+ * @param <T> result type produced by the expressions
+ */
+@SuppressWarnings("unchecked")
+public final class Program<T> {
+
+    /**
+     * Names of the outputs, in evaluation order.
+     */
+    @Getter
+    private final List<String> names;
+
+    /**
+     * Variable layout shared by every output.
+     */
+    @Getter
+    private final Schema<T> schema;
+
+    private final Dictionary<T> dictionary;
+    private final Codec<T> codec;
+
+    /**
+     * Expression rooted at the node joining every output.
+     */
+    private final Expression<T> merged;
+
+    private final Map<String, Node> outputs;
+    private final Evaluator<T>[] evaluators;
+
+    /**
+     * Compiles the merged trees of the given outputs. The schema is resolved
+     * from a root joining every output, which is never evaluated, so nodes
+     * reachable from several outputs are numbered as shared.
+     *
+     * @param dictionary dictionary the outputs were built with
+     * @param codec      codec the outputs were built with
+     * @param outputs    roots of the outputs by name, with their common
+     *                   subtrees already shared
+     * @throws Expr4jException if there is no output or a tree is malformed
+     */
+    Program(Dictionary<T> dictionary, Codec<T> codec, Map<String, Node> outputs) {
+        if (outputs.isEmpty())
+            throw new Expr4jException("No outputs defined");
+
+        this.dictionary = dictionary;
+        this.codec = codec;
+        this.outputs = Collections.unmodifiableMap(new LinkedHashMap<>(outputs));
+        this.names = Collections.unmodifiableList(new ArrayList<>(outputs.keySet()));
+
+        Node root = new Node(new Function<T>("", outputs.size(), parameters -> {
+            throw new Expr4jException("Programs are evaluated per output");
+        }));
+        root.getChildren().addAll(outputs.values());
+
+        this.merged = new Expression<>(dictionary, codec);
+        merged.setRoot(root);
+        this.schema = merged.getSchema();
+
+        this.evaluators = new Evaluator[names.size()];
+        for (int i = 0; i < evaluators.length; i++)
+            evaluators[i] = new CompiledExpression<>(merged, this.outputs.get(names.get(i))).evaluator();
+    }
+
+    /**
+     * Returns a program computing only the given outputs, in the given order.
+     * Nodes no remaining output depends on are never evaluated, and variables
+     * only used by the other outputs are dropped from the schema.
+     *
+     * @param names names of the outputs to keep
+     * @return program computing the selected outputs
+     * @throws Expr4jException if a name is not an output of this program
+     */
+    @NotNull
+    public Program<T> select(String... names) {
+        Map<String, Node> outputs = new LinkedHashMap<>();
+
+        for (String name : names) {
+            Node root = this.outputs.get(name);
+            if (root == null)
+                throw new Expr4jException("Output not found: " + name);
+
+            outputs.put(name, root);
+        }
+
+        return new Program<>(dictionary, codec, outputs);
+    }
+
+    /**
+     * Returns a standalone expression computing a single output.
+     *
+     * @param name output name
+     * @return expression sharing the tree of the output
+     * @throws Expr4jException if the name is not an output of this program
+     */
+    @NotNull
+    public Expression<T> getExpression(String name) {
+        Node root = outputs.get(name);
+        if (root == null)
+            throw new Expr4jException("Output not found: " + name);
+
+        Expression<T> expression = new Expression<>(dictionary, codec);
+        expression.setRoot(root);
+        return expression;
+    }
+
+    /**
+     * Evaluates every output for one row of reusable bindings.
+     *
+     * @param bindings bindings created from {@link #getSchema()}
+     * @param results  array receiving the outputs, ordered as
+     *                 {@link #getNames()}
+     * @throws Expr4jException if the bindings belong to another schema, the
+     *                         array is too short or a required variable is
+     *                         unset
+     */
+    public void evaluate(Bindings<T> bindings, T[] results) {
+        if (bindings.getSchema() != schema)
+            throw new Expr4jException("Bindings do not match the program schema");
+
+        if (results.length < evaluators.length)
+            throw new Expr4jException("Expected " + evaluators.length + " results, got " + results.length);
+
+        Bindings<T> frame = bindings.frame();
+        for (int i = 0; i < evaluators.length; i++)
+            results[i] = evaluators[i].evaluate(frame);
+    }
+
+    /**
+     * Evaluates every output using the provided variable assignments. Entries
+     * named after a constant override it, in which case the outputs are
+     * compiled again for the call, see {@link Expression#overriddenBy(Map)}.
+     *
+     * @param variables mapping of variable names to values, may be {@code null}
+     * @return mapping of output names to their results, ordered as
+     *         {@link #getNames()}
+     * @throws Expr4jException if a required variable has no value
+     */
+    @NotNull
+    public Map<String, T> evaluate(Map<String, T> variables) {
+        Expression<T> expression = merged.overriddenBy(variables);
+        Bindings<T> frame = expression.getSchema().bindings(variables).frame();
+
+        Map<String, T> results = new LinkedHashMap<>();
+        for (int i = 0; i < evaluators.length; i++) {
+            Evaluator<T> evaluator = expression == merged ? evaluators[i] :
+                    new CompiledExpression<>(expression, outputs.get(names.get(i))).evaluator();
+
+            results.put(names.get(i), evaluator.evaluate(frame));
+        }
+
+        return results;
+    }
+
+    /**
+     * Returns the outputs as {@code name = expression} lines.
+     *
+     * @return human-readable representation of the program
+     */
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner("\n");
+        for (String name : names)
+            joiner.add(name + " = " + getExpression(name));
+
+        return joiner.toString();
+    }
+}
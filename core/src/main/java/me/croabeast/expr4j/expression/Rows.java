@@ -0,0 +1,85 @@
+package me.croabeast.expr4j.expression;
+
+import me.croabeast.expr4j.exception.Expr4jException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * {@link Feed} producing the results of a generic {@link Expression}. Every
+ * spliterator evaluates through a {@link Context} of its own, sharing the
+ * flattened tree of the one created for the whole stream, and fills the same
+ * reusable {@link Bindings} for every row.
+ *
+ * @param <T> result type produced by the expression
+ */
+@SuppressWarnings("unchecked")
+final class Rows<T> extends Feed implements Spliterator<T> {
+
+    private final Context<T> context;
+    private final Bindings<T> bindings;
+
+    Rows(Context<T> context, Spliterator<?> rows, int cost) {
+        super(rows, cost);
+        this.context = context;
+        this.bindings = context.getSchema().bindings();
+    }
+
+    /**
+     * Evaluates a row given as a map of variables, an array ordered by schema
+     * slot, or bindings of the schema.
+     */
+    private T evaluate(Object row) {
+        if (row instanceof Bindings) return context.evaluate((Bindings<T>) row);
+
+        Schema<T> schema = context.getSchema();
+
+        if (row instanceof Map) {
+            Map<String, T> variables = (Map<String, T>) row;
+            if (!schema.overrides(variables).isEmpty()) return context.evaluate(variables);
+
+            List<String> names = schema.getNames();
+
+            for (int i = 0; i < names.size(); i++)
+                bindings.set(i, variables.get(names.get(i)));
+
+            return context.evaluate(bindings);
+        }
+
+        if (row instanceof Object[]) {
+            Object[] values = (Object[]) row;
+            if (values.length < schema.size())
+                throw new Expr4jException("Expected " + schema.size() + " variables, got " + values.length);
+
+            for (int i = 0; i < schema.size(); i++)
+                bindings.set(i, (T) values[i]);
+
+            return context.evaluate(bindings);
+        }
+
+        throw new Expr4jException("Invalid row: " + (row == null ? null : row.getClass().getName()));
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        return advance(row -> action.accept(evaluate(row)));
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        forEach(row -> action.accept(evaluate(row)));
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        Spliterator<?> rows = split();
+        return rows == null ? null : new Rows<>(context.copy(), rows, getCost());
+    }
+
+    @Override
+    public int characteristics() {
+        return characteristics(NONNULL);
+    }
+}
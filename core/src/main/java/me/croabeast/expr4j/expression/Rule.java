@@ -0,0 +1,34 @@
+package me.croabeast.expr4j.expression;
+
+import me.croabeast.expr4j.exception.Expr4jException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Rewrite rule applied by {@link Optimization#SIMPLIFY}. Rules are registered
+ * per {@link Dictionary}, so every numeric domain decides which rewrites keep
+ * its own exactness guarantees.
+ *
+ * <p>The tree is simplified bottom up: a rule only sees nodes whose children
+ * have already been simplified, and rules are tried again on every
+ * replacement they return. A rule must not modify the node it receives; it
+ * returns a new subtree instead, which may reuse the existing children.</p>
+ *
+ * @param <T> value type of the expression
+ */
+@FunctionalInterface
+public interface Rule<T> {
+
+    /**
+     * Rewrites a node into a cheaper equivalent.
+     *
+     * @param node       node to rewrite
+     * @param dictionary dictionary the expression was built with, used to
+     *                   identify and create operations
+     * @return replacement subtree, or {@code null} if the rule does not apply
+     * @throws Expr4jException if the node cannot be rewritten, in which case
+     *                         it is kept as is
+     */
+    @Nullable
+    Node rewrite(@NotNull Node node, @NotNull Dictionary<T> dictionary);
+}
@@ -0,0 +1,208 @@
+package me.croabeast.expr4j.expression;
+
+import lombok.Getter;
+import me.croabeast.expr4j.token.Token;
+import me.croabeast.expr4j.token.Variable;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Variable layout of an {@link Expression}. Every free variable referenced by
+ * the tree is assigned an integer slot in order of first appearance, while
+ * names registered as dictionary constants are resolved to their values once,
+ * when the schema is created.
+ *
+ * <p>Slots index the values stored in {@link Bindings}, so callers evaluating
+ * the same expression repeatedly can fill a reusable bindings object instead
+ * of building a new map for every call.</p>
+ *
+ * <p>When the tree is a DAG, for example after
+ * {@link Optimization#ELIMINATE_COMMON_SUBEXPRESSIONS}, the schema also
+ * numbers every operation node reachable from more than one parent, so the
+ * engines can keep its value for the rest of the evaluation.</p>
+ *
+ * @param <T> value type of the variables
+ */
+public final class Schema<T> {
+
+    /**
+     * Names of the free variables, ordered by slot.
+     */
+    @Getter
+    private final List<String> names;
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final Map<String, T> constants = new HashMap<>();
+
+    private final Map<Node, Integer> shares = new IdentityHashMap<>();
+
+    /**
+     * Collects the variables of the tree rooted at the given node.
+     *
+     * @param root       root of the syntax tree, may be {@code null}
+     * @param dictionary dictionary used to resolve constants
+     */
+    Schema(Node root, Dictionary<T> dictionary) {
+        this(root, dictionary, Collections.emptySet());
+    }
+
+    /**
+     * Collects the variables of the tree rooted at the given node, reading
+     * the given names as free variables even if they are constants.
+     *
+     * @param root       root of the syntax tree, may be {@code null}
+     * @param dictionary dictionary used to resolve constants
+     * @param variables  constant names to read as free variables
+     */
+    Schema(Node root, Dictionary<T> dictionary, Set<String> variables) {
+        List<String> names = new ArrayList<>();
+
+        Set<Node> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        Deque<Node> nodes = new ArrayDeque<>();
+        if (root != null) nodes.push(root);
+
+        while (!nodes.isEmpty()) {
+            Node node = nodes.pop();
+            Token token = node.getToken();
+
+            if (token instanceof Variable) {
+                String label = token.getLabel();
+                if (slots.containsKey(label) || constants.containsKey(label))
+                    continue;
+
+                T constant = variables.contains(label) ? null : dictionary.getConstant(label);
+                if (constant != null) {
+                    constants.put(label, constant);
+                    continue;
+                }
+
+                slots.put(label, names.size());
+                names.add(label);
+                continue;
+            }
+
+            List<Node> children = node.getChildren();
+            if (children == null) continue;
+
+            if (!visited.add(node)) {
+                shares.putIfAbsent(node, shares.size());
+                continue;
+            }
+
+            for (int i = children.size() - 1; i >= 0; i--)
+                nodes.push(children.get(i));
+        }
+
+        this.names = Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Returns the number of free variable slots.
+     *
+     * @return slot count
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Returns the slot assigned to a free variable.
+     *
+     * @param name variable name
+     * @return slot index, or {@code -1} if the name is not a free variable of
+     *         the expression
+     */
+    public int slot(String name) {
+        Integer slot = slots.get(name);
+        return slot != null ? slot : -1;
+    }
+
+    /**
+     * Returns the number of operation nodes shared by several parents.
+     *
+     * @return share count, {@code 0} if the tree has no shared nodes
+     */
+    public int shares() {
+        return shares.size();
+    }
+
+    /**
+     * Returns the index of a node shared by several parents. Engines use it
+     * to keep the value of the node once computed.
+     *
+     * @param node node of the expression tree
+     * @return share index, or {@code -1} if the node has a single parent
+     */
+    public int share(Node node) {
+        Integer share = shares.get(node);
+        return share != null ? share : -1;
+    }
+
+    /**
+     * Returns the value a constant referenced by the expression was resolved
+     * to when the schema was created.
+     *
+     * @param name constant name
+     * @return constant value, or {@code null} if the name is not a constant
+     *         referenced by the expression
+     */
+    public T getConstant(String name) {
+        return constants.get(name);
+    }
+
+    /**
+     * Returns the referenced constants a map assigns a value to.
+     *
+     * @param variables variable assignments, may be {@code null}
+     * @return names of the overridden constants, empty if there are none
+     */
+    Set<String> overrides(Map<String, ?> variables) {
+        if (variables == null || variables.isEmpty() || constants.isEmpty())
+            return Collections.emptySet();
+
+        Set<String> names = new HashSet<>();
+        for (String name : constants.keySet())
+            if (variables.get(name) != null) names.add(name);
+
+        return names;
+    }
+
+    /**
+     * Creates empty bindings for this schema.
+     *
+     * @return new bindings with every slot unset
+     */
+    @NotNull
+    public Bindings<T> bindings() {
+        return new Bindings<>(this);
+    }
+
+    /**
+     * Creates bindings filled from a map of variable assignments. Entries not
+     * matching any free variable are ignored.
+     *
+     * <p>Bindings only hold free variables, so entries named after a
+     * referenced constant are ignored as well. The {@code evaluate} methods
+     * taking a map let such entries override the constant instead.</p>
+     *
+     * @param variables variable assignments, may be {@code null}
+     * @return new bindings holding the matching values
+     */
+    @NotNull
+    public Bindings<T> bindings(Map<String, T> variables) {
+        Bindings<T> bindings = new Bindings<>(this);
+        if (variables == null || variables.isEmpty()) return bindings;
+
+        for (int i = 0; i < names.size(); i++)
+            bindings.set(i, variables.get(names.get(i)));
+
+        return bindings;
+    }
+
+    @Override
+    public String toString() {
+        return names.toString();
+    }
+}
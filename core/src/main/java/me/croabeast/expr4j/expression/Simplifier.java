@@ -0,0 +1,71 @@
+package me.croabeast.expr4j.expression;
+
+import me.croabeast.expr4j.exception.Expr4jException;
+
+import java.util.List;
+
+/**
+ * Implements {@link Optimization#SIMPLIFY}, applying the {@link Rule rules} of
+ * the expression's dictionary bottom up until none of them applies.
+ *
+ * <p>A rule throwing an {@link Expr4jException} is skipped, so the node keeps
+ * its original form and any error is still reported when the expression is
+ * evaluated. Other exceptions point to a faulty rule and are propagated.</p>
+ *
+ * @param <T> value type of the expression
+ */
+final class Simplifier<T> {
+
+    /**
+     * Maximum number of consecutive rewrites of a single node, guarding
+     * against rules that undo each other.
+     */
+    private static final int LIMIT = 64;
+
+    private final Expression<T> expression;
+    private final Dictionary<T> dictionary;
+    private final List<Rule<T>> rules;
+
+    Simplifier(Expression<T> expression) {
+        this.expression = expression;
+        this.dictionary = expression.getDictionary();
+        this.rules = dictionary.getRules();
+    }
+
+    private Node rewrite(Node node) {
+        for (Rule<T> rule : rules) {
+            try {
+                Node rewritten = rule.rewrite(node, dictionary);
+                if (rewritten != null && rewritten != node) return rewritten;
+            } catch (Expr4jException ignored) {}
+        }
+
+        return null;
+    }
+
+    private Node simplify(Node node) {
+        List<Node> children = node.getChildren();
+        if (children != null)
+            for (int i = 0; i < children.size(); i++)
+                children.set(i, simplify(children.get(i)));
+
+        for (int i = 0; i < LIMIT; i++) {
+            Node rewritten = rewrite(node);
+            if (rewritten == null) break;
+
+            node = rewritten;
+        }
+
+        return node;
+    }
+
+    /**
+     * Simplifies the whole tree of the expression.
+     */
+    void simplify() {
+        Node root = expression.getRoot();
+        if (root == null || rules.isEmpty()) return;
+
+        expression.setRoot(simplify(root));
+    }
+}
@@ -0,0 +1,137 @@
+package me.croabeast.expr4j.expression;
+
+import me.croabeast.expr4j.token.Operation;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork/join task spreading the rows of a {@link Batch} or {@link DoubleBatch}
+ * evaluation over a {@link ForkJoinPool}. Every task evaluates a disjoint
+ * range of rows with its own intermediate columns, so tasks share nothing but
+ * the read-only input columns and write to separate parts of the result.
+ *
+ * <p>The number of rows per task adapts to the cost of a row. A first range,
+ * sized from the declared {@link me.croabeast.expr4j.token.Characteristics#getCost()
+ * cost} of the tree, is evaluated by the calling thread and timed; the
+ * remaining rows are then split into tasks of roughly {@link #TARGET}
+ * nanoseconds each. A {@code double} sum thus runs in tasks of many thousands
+ * of rows, while a high-precision {@code BigDecimal} formula gets a handful of
+ * rows per task.</p>
+ */
+final class Split extends RecursiveAction {
+
+    /**
+     * Approximate running time of a single task, in nanoseconds.
+     */
+    static final long TARGET = 100_000;
+
+    /**
+     * Declared cost of the rows evaluated to time a row.
+     */
+    private static final int PROBE = 4096;
+
+    private final Range range;
+    private final int from, to, grain;
+
+    private Split(Range range, int from, int to, int grain) {
+        this.range = range;
+        this.from = from;
+        this.to = to;
+        this.grain = grain;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= grain) {
+            range.evaluate(from, to);
+            return;
+        }
+
+        int middle = (from + to) >>> 1;
+        invokeAll(new Split(range, from, middle, grain), new Split(range, middle, to, grain));
+    }
+
+    /**
+     * Returns the declared cost of evaluating a tree once, counting every
+     * shared node once and every operation as at least one unit.
+     */
+    static int cost(Node root) {
+        Set<Node> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Node> nodes = new ArrayDeque<>();
+        nodes.push(root);
+
+        long cost = 0;
+        while (!nodes.isEmpty()) {
+            Node node = nodes.pop();
+            List<Node> children = node.getChildren();
+            if (children == null || !visited.add(node)) continue;
+
+            if (node.getToken() instanceof Operation)
+                cost += Math.max(1, ((Operation<?>) node.getToken()).getCharacteristics().getCost());
+
+            for (Node child : children) nodes.push(child);
+        }
+
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, cost));
+    }
+
+    /**
+     * Evaluates all rows, timing a first range in the calling thread and
+     * splitting the others across the pool.
+     *
+     * @param pool  pool running the tasks
+     * @param rows  number of rows
+     * @param cost  declared cost of a row, see {@link #cost(Node)}
+     * @param range evaluates a range of rows
+     */
+    static void run(ForkJoinPool pool, int rows, int cost, Range range) {
+        int probe = Math.min(rows, Math.max(1, PROBE / cost));
+
+        long start = System.nanoTime();
+        range.evaluate(0, probe);
+
+        double nanos = Math.max(1.0, System.nanoTime() - start) / probe;
+        int grain = (int) Math.max(1, Math.min(Integer.MAX_VALUE, TARGET / nanos));
+
+        if (rows - probe <= grain || pool.getParallelism() == 1) {
+            range.evaluate(probe, rows);
+            return;
+        }
+
+        try {
+            pool.invoke(new Split(range, probe, rows, grain));
+        } catch (RuntimeException e) {
+            throw original(e);
+        }
+    }
+
+    /**
+     * Unwraps the copies the pool makes of an exception every time it
+     * crosses a thread, so callers see the exception actually thrown.
+     */
+    private static RuntimeException original(RuntimeException exception) {
+        Throwable cause = exception.getCause();
+
+        while (cause != null && cause.getClass() == exception.getClass()) {
+            exception = (RuntimeException) cause;
+            cause = exception.getCause();
+        }
+
+        return exception;
+    }
+
+    /**
+     * Evaluation of a range of rows.
+     */
+    @FunctionalInterface
+    interface Range {
+
+        /**
+         * @param from index of the first row
+         * @param to   index after the last row
+         */
+        void evaluate(int from, int to);
+    }
+}
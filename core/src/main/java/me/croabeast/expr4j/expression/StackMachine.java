@@ -0,0 +1,367 @@
+package me.croabeast.expr4j.expression;
+
+import lombok.Getter;
+import me.croabeast.expr4j.Operations;
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.token.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Flat postfix form of an {@link Expression}. The tree is translated into a
+ * single array of integer opcodes backed by a pool of literal values and a
+ * table of resolved operations, and evaluation is one loop over an operand
+ * stack, with no recursion and no objects per node.
+ *
+ * <p>Operations implementing {@link UnaryOperation} or
+ * {@link BinaryOperation} without overriding
+ * {@link Operation#evaluate(Parameters)} pop their operands straight from the
+ * stack. Any other operation keeps its lazy semantics: the code of each
+ * argument is laid out as a separate range that the main loop jumps over, and
+ * the operation runs a range only when it requests that parameter. Nodes
+ * shared by several parents are laid out the same way and run at most once
+ * per evaluation, the first time one of their parents needs them.</p>
+ *
+ * <p>The program itself is immutable and can be shared between threads; the
+ * operand stack and the reusable {@link Parameters} live in a per-thread
+ * state.</p>
+ *
+ * @param <T> result type produced by the expression
+ */
+@SuppressWarnings("unchecked")
+public final class StackMachine<T> {
+
+    private static final int PUSH = 0, LOAD = 1, UNARY = 2, BINARY = 3, CALL = 4, JUMP = 5, SHARE = 6;
+
+    /**
+     * Schema the program reads variables with.
+     */
+    @Getter
+    private final Schema<T> schema;
+
+    private final Expression<T> expression;
+
+    private final int[] code;
+    private final Object[] pool;
+    private final Operation<T>[] operations;
+
+    /**
+     * Argument ranges of every lazy call, as consecutive start and end
+     * offsets into the code.
+     */
+    private final int[][] calls;
+
+    /**
+     * Code range of every node shared by several parents, as start and end
+     * offsets into the code.
+     */
+    private final int[][] shares;
+
+    private final int depth;
+
+    private final ThreadLocal<State> states = new ThreadLocal<>();
+
+    /**
+     * Translates the tree of the given expression into a postfix program.
+     *
+     * @param expression expression to translate
+     * @throws Expr4jException if the tree is missing or malformed
+     */
+    public StackMachine(Expression<T> expression) {
+        Node root = expression.getRoot();
+        if (root == null)
+            throw new Expr4jException("Root node not defined");
+
+        this.schema = expression.getSchema();
+        this.expression = expression;
+
+        Assembler assembler = new Assembler();
+        this.depth = assembler.emit(root);
+
+        this.code = Arrays.copyOf(assembler.code, assembler.length);
+        this.pool = assembler.pool.toArray();
+        this.operations = assembler.operations.toArray(new Operation[0]);
+        this.calls = assembler.calls.toArray(new int[0][]);
+        this.shares = assembler.shares;
+    }
+
+    private T run(State state, int pc, int end) {
+        Object[] stack = state.stack;
+        int base = state.sp, sp = base;
+
+        while (pc < end) {
+            switch (code[pc]) {
+                case PUSH:
+                    stack[sp++] = pool[code[pc + 1]];
+                    pc += 2;
+                    break;
+
+                case LOAD:
+                    stack[sp++] = state.bindings.value(code[pc + 1]);
+                    pc += 2;
+                    break;
+
+                case UNARY:
+                    stack[sp - 1] = ((UnaryOperation<T>) operations[code[pc + 1]]).evaluate((T) stack[sp - 1]);
+                    pc += 2;
+                    break;
+
+                case BINARY:
+                    sp--;
+                    stack[sp - 1] = ((BinaryOperation<T>) operations[code[pc + 1]])
+                            .evaluate((T) stack[sp - 1], (T) stack[sp]);
+                    pc += 2;
+                    break;
+
+                case CALL:
+                    state.sp = sp;
+                    stack[sp++] = operations[code[pc + 1]].evaluate(state.parameters[code[pc + 2]]);
+                    pc += 3;
+                    break;
+
+                case JUMP:
+                    pc = code[pc + 1];
+                    break;
+
+                case SHARE:
+                    int share = code[pc + 1];
+                    Object value = state.memo[share];
+
+                    if (value == null) {
+                        state.sp = sp;
+                        int[] range = shares[share];
+                        value = state.memo[share] = run(state, range[0], range[1]);
+                    }
+
+                    stack[sp++] = value;
+                    pc += 2;
+                    break;
+            }
+        }
+
+        state.sp = base;
+        return (T) stack[sp - 1];
+    }
+
+    /**
+     * Evaluates the program with the given bindings.
+     *
+     * @param bindings bindings created from {@link #getSchema()}
+     * @return computed result of the expression
+     * @throws Expr4jException if the bindings belong to another schema or a
+     *                         required variable is unset
+     */
+    @NotNull
+    public T evaluate(Bindings<T> bindings) {
+        if (bindings.getSchema() != schema)
+            throw new Expr4jException("Bindings do not match the expression schema");
+
+        State state = states.get();
+        if (state == null) states.set(state = new State());
+        else if (state.busy) state = new State();
+
+        state.busy = true;
+        state.bindings = bindings;
+        state.sp = 0;
+
+        try {
+            return run(state, 0, code.length);
+        }
+        finally {
+            Arrays.fill(state.memo, null);
+            state.bindings = null;
+            state.busy = false;
+        }
+    }
+
+    /**
+     * Evaluates the program using the provided variable assignments. Entries
+     * named after a constant override it through a temporary program, see
+     * {@link Expression#overriddenBy(Map)}.
+     *
+     * @param variables mapping of variable names to values, may be {@code null}
+     * @return computed result of the expression
+     */
+    @NotNull
+    public T evaluate(Map<String, T> variables) {
+        Expression<T> expression = this.expression.overriddenBy(variables);
+        if (expression != this.expression)
+            return new StackMachine<>(expression).evaluate(variables);
+
+        return evaluate(schema.bindings(variables));
+    }
+
+    /**
+     * Evaluates the program relying solely on dictionary constants.
+     *
+     * @return computed result
+     */
+    @NotNull
+    public T evaluate() {
+        return evaluate(schema.bindings());
+    }
+
+    /**
+     * Translates a tree into postfix code, collecting literals and operations
+     * into growable pools.
+     */
+    private final class Assembler {
+
+        private int[] code = new int[16];
+        private int length;
+
+        private final List<Object> pool = new ArrayList<>();
+        private final List<Operation<T>> operations = new ArrayList<>();
+        private final List<int[]> calls = new ArrayList<>();
+
+        private final int[][] shares = new int[schema.shares()][];
+        private final int[] depths = new int[shares.length];
+
+        private void write(int... values) {
+            if (length + values.length > code.length)
+                code = Arrays.copyOf(code, Math.max(code.length * 2, length + values.length));
+
+            for (int value : values) code[length++] = value;
+        }
+
+        private int constant(Object value) {
+            pool.add(value);
+            return pool.size() - 1;
+        }
+
+        private int operation(Operation<T> operation) {
+            operations.add(operation);
+            return operations.size() - 1;
+        }
+
+        /**
+         * Emits the code of a subtree. The code of a node shared by several
+         * parents is laid out once as a separate range, and every occurrence
+         * only refers to it.
+         *
+         * @return operand stack slots needed to evaluate the subtree
+         */
+        private int emit(Node node) {
+            int share = node.getChildren() != null ? schema.share(node) : -1;
+            if (share < 0) return compute(node);
+
+            if (shares[share] == null) {
+                int jump = length;
+                write(JUMP, 0);
+
+                int start = length;
+                depths[share] = compute(node);
+                shares[share] = new int[] {start, length};
+
+                code[jump + 1] = length;
+            }
+
+            write(SHARE, share);
+            return depths[share];
+        }
+
+        private int compute(Node node) {
+            Token token = node.getToken();
+            List<Node> children = node.getChildren();
+            String label = token.getLabel();
+
+            if (token instanceof Variable) {
+                int slot = schema.slot(label);
+                if (slot >= 0) {
+                    write(LOAD, slot);
+                    return 1;
+                }
+
+                T constant = schema.getConstant(label);
+                if (constant == null)
+                    throw new Expr4jException("Variable not found: " + label);
+
+                write(PUSH, constant(constant));
+                return 1;
+            }
+
+            int count;
+            if (token instanceof Function) {
+                count = ((Function<T>) token).getParameters();
+                if (children == null || children.size() != count)
+                    throw new Expr4jException("Invalid function: " + label);
+            }
+            else if (token instanceof Operator) {
+                Operator.Type type = ((Operator<T>) token).getType();
+
+                count = type == Operator.Type.INFIX || type == Operator.Type.INFIX_RTL ? 2 : 1;
+                if (children == null || children.size() != count)
+                    throw new Expr4jException("Invalid operator: " + label);
+            }
+            else if (token instanceof Operand) {
+                write(PUSH, constant(((Operand<T>) token).getValue()));
+                return 1;
+            }
+            else throw new Expr4jException("Invalid token: " + token.getClass());
+
+            Operation<T> operation = Operations.resolve((Operation<T>) token);
+
+            if (count == 1 && Operations.isDirect(operation, UnaryOperation.class)) {
+                int depth = emit(children.get(0));
+                write(UNARY, operation(operation));
+                return depth;
+            }
+
+            if (count == 2 && Operations.isDirect(operation, BinaryOperation.class)) {
+                int depth = Math.max(emit(children.get(0)), 1 + emit(children.get(1)));
+                write(BINARY, operation(operation));
+                return depth;
+            }
+
+            int jump = length;
+            write(JUMP, 0);
+
+            int[] ranges = new int[count * 2];
+            int depth = 1;
+
+            for (int i = 0; i < count; i++) {
+                ranges[2 * i] = length;
+                depth = Math.max(depth, emit(children.get(i)));
+                ranges[2 * i + 1] = length;
+            }
+
+            code[jump + 1] = length;
+
+            calls.add(ranges);
+            write(CALL, operation(operation), calls.size() - 1);
+            return depth;
+        }
+    }
+
+    /**
+     * Operand stack and reusable parameters of one thread.
+     */
+    private final class State {
+
+        private final Object[] stack = new Object[depth];
+        private final Parameters<T>[] parameters = new Parameters[calls.length];
+        private final Object[] memo = new Object[shares.length];
+
+        private Bindings<T> bindings;
+        private int sp;
+        private boolean busy;
+
+        private State() {
+            for (int i = 0; i < parameters.length; i++) {
+                int[] ranges = calls[i];
+
+                Parameters<T> list = new Parameters<>();
+                for (int j = 0; j < ranges.length; j += 2) {
+                    int start = ranges[j], end = ranges[j + 1];
+                    list.add(new Parameter<>(current -> run(this, start, end), null));
+                }
+
+                parameters[i] = list;
+            }
+        }
+    }
+}
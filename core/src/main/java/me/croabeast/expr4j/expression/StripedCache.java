@@ -0,0 +1,165 @@
+package me.croabeast.expr4j.expression;
+
+import lombok.Getter;
+import me.croabeast.expr4j.exception.Expr4jException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded map backing {@link ExpressionCache} and {@link MemoizedOperation}.
+ * Entries are split into independently locked stripes, each evicting its
+ * least recently used entry once full, so concurrent callers rarely contend.
+ * Every method locks a single stripe, except {@link #size()} and
+ * {@link #clear()} which visit them one after the other.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+final class StripedCache<K, V> {
+
+    /**
+     * Maximum number of stripes, also the minimum number of entries each
+     * stripe holds when the capacity allows it.
+     */
+    private static final int STRIPES = 16;
+
+    /**
+     * Maximum number of entries.
+     */
+    @Getter
+    private final int capacity;
+
+    private final Stripe<K, V>[] stripes;
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacity maximum number of entries
+     * @throws Expr4jException if the capacity is not positive
+     */
+    @SuppressWarnings("unchecked")
+    StripedCache(int capacity) {
+        if (capacity < 1)
+            throw new Expr4jException("Invalid capacity: " + capacity);
+
+        this.capacity = capacity;
+
+        int count = Math.min(STRIPES, Integer.highestOneBit(Math.max(1, capacity / STRIPES)));
+        this.stripes = new Stripe[count];
+
+        for (int i = 0; i < count; i++)
+            stripes[i] = new Stripe<>(capacity / count + (i < capacity % count ? 1 : 0), evictions);
+    }
+
+    private Stripe<K, V> stripe(Object key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return stripes[(hash ^ hash >>> 16) & stripes.length - 1];
+    }
+
+    /**
+     * @return value of the key, or {@code null} if it is not cached
+     */
+    V get(K key) {
+        Stripe<K, V> stripe = stripe(key);
+
+        synchronized (stripe) {
+            return stripe.get(key);
+        }
+    }
+
+    /**
+     * Caches a value, replacing the current one of the key.
+     */
+    void put(K key, V value) {
+        Stripe<K, V> stripe = stripe(key);
+
+        synchronized (stripe) {
+            stripe.put(key, value);
+        }
+    }
+
+    /**
+     * Caches a value unless the key already has one.
+     *
+     * @return current value of the key, or {@code null} if the given one was
+     *         cached
+     */
+    V putIfAbsent(K key, V value) {
+        Stripe<K, V> stripe = stripe(key);
+
+        synchronized (stripe) {
+            return stripe.putIfAbsent(key, value);
+        }
+    }
+
+    /**
+     * Forgets a key if it is still mapped to the given value.
+     */
+    void remove(K key, V value) {
+        Stripe<K, V> stripe = stripe(key);
+
+        synchronized (stripe) {
+            stripe.remove(key, value);
+        }
+    }
+
+    /**
+     * @return number of entries evicted to make room for new ones
+     */
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return number of entries currently cached
+     */
+    int size() {
+        int size = 0;
+
+        for (Stripe<K, V> stripe : stripes)
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+
+        return size;
+    }
+
+    /**
+     * Forgets every entry and resets the eviction counter.
+     */
+    void clear() {
+        for (Stripe<K, V> stripe : stripes)
+            synchronized (stripe) {
+                stripe.clear();
+            }
+
+        evictions.reset();
+    }
+
+    /**
+     * Access-ordered map evicting its least recently used entry once it holds
+     * more than its share of the capacity.
+     */
+    private static final class Stripe<K, V> extends LinkedHashMap<K, V> {
+
+        private final int limit;
+        private final LongAdder evictions;
+
+        private Stripe(int limit, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.limit = limit;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if (size() <= limit) return false;
+
+            evictions.increment();
+            return true;
+        }
+    }
+}
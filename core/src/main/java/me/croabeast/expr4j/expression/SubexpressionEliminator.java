@@ -0,0 +1,123 @@
+package me.croabeast.expr4j.expression;
+
+import me.croabeast.expr4j.Operations;
+import me.croabeast.expr4j.token.*;
+
+import java.util.*;
+
+/**
+ * Implements {@link Optimization#ELIMINATE_COMMON_SUBEXPRESSIONS}. The tree is
+ * hash-consed bottom up: every subtree made only of pure operations is looked
+ * up by its token and the identity of its already shared children, and
+ * replaced by the first equal subtree found. The result is a DAG whose shared
+ * nodes the engines compute at most once per evaluation, see
+ * {@link Schema}.
+ *
+ * <p>Children of commutative operations are compared in any order, so
+ * {@code a*b} and {@code b*a} share the same node. Subtrees containing an
+ * impure operation are never shared.</p>
+ *
+ * @param <T> value type of the expression
+ */
+@SuppressWarnings("unchecked")
+final class SubexpressionEliminator<T> {
+
+    private final Map<Key, Node> nodes = new HashMap<>();
+
+    private static boolean isPure(Token token) {
+        return token instanceof Operation && ((Operation<?>) token).getCharacteristics().isPure();
+    }
+
+    /**
+     * Replaces the children of the given node by their shared instances.
+     *
+     * @return shared node equal to the given one, or {@code null} if the
+     *         subtree is impure
+     */
+    private Node intern(Node node) {
+        Token token = node.getToken();
+        List<Node> children = node.getChildren();
+
+        boolean pure = children == null || isPure(token);
+
+        if (children != null)
+            for (int i = 0; i < children.size(); i++) {
+                Node child = intern(children.get(i));
+                if (child == null) pure = false;
+                else children.set(i, child);
+            }
+
+        if (!pure) return null;
+
+        Node shared = nodes.putIfAbsent(new Key(token, children), node);
+        return shared != null ? shared : node;
+    }
+
+    /**
+     * Shares the common subtrees of a tree, including those equal to a
+     * subtree of a tree previously eliminated by this instance.
+     *
+     * @return shared root of the tree
+     */
+    Node eliminate(Node root) {
+        Node shared = intern(root);
+        return shared != null ? shared : root;
+    }
+
+    /**
+     * Shares the common subtrees of the whole tree of the expression.
+     */
+    void eliminate(Expression<T> expression) {
+        Node root = expression.getRoot();
+        if (root != null) expression.setRoot(eliminate(root));
+    }
+
+    /**
+     * Structural identity of a node whose children are already shared.
+     */
+    private static final class Key {
+
+        private final Object token;
+        private final Node[] children;
+        private final int hash;
+
+        private Key(Token token, List<Node> children) {
+            if (token instanceof Variable)
+                this.token = token.getLabel();
+            else if (token instanceof Operand)
+                this.token = Arrays.asList(((Operand<?>) token).getValue());
+            else
+                this.token = Operations.resolve((Operation<Object>) token);
+
+            Node[] nodes = children == null ? new Node[0] : children.toArray(new Node[0]);
+            if (token instanceof Operation && ((Operation<?>) token).getCharacteristics().isCommutative())
+                Arrays.sort(nodes, Comparator.comparingInt(System::identityHashCode));
+
+            this.children = nodes;
+
+            int hash = this.token.hashCode();
+            for (Node node : nodes) hash = 31 * hash + System.identityHashCode(node);
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key key = (Key) o;
+            if (hash != key.hash || children.length != key.children.length || !token.equals(key.token))
+                return false;
+
+            for (int i = 0; i < children.length; i++)
+                if (children[i] != key.children[i]) return false;
+
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
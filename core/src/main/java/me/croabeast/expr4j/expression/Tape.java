@@ -0,0 +1,202 @@
+package me.croabeast.expr4j.expression;
+
+import lombok.Getter;
+import me.croabeast.expr4j.Operations;
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.token.*;
+
+import java.util.*;
+
+/**
+ * Flat form of the tree of an {@link Expression}, listing its nodes in post
+ * order so every operand comes before the operations using it. Nodes
+ * reachable from several parents get a single index, and children are
+ * referenced by index.
+ *
+ * <p>Every index is either a variable read from a {@link #getSchema() schema}
+ * slot, a value known in advance, such as an operand or a constant, or an
+ * operation with the delegate of its token already resolved through
+ * {@link Operations#resolve(Operation)}. Evaluators running over the nodes,
+ * such as {@link IncrementalContext}, only have to classify operations.</p>
+ *
+ * <p>Tapes reflect the tree of their expression at the moment they were
+ * created.</p>
+ *
+ * @param <T> result type produced by the expression
+ */
+@SuppressWarnings("unchecked")
+public final class Tape<T> {
+
+    /**
+     * Schema the variable slots refer to.
+     */
+    @Getter
+    private final Schema<T> schema;
+
+    private final Node[] nodes;
+    private final int[] slots;
+    private final int[][] children;
+    private final Object[] values;
+    private final Operation<T>[] operations;
+
+    /**
+     * Flattens the tree of the given expression.
+     *
+     * @param expression expression to flatten
+     * @throws Expr4jException if the tree is missing or malformed
+     */
+    public Tape(Expression<T> expression) {
+        Node root = expression.getRoot();
+        if (root == null)
+            throw new Expr4jException("Root node not defined");
+
+        this.schema = expression.getSchema();
+
+        List<Node> nodes = new ArrayList<>();
+        Map<Node, Integer> indices = new IdentityHashMap<>();
+        collect(root, nodes, indices);
+
+        int size = nodes.size();
+        this.nodes = nodes.toArray(new Node[0]);
+        this.slots = new int[size];
+        this.children = new int[size][];
+        this.values = new Object[size];
+        this.operations = new Operation[size];
+
+        for (int i = 0; i < size; i++) {
+            Node node = this.nodes[i];
+            int count = define(i, node);
+
+            children[i] = new int[count];
+            for (int j = 0; j < count; j++)
+                children[i][j] = indices.get(node.getChildren().get(j));
+        }
+    }
+
+    /**
+     * Lists the nodes in post order, so every child comes before its parents,
+     * giving nodes reachable from several parents a single index.
+     */
+    private static void collect(Node root, List<Node> nodes, Map<Node, Integer> indices) {
+        Deque<Node> stack = new ArrayDeque<>();
+        Set<Node> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        stack.push(root);
+
+        while (!stack.isEmpty()) {
+            Node node = stack.peek();
+            List<Node> children = node.getChildren();
+
+            if (visited.add(node) && children != null) {
+                for (int i = children.size() - 1; i >= 0; i--)
+                    if (!indices.containsKey(children.get(i))) stack.push(children.get(i));
+                continue;
+            }
+
+            stack.pop();
+            if (indices.putIfAbsent(node, nodes.size()) == null) nodes.add(node);
+        }
+    }
+
+    private int define(int index, Node node) {
+        Token token = node.getToken();
+        List<Node> children = node.getChildren();
+        String label = token.getLabel();
+        slots[index] = -1;
+
+        if (token instanceof Variable) {
+            int slot = schema.slot(label);
+            if (slot >= 0) {
+                slots[index] = slot;
+                return 0;
+            }
+
+            T constant = schema.getConstant(label);
+            if (constant == null)
+                throw new Expr4jException("Variable not found: " + label);
+
+            values[index] = constant;
+            return 0;
+        }
+
+        int count;
+        if (token instanceof Function) {
+            count = ((Function<T>) token).getParameters();
+            if (children == null || children.size() != count)
+                throw new Expr4jException("Invalid function: " + label);
+        }
+        else if (token instanceof Operator) {
+            Operator.Type type = ((Operator<T>) token).getType();
+
+            count = type == Operator.Type.INFIX || type == Operator.Type.INFIX_RTL ? 2 : 1;
+            if (children == null || children.size() != count)
+                throw new Expr4jException("Invalid operator: " + label);
+        }
+        else if (token instanceof Operand) {
+            values[index] = ((Operand<T>) token).getValue();
+            return 0;
+        }
+        else throw new Expr4jException("Invalid token: " + token.getClass());
+
+        operations[index] = Operations.resolve((Operation<T>) token);
+        return count;
+    }
+
+    /**
+     * Returns the number of distinct nodes. The root is the last one.
+     *
+     * @return number of nodes
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * Returns the node of the tree at an index.
+     *
+     * @param index index of the node
+     * @return node of the tree
+     */
+    public Node getNode(int index) {
+        return nodes[index];
+    }
+
+    /**
+     * Returns the schema slot a node reads its value from.
+     *
+     * @param index index of the node
+     * @return variable slot, or {@code -1} if the node is not a variable
+     */
+    public int getSlot(int index) {
+        return slots[index];
+    }
+
+    /**
+     * Returns the value of an operand or constant node.
+     *
+     * @param index index of the node
+     * @return known value, or {@code null} for variables and operations
+     */
+    public T getValue(int index) {
+        return (T) values[index];
+    }
+
+    /**
+     * Returns the operation computing a node.
+     *
+     * @param index index of the node
+     * @return resolved operation, or {@code null} for variables and values
+     */
+    public Operation<T> getOperation(int index) {
+        return operations[index];
+    }
+
+    /**
+     * Returns the indices of the operands of a node, in order.
+     *
+     * @param index index of the node
+     * @return copy of the operand indices, empty for variables and values
+     */
+    public int[] getChildren(int index) {
+        return children[index].clone();
+    }
+}
@@ -1,16 +1,18 @@
 package me.croabeast.expr4j.expression;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import me.croabeast.expr4j.exception.Expr4jException;
 import me.croabeast.expr4j.token.*;
 import org.jetbrains.annotations.NotNull;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * Breaks an expression string into a list of {@link Token} instances. The
@@ -25,6 +27,15 @@ import java.util.stream.Collectors;
  * symbols would otherwise be ambiguous (e.g., <code>2x</code> or
  * <code>(a+b)(c+d)</code>).</p>
  *
+ * <p>The input is read in a single pass without regular expressions. Operator
+ * and function symbols are matched by longest match against a trie of the
+ * dictionary, built on first use and reused until the
+ * {@link Dictionary#getVersion() version} of the dictionary changes, so a
+ * tokenizer can be shared by every build and called from several threads at
+ * once. Literals are delimited by {@link Codec#scan(CharSequence, int)},
+ * unless the codec only overrides {@link Codec#getPatterns()}, whose patterns
+ * are then used instead.</p>
+ *
  * @param <T> operand type produced by the tokenizer
  */
 @RequiredArgsConstructor
@@ -45,6 +56,20 @@ public class Tokenizer<T> {
      */
     private final Codec<T> codec;
 
+    /**
+     * Symbols compiled for the latest dictionary version seen.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile Lexicon lexicon;
+
+    private Lexicon lexicon() {
+        Lexicon lexicon = this.lexicon;
+        long version = dictionary.getVersion();
+
+        if (lexicon != null && lexicon.version == version) return lexicon;
+        return this.lexicon = new Lexicon(version);
+    }
+
     @SuppressWarnings("unchecked")
     private boolean postOrInFixOperatorAllowed(Token token) {
         if (token == null) return false;
@@ -63,6 +88,46 @@ public class Tokenizer<T> {
             list.add(dictionary.getOperator("*", null));
     }
 
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Finds the end of the variable name starting at the given index: letters,
+     * then optional digits, then optional letters, as in {@code x2} or
+     * {@code x2b}.
+     */
+    private static int identifier(String expression, int index) {
+        int length = expression.length(), i = index;
+
+        while (i < length && isLetter(expression.charAt(i))) i++;
+        while (i < length && isDigit(expression.charAt(i))) i++;
+        while (i < length && isLetter(expression.charAt(i))) i++;
+
+        return i;
+    }
+
+    private int literal(Lexicon lexicon, Matcher[] literals, String expression, int index) {
+        if (literals == null) return codec.scan(expression, index);
+
+        for (int i = 0; i < literals.length; i++) {
+            if (literals[i] == null) literals[i] = lexicon.literals[i].matcher(expression);
+
+            Matcher matcher = literals[i].region(index, expression.length());
+            if (matcher.lookingAt()) return matcher.end();
+        }
+
+        return index;
+    }
+
     /**
      * Converts the raw expression string into a sequence of tokens.
      *
@@ -71,38 +136,30 @@ public class Tokenizer<T> {
      * @throws Expr4jException if unknown symbols or malformed syntax are found
      */
     @NotNull
+    @SuppressWarnings("unchecked")
     public List<Token> tokenize(String expression) {
-        if (expression == null || expression.isEmpty() || expression.chars().allMatch(Character::isWhitespace))
+        if (expression == null || expression.isEmpty())
             throw new Expr4jException("Expression is blank, empty or null");
 
         List<Token> list = new ArrayList<>();
-
-        Pattern pattern = Pattern.compile(dictionary.getExecutables()
-                .stream().map(Pattern::quote)
-                .sorted((e1, e2) -> (e2.length() - e1.length()))
-                .collect(Collectors.joining("|")));
-
-        Pattern unary = Pattern.compile("[+-]");
-        Pattern sep = Pattern.compile("[(),]");
-        Pattern var = Pattern.compile("[a-zA-Z]+[0-9]*[a-zA-Z]*");
-        Pattern whitespace = Pattern.compile("\\s+");
-
-        List<Pattern> operands = new ArrayList<>();
-        for (String string : codec.getPatterns()) operands.add(Pattern.compile(string));
+        Lexicon lexicon = lexicon();
+        Matcher[] literals = lexicon.literals == null ? null : new Matcher[lexicon.literals.length];
 
         boolean probableUnary = true;
-        int index = 0;
         Token lastToken = null;
 
-        outer: while (index < expression.length()) {
-            Matcher matcher;
+        int index = 0, length = expression.length();
 
-            matcher = sep.matcher(expression.substring(index));
-            if (matcher.lookingAt()) {
-                String match = matcher.group();
-                index += match.length();
+        while (index < length) {
+            char c = expression.charAt(index);
+
+            if (c == '(' || c == ')' || c == ',') {
+                index++;
+
+                Separator separator = c == '(' ?
+                        Separator.OPEN_BRACKET :
+                        c == ')' ? Separator.CLOSE_BRACKET : Separator.COMMA;
 
-                Separator separator = Separator.getSeparator(match);
                 if (separator == Separator.OPEN_BRACKET) {
                     addImplicitMultiplication(list, lastToken);
                     probableUnary = true;
@@ -114,12 +171,10 @@ public class Tokenizer<T> {
                 continue;
             }
 
-            matcher = unary.matcher(expression.substring(index));
-            if (probableUnary && matcher.lookingAt()) {
-                String match = matcher.group();
-                index += match.length();
+            if (probableUnary && (c == '+' || c == '-')) {
+                index++;
 
-                Operation<T> operator = dictionary.getOperator(match, Operator.Type.PREFIX);
+                Operation<T> operator = dictionary.getOperator(c == '+' ? "+" : "-", Operator.Type.PREFIX);
                 list.add(operator);
 
                 probableUnary = false;
@@ -127,9 +182,8 @@ public class Tokenizer<T> {
                 continue;
             }
 
-            matcher = pattern.matcher(expression.substring(index));
-            if (matcher.lookingAt()) {
-                String match = matcher.group();
+            String match = lexicon.symbols.match(expression, index);
+            if (match != null) {
                 index += match.length();
 
                 if (dictionary.hasFunction(match)) {
@@ -164,48 +218,131 @@ public class Tokenizer<T> {
                 continue;
             }
 
-            for (Pattern number : operands) {
-                matcher = number.matcher(expression.substring(index));
-                if (!matcher.lookingAt()) continue;
-
-                String match = matcher.group();
-                index += match.length();
-
+            int end = literal(lexicon, literals, expression, index);
+            if (end > index) {
                 addImplicitMultiplication(list, lastToken);
 
-                Operand<T> operand = new Operand<>(codec.toOperand(match));
+                Operand<T> operand = new Operand<>(codec.toOperand(expression.substring(index, end)));
                 list.add(operand);
 
+                index = end;
                 probableUnary = false;
                 lastToken = operand;
-                continue outer;
+                continue;
             }
 
-            matcher = var.matcher(expression.substring(index));
-            if (matcher.lookingAt()) {
-                String match = matcher.group();
-                index += match.length();
-
+            if (isLetter(c)) {
+                end = identifier(expression, index);
                 addImplicitMultiplication(list, lastToken);
 
-                Variable variable = new Variable(match);
+                Variable variable = new Variable(expression.substring(index, end));
                 list.add(variable);
 
+                index = end;
                 probableUnary = false;
                 lastToken = variable;
-
                 continue;
             }
 
-            matcher = whitespace.matcher(expression.substring(index));
-            if (matcher.lookingAt()) {
-                index += matcher.group().length();
+            if (isWhitespace(c)) {
+                index++;
                 continue;
             }
 
-            throw new Expr4jException("Invalid expression at '" + matcher.group() + "'");
+            throw new Expr4jException("Invalid expression at '" + expression.substring(index) + "'");
         }
 
+        if (list.isEmpty())
+            throw new Expr4jException("Expression is blank, empty or null");
+
         return list;
     }
+
+    /**
+     * Symbols of the dictionary, and the literal patterns of codecs that do
+     * not scan literals themselves.
+     */
+    private final class Lexicon {
+
+        private final long version;
+        private final Trie symbols = new Trie();
+        private final Pattern[] literals;
+
+        private Lexicon(long version) {
+            this.version = version;
+            for (String symbol : dictionary.getExecutables()) symbols.add(symbol);
+
+            this.literals = scans() ? null : codec.getPatterns().stream().map(Pattern::compile).toArray(Pattern[]::new);
+        }
+
+        /**
+         * Tells whether literals can be delimited by the codec, which is true
+         * unless it overrides its patterns but not the method scanning them.
+         */
+        private boolean scans() {
+            try {
+                Class<?> type = codec.getClass();
+                Method scan = type.getMethod("scan", CharSequence.class, int.class);
+                Method patterns = type.getMethod("getPatterns");
+
+                return scan.getDeclaringClass() != Codec.class || patterns.getDeclaringClass() == Codec.class;
+            } catch (NoSuchMethodException e) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Prefix tree of symbols, matching the longest symbol starting at a
+     * position.
+     */
+    private static final class Trie {
+
+        private char[] keys = new char[0];
+        private Trie[] children = new Trie[0];
+        private String symbol;
+
+        private void add(String symbol) {
+            Trie node = this;
+
+            for (int i = 0; i < symbol.length(); i++) {
+                char c = symbol.charAt(i);
+                Trie child = node.next(c);
+
+                if (child == null) {
+                    int size = node.keys.length;
+                    node.keys = Arrays.copyOf(node.keys, size + 1);
+                    node.children = Arrays.copyOf(node.children, size + 1);
+
+                    node.keys[size] = c;
+                    node.children[size] = child = new Trie();
+                }
+
+                node = child;
+            }
+
+            if (!symbol.isEmpty()) node.symbol = symbol;
+        }
+
+        private Trie next(char c) {
+            for (int i = 0; i < keys.length; i++)
+                if (keys[i] == c) return children[i];
+
+            return null;
+        }
+
+        private String match(String text, int index) {
+            Trie node = this;
+            String match = null;
+
+            for (int i = index; i < text.length(); i++) {
+                node = node.next(text.charAt(i));
+                if (node == null) break;
+
+                if (node.symbol != null) match = node.symbol;
+            }
+
+            return match;
+        }
+    }
 }
@@ -0,0 +1,162 @@
+package me.croabeast.expr4j.token;
+
+import lombok.Getter;
+import me.croabeast.expr4j.exception.Expr4jException;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Algebraic and runtime properties an {@link Operation} declares about itself.
+ * Optimizers and caches rely on them to decide what they may fold, reorder,
+ * share or memoize, so every flag must only be set when it holds for all
+ * operands of the operation's domain.
+ *
+ * <p>Instances are immutable. Start from {@link #pure()} or
+ * {@link #impure()} and chain the remaining properties:</p>
+ * <pre>{@code
+ * Characteristics.pure().commutative().associative().cost(1)
+ * }</pre>
+ *
+ * <p>Operations that declare nothing are reported as {@link #UNKNOWN}, which
+ * is impure and therefore never rewritten.</p>
+ */
+@Getter
+public final class Characteristics {
+
+    /**
+     * Characteristics of an operation that declares nothing: impure, with no
+     * algebraic properties and the default cost.
+     */
+    public static final Characteristics UNKNOWN = new Characteristics(false, false, false, false, 1);
+
+    private static final Characteristics PURE = new Characteristics(true, false, false, false, 1);
+
+    /**
+     * Whether the result only depends on the operands and evaluating the
+     * operation has no side effects, so equal calls may be shared, cached or
+     * computed ahead of time.
+     */
+    private final boolean pure;
+
+    /**
+     * Whether the order of the operands does not change the result.
+     */
+    private final boolean commutative;
+
+    /**
+     * Whether nested applications can be regrouped, as in
+     * {@code (a + b) + c == a + (b + c)}. For floating-point domains this
+     * holds up to rounding.
+     */
+    private final boolean associative;
+
+    /**
+     * Whether applying the operation again does not change the result: for
+     * unary operations {@code f(f(x)) == f(x)}, for the others
+     * {@code f(x, x) == x}.
+     */
+    private final boolean idempotent;
+
+    /**
+     * Relative evaluation cost, where {@code 1} is a single addition.
+     */
+    private final int cost;
+
+    private Characteristics(boolean pure, boolean commutative, boolean associative, boolean idempotent, int cost) {
+        if (cost < 0)
+            throw new Expr4jException("Invalid cost: " + cost);
+
+        this.pure = pure;
+        this.commutative = commutative;
+        this.associative = associative;
+        this.idempotent = idempotent;
+        this.cost = cost;
+    }
+
+    /**
+     * Returns characteristics of a pure operation with no algebraic
+     * properties and the default cost.
+     *
+     * @return pure characteristics
+     */
+    @NotNull
+    public static Characteristics pure() {
+        return PURE;
+    }
+
+    /**
+     * Returns characteristics of an impure operation, equivalent to
+     * {@link #UNKNOWN}.
+     *
+     * @return impure characteristics
+     */
+    @NotNull
+    public static Characteristics impure() {
+        return UNKNOWN;
+    }
+
+    /**
+     * Returns a copy that also declares the operation commutative.
+     *
+     * @return updated characteristics
+     */
+    @NotNull
+    public Characteristics commutative() {
+        return new Characteristics(pure, true, associative, idempotent, cost);
+    }
+
+    /**
+     * Returns a copy that also declares the operation associative.
+     *
+     * @return updated characteristics
+     */
+    @NotNull
+    public Characteristics associative() {
+        return new Characteristics(pure, commutative, true, idempotent, cost);
+    }
+
+    /**
+     * Returns a copy that also declares the operation idempotent.
+     *
+     * @return updated characteristics
+     */
+    @NotNull
+    public Characteristics idempotent() {
+        return new Characteristics(pure, commutative, associative, true, cost);
+    }
+
+    /**
+     * Returns a copy with the given relative cost.
+     *
+     * @param cost relative evaluation cost, {@code 1} being a single addition
+     * @return updated characteristics
+     * @throws Expr4jException if the cost is negative
+     */
+    @NotNull
+    public Characteristics cost(int cost) {
+        return new Characteristics(pure, commutative, associative, idempotent, cost);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Characteristics)) return false;
+
+        Characteristics that = (Characteristics) o;
+        return pure == that.pure && commutative == that.commutative &&
+                associative == that.associative && idempotent == that.idempotent &&
+                cost == that.cost;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (pure ? 1 : 0) | (commutative ? 2 : 0) | (associative ? 4 : 0) | (idempotent ? 8 : 0);
+        return 31 * result + cost;
+    }
+
+    @Override
+    public String toString() {
+        return "Characteristics{pure=" + pure + ", commutative=" + commutative +
+                ", associative=" + associative + ", idempotent=" + idempotent +
+                ", cost=" + cost + '}';
+    }
+}
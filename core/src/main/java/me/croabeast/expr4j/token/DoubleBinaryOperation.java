@@ -0,0 +1,47 @@
+package me.croabeast.expr4j.token;
+
+/**
+ * Primitive specialization of {@link BinaryOperation} for {@code double}
+ * values. Evaluation engines that know about this interface call
+ * {@link #evaluate(double, double)} directly, avoiding a {@link Double}
+ * allocation for every intermediate result.
+ */
+@FunctionalInterface
+public interface DoubleBinaryOperation extends BinaryOperation<Double> {
+
+    /**
+     * Applies the operation to primitive left and right operands.
+     *
+     * @param left  first operand
+     * @param right second operand
+     * @return operation result
+     */
+    double evaluate(double left, double right);
+
+    /**
+     * Applies the operation to ranges of left and right operands, as done by
+     * {@link me.croabeast.expr4j.expression.DoubleBatch}. Implementations may
+     * override it with a loop the JIT can vectorize.
+     *
+     * @param left    array holding the left operands
+     * @param from    index of the first left operand
+     * @param right   array holding the right operands
+     * @param start   index of the first right operand
+     * @param results array receiving the results, possibly one of the operand
+     *                arrays
+     * @param to      index of the first result
+     * @param length  number of operand pairs
+     */
+    default void evaluate(double[] left, int from, double[] right, int start, double[] results, int to, int length) {
+        for (int i = 0; i < length; i++)
+            results[to + i] = evaluate(left[from + i], right[start + i]);
+    }
+
+    /**
+     * Boxed bridge used by engines working on {@link Double} objects.
+     */
+    @Override
+    default Double evaluate(Double left, Double right) {
+        return evaluate(left.doubleValue(), right.doubleValue());
+    }
+}
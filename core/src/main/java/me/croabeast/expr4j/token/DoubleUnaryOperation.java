@@ -0,0 +1,44 @@
+package me.croabeast.expr4j.token;
+
+/**
+ * Primitive specialization of {@link UnaryOperation} for {@code double}
+ * values. Evaluation engines that know about this interface call
+ * {@link #evaluate(double)} directly, so no intermediate {@link Double} is
+ * created between nested operations.
+ */
+@FunctionalInterface
+public interface DoubleUnaryOperation extends UnaryOperation<Double> {
+
+    /**
+     * Executes the unary logic on a primitive operand.
+     *
+     * @param operand value passed from the expression tree
+     * @return result of applying the operation to the operand
+     */
+    double evaluate(double operand);
+
+    /**
+     * Applies the operation to a range of operands, as done by
+     * {@link me.croabeast.expr4j.expression.DoubleBatch}. Implementations may
+     * override it with a loop the JIT can vectorize.
+     *
+     * @param operands array holding the operands
+     * @param from     index of the first operand
+     * @param results  array receiving the results, possibly {@code operands}
+     *                 itself
+     * @param to       index of the first result
+     * @param length   number of operands
+     */
+    default void evaluate(double[] operands, int from, double[] results, int to, int length) {
+        for (int i = 0; i < length; i++)
+            results[to + i] = evaluate(operands[from + i]);
+    }
+
+    /**
+     * Boxed bridge used by engines working on {@link Double} objects.
+     */
+    @Override
+    default Double evaluate(Double operand) {
+        return evaluate(operand.doubleValue());
+    }
+}
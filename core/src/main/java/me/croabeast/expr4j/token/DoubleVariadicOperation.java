@@ -0,0 +1,56 @@
+package me.croabeast.expr4j.token;
+
+import me.croabeast.expr4j.expression.Parameters;
+
+/**
+ * {@link Operation} over any number of primitive {@code double} operands,
+ * typically backing functions such as {@code max}, {@code min} or
+ * {@code mean}. Every parameter is evaluated before the operation runs.
+ */
+@FunctionalInterface
+public interface DoubleVariadicOperation extends Operation<Double> {
+
+    /**
+     * Applies the operation to the evaluated operands.
+     *
+     * @param operands operand values in declaration order, possibly empty.
+     *                 Callers may reuse the array once the method returns, so
+     *                 implementations must not keep it
+     * @return operation result
+     */
+    double evaluate(double[] operands);
+
+    /**
+     * Applies the operation to ranges of operands, one array per parameter,
+     * as done by {@link me.croabeast.expr4j.expression.DoubleBatch}.
+     * Implementations may override it with a loop the JIT can vectorize.
+     *
+     * @param operands arrays holding the operands of every parameter
+     * @param from     index of the first operand in each array
+     * @param results  array receiving the results, possibly one of the
+     *                 operand arrays
+     * @param to       index of the first result
+     * @param length   number of rows
+     */
+    default void evaluate(double[][] operands, int[] from, double[] results, int to, int length) {
+        double[] row = new double[operands.length];
+
+        for (int i = 0; i < length; i++) {
+            for (int j = 0; j < row.length; j++) row[j] = operands[j][from[j] + i];
+            results[to + i] = evaluate(row);
+        }
+    }
+
+    /**
+     * Evaluates every parameter into a primitive array and delegates to
+     * {@link #evaluate(double[])}.
+     */
+    @Override
+    default Double evaluate(Parameters<Double> parameters) {
+        double[] operands = new double[parameters.size()];
+        for (int i = 0; i < operands.length; i++)
+            operands[i] = parameters.result(i);
+
+        return evaluate(operands);
+    }
+}
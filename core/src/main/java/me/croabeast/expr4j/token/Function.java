@@ -3,6 +3,7 @@ package me.croabeast.expr4j.token;
 import lombok.Getter;
 import me.croabeast.expr4j.exception.Expr4jException;
 import me.croabeast.expr4j.expression.Parameters;
+import org.jetbrains.annotations.NotNull;
 
 /**
  * Token that encapsulates a named function. Functions delegate their
@@ -35,23 +36,45 @@ public class Function<T> implements Operation<T> {
     private final Operation<T> operation;
 
     /**
-     * Creates a function with an explicit arity.
+     * Characteristics declared for this function, or {@code null} to report
+     * the ones of the backing operation.
+     */
+    private final Characteristics characteristics;
+
+    /**
+     * Creates a function with an explicit arity and characteristics.
      *
-     * @param label       name of the function as written in expressions
-     * @param parameters  required number of parameters, or {@code -1} for
-     *                    variable length functions
-     * @param operation   operation executed when the function is evaluated
+     * @param label           name of the function as written in expressions
+     * @param parameters      required number of parameters, or {@code -1} for
+     *                        variable length functions
+     * @param operation       operation executed when the function is evaluated
+     * @param characteristics properties of the function, or {@code null} to
+     *                        report the ones of the operation
      * @throws Expr4jException if the number of parameters is invalid
      */
-    public Function(String label, int parameters, Operation<T> operation) {
+    public Function(String label, int parameters, Operation<T> operation, Characteristics characteristics) {
         this.label = label;
         this.parameters = parameters;
         this.operation = operation;
+        this.characteristics = characteristics;
 
         if (this.parameters < -1)
             throw new Expr4jException("Invalid number of parameters: " + this.parameters);
     }
 
+    /**
+     * Creates a function with an explicit arity.
+     *
+     * @param label       name of the function as written in expressions
+     * @param parameters  required number of parameters, or {@code -1} for
+     *                    variable length functions
+     * @param operation   operation executed when the function is evaluated
+     * @throws Expr4jException if the number of parameters is invalid
+     */
+    public Function(String label, int parameters, Operation<T> operation) {
+        this(label, parameters, operation, null);
+    }
+
     /**
      * Creates a variadic function definition.
      *
@@ -62,6 +85,18 @@ public class Function<T> implements Operation<T> {
         this(label, -1, operation);
     }
 
+    /**
+     * Returns the characteristics declared for this function, falling back to
+     * the ones of the backing operation.
+     *
+     * @return function characteristics
+     */
+    @NotNull
+    @Override
+    public Characteristics getCharacteristics() {
+        return characteristics != null ? characteristics : operation.getCharacteristics();
+    }
+
     /**
      * Invokes the wrapped operation after deferring parameter evaluation. This
      * indirection allows functions to short-circuit or reorder the values if a
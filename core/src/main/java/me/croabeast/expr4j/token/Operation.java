@@ -27,6 +27,18 @@ public interface Operation<T> extends Token {
         return "";
     }
 
+    /**
+     * Returns the properties optimizers and caches may rely on. Operations
+     * that do not override this method are reported as
+     * {@link Characteristics#UNKNOWN}, so they are never rewritten.
+     *
+     * @return declared characteristics
+     */
+    @NotNull
+    default Characteristics getCharacteristics() {
+        return Characteristics.UNKNOWN;
+    }
+
     /**
      * Executes the operation using the provided arguments.
      *
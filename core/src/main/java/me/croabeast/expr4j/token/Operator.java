@@ -49,24 +49,58 @@ public class Operator<T> implements Operation<T>, Comparable<Operator<T>> {
     private final Operation<T> operation;
 
     /**
-     * Creates a new operator definition.
+     * Characteristics declared for this operator, or {@code null} to report
+     * the ones of the backing operation.
+     */
+    private final Characteristics characteristics;
+
+    /**
+     * Creates a new operator definition with explicit characteristics.
      *
-     * @param label       symbol used in the expression source
-     * @param type        operator position relative to its operands
-     * @param precedence  precedence level where larger values bind tighter
-     * @param operation   logic executed when the operator is evaluated
+     * @param label           symbol used in the expression source
+     * @param type            operator position relative to its operands
+     * @param precedence      precedence level where larger values bind tighter
+     * @param operation       logic executed when the operator is evaluated
+     * @param characteristics properties of the operator, or {@code null} to
+     *                        report the ones of the operation
      * @throws Expr4jException if the precedence is lower than one
      */
-    public Operator(String label, Type type, int precedence, Operation<T> operation) {
+    public Operator(String label, Type type, int precedence, Operation<T> operation, Characteristics characteristics) {
         this.label = label;
         this.type = type;
         this.precedence = precedence;
         this.operation = operation;
+        this.characteristics = characteristics;
 
         if (this.precedence < 1)
             throw new Expr4jException("Invalid precedence: " + this.precedence);
     }
 
+    /**
+     * Creates a new operator definition.
+     *
+     * @param label       symbol used in the expression source
+     * @param type        operator position relative to its operands
+     * @param precedence  precedence level where larger values bind tighter
+     * @param operation   logic executed when the operator is evaluated
+     * @throws Expr4jException if the precedence is lower than one
+     */
+    public Operator(String label, Type type, int precedence, Operation<T> operation) {
+        this(label, type, precedence, operation, null);
+    }
+
+    /**
+     * Returns the characteristics declared for this operator, falling back to
+     * the ones of the backing operation.
+     *
+     * @return operator characteristics
+     */
+    @NotNull
+    @Override
+    public Characteristics getCharacteristics() {
+        return characteristics != null ? characteristics : operation.getCharacteristics();
+    }
+
     @Override
     public T evaluate(Parameters<T> parameters) {
         return this.operation.evaluate(parameters);
@@ -0,0 +1,33 @@
+package me.croabeast.expr4j.token;
+
+import me.croabeast.expr4j.expression.Parameters;
+
+import java.util.List;
+
+/**
+ * {@link Operation} over any number of operands, typically backing functions
+ * such as {@code max}, {@code min} or {@code mean}. Every parameter is
+ * evaluated before the operation runs, so evaluators can hand it the values
+ * of its operands instead of lazy {@link Parameters}.
+ *
+ * @param <T> evaluation result type
+ */
+@FunctionalInterface
+public interface VariadicOperation<T> extends Operation<T> {
+
+    /**
+     * Applies the operation to the evaluated operands.
+     *
+     * @param operands operand values in declaration order, possibly empty
+     * @return operation result
+     */
+    T evaluate(List<T> operands);
+
+    /**
+     * Evaluates every parameter and delegates to {@link #evaluate(List)}.
+     */
+    @Override
+    default T evaluate(Parameters<T> parameters) {
+        return evaluate(parameters.results());
+    }
+}
@@ -0,0 +1,302 @@
+package me.croabeast.expr4j;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import me.croabeast.expr4j.token.DoubleBinaryOperation;
+import me.croabeast.expr4j.token.DoubleUnaryOperation;
+import me.croabeast.expr4j.token.DoubleVariadicOperation;
+import me.croabeast.expr4j.token.Operation;
+
+/**
+ * Column loops of the built-in {@link DoubleBuilder} operations written with
+ * the Vector API, used by {@link VectorBatch}. Each loop processes as many
+ * rows as fit in whole vectors of the preferred species and finishes the
+ * remaining rows with the scalar operation. Every lane computes exactly what
+ * the scalar operation does, so results match the scalar loops bit for bit.
+ *
+ * <p>This is the only class referencing {@code jdk.incubator.vector}; it is
+ * only loaded once {@link VectorBatch#isSupported()} confirmed the module is
+ * available.</p>
+ */
+final class Lanes {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * Magnitude from which every {@code double} is an integer.
+     */
+    private static final double INTEGRAL = 0x1p52;
+
+    private Lanes() {}
+
+    /**
+     * Returns the vectorized replacement of an intrinsic.
+     *
+     * @return vectorized operation, or {@code null} if the intrinsic has none
+     */
+    static Operation<Double> of(Intrinsic intrinsic) {
+        switch (intrinsic) {
+            case NEGATE: return Unary.NEGATE;
+            case ABSOLUTE: return Unary.ABSOLUTE;
+            case SQUARE_ROOT: return Unary.SQUARE_ROOT;
+            case FLOOR: return Unary.FLOOR;
+            case CEILING: return Unary.CEILING;
+            case ADD: return Binary.ADD;
+            case SUBTRACT: return Binary.SUBTRACT;
+            case MULTIPLY: return Binary.MULTIPLY;
+            case DIVIDE: return Binary.DIVIDE;
+            case FUSED_MULTIPLY_ADD: return Ternary.FUSED_MULTIPLY_ADD;
+            default: return null;
+        }
+    }
+
+    /**
+     * Truncates every lane with an integer magnitude below {@link #INTEGRAL}
+     * towards zero, leaving the other lanes, including NaN and infinities,
+     * unchanged.
+     */
+    private static DoubleVector truncate(DoubleVector x) {
+        VectorMask<Double> fractional = x.abs().compare(VectorOperators.LT, INTEGRAL);
+        DoubleVector truncated = (DoubleVector) x.convert(VectorOperators.D2L, 0).convert(VectorOperators.L2D, 0);
+
+        return x.blend(truncated, fractional);
+    }
+
+    /**
+     * Gives zero results the sign of their operand, as {@link Math#floor}
+     * and {@link Math#ceil} do.
+     */
+    private static DoubleVector signZero(DoubleVector result, DoubleVector x) {
+        return result.blend(x.mul(0.0), result.compare(VectorOperators.EQ, 0.0));
+    }
+
+    enum Unary implements DoubleUnaryOperation {
+        NEGATE {
+            @Override
+            public double evaluate(double operand) {
+                return -operand;
+            }
+
+            @Override
+            public void evaluate(double[] operands, int from, double[] results, int to, int length) {
+                int i = 0;
+                for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length())
+                    DoubleVector.fromArray(SPECIES, operands, from + i).neg().intoArray(results, to + i);
+
+                for (; i < length; i++) results[to + i] = -operands[from + i];
+            }
+        },
+        ABSOLUTE {
+            @Override
+            public double evaluate(double operand) {
+                return Math.abs(operand);
+            }
+
+            @Override
+            public void evaluate(double[] operands, int from, double[] results, int to, int length) {
+                int i = 0;
+                for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length())
+                    DoubleVector.fromArray(SPECIES, operands, from + i).abs().intoArray(results, to + i);
+
+                for (; i < length; i++) results[to + i] = Math.abs(operands[from + i]);
+            }
+        },
+        SQUARE_ROOT {
+            @Override
+            public double evaluate(double operand) {
+                return Math.sqrt(operand);
+            }
+
+            @Override
+            public void evaluate(double[] operands, int from, double[] results, int to, int length) {
+                int i = 0;
+                for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length())
+                    DoubleVector.fromArray(SPECIES, operands, from + i)
+                            .lanewise(VectorOperators.SQRT)
+                            .intoArray(results, to + i);
+
+                for (; i < length; i++) results[to + i] = Math.sqrt(operands[from + i]);
+            }
+        },
+        FLOOR {
+            @Override
+            public double evaluate(double operand) {
+                return Math.floor(operand);
+            }
+
+            @Override
+            public void evaluate(double[] operands, int from, double[] results, int to, int length) {
+                int i = 0;
+                for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+                    DoubleVector x = DoubleVector.fromArray(SPECIES, operands, from + i), t = truncate(x);
+                    signZero(t.sub(1.0, t.compare(VectorOperators.GT, x)), x).intoArray(results, to + i);
+                }
+
+                for (; i < length; i++) results[to + i] = Math.floor(operands[from + i]);
+            }
+        },
+        CEILING {
+            @Override
+            public double evaluate(double operand) {
+                return Math.ceil(operand);
+            }
+
+            @Override
+            public void evaluate(double[] operands, int from, double[] results, int to, int length) {
+                int i = 0;
+                for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+                    DoubleVector x = DoubleVector.fromArray(SPECIES, operands, from + i), t = truncate(x);
+                    signZero(t.add(1.0, t.compare(VectorOperators.LT, x)), x).intoArray(results, to + i);
+                }
+
+                for (; i < length; i++) results[to + i] = Math.ceil(operands[from + i]);
+            }
+        }
+    }
+
+    enum Binary implements DoubleBinaryOperation {
+        ADD {
+            @Override
+            public double evaluate(double left, double right) {
+                return left + right;
+            }
+
+            @Override
+            public void evaluate(double[] left, int from, double[] right, int start, double[] results, int to, int length) {
+                int i = 0;
+                for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length())
+                    DoubleVector.fromArray(SPECIES, left, from + i)
+                            .add(DoubleVector.fromArray(SPECIES, right, start + i))
+                            .intoArray(results, to + i);
+
+                for (; i < length; i++) results[to + i] = left[from + i] + right[start + i];
+            }
+        },
+        SUBTRACT {
+            @Override
+            public double evaluate(double left, double right) {
+                return left - right;
+            }
+
+            @Override
+            public void evaluate(double[] left, int from, double[] right, int start, double[] results, int to, int length) {
+                int i = 0;
+                for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length())
+                    DoubleVector.fromArray(SPECIES, left, from + i)
+                            .sub(DoubleVector.fromArray(SPECIES, right, start + i))
+                            .intoArray(results, to + i);
+
+                for (; i < length; i++) results[to + i] = left[from + i] - right[start + i];
+            }
+        },
+        MULTIPLY {
+            @Override
+            public double evaluate(double left, double right) {
+                return left * right;
+            }
+
+            @Override
+            public void evaluate(double[] left, int from, double[] right, int start, double[] results, int to, int length) {
+                int i = 0;
+                for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length())
+                    DoubleVector.fromArray(SPECIES, left, from + i)
+                            .mul(DoubleVector.fromArray(SPECIES, right, start + i))
+                            .intoArray(results, to + i);
+
+                for (; i < length; i++) results[to + i] = left[from + i] * right[start + i];
+            }
+        },
+        DIVIDE {
+            @Override
+            public double evaluate(double left, double right) {
+                return left / right;
+            }
+
+            @Override
+            public void evaluate(double[] left, int from, double[] right, int start, double[] results, int to, int length) {
+                int i = 0;
+                for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length())
+                    DoubleVector.fromArray(SPECIES, left, from + i)
+                            .div(DoubleVector.fromArray(SPECIES, right, start + i))
+                            .intoArray(results, to + i);
+
+                for (; i < length; i++) results[to + i] = left[from + i] / right[start + i];
+            }
+        }
+    }
+
+    /**
+     * Three-operand shapes: the fused multiply-add calls of the simplifier,
+     * and a product feeding a sum computed in a single pass but with two roundings, exactly as the
+     * separate operations would.
+     */
+    enum Ternary implements DoubleVariadicOperation {
+        FUSED_MULTIPLY_ADD {
+            @Override
+            public double evaluate(double[] operands) {
+                return Math.fma(operands[0], operands[1], operands[2]);
+            }
+
+            @Override
+            public void evaluate(double[][] operands, int[] from, double[] results, int to, int length) {
+                double[] a = operands[0], b = operands[1], c = operands[2];
+                int x = from[0], y = from[1], z = from[2], i = 0;
+
+                for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length())
+                    DoubleVector.fromArray(SPECIES, a, x + i)
+                            .fma(DoubleVector.fromArray(SPECIES, b, y + i), DoubleVector.fromArray(SPECIES, c, z + i))
+                            .intoArray(results, to + i);
+
+                for (; i < length; i++) results[to + i] = Math.fma(a[x + i], b[y + i], c[z + i]);
+            }
+        },
+        /**
+         * {@code a*b + c}.
+         */
+        MULTIPLY_ADD {
+            @Override
+            public double evaluate(double[] operands) {
+                return operands[0] * operands[1] + operands[2];
+            }
+
+            @Override
+            public void evaluate(double[][] operands, int[] from, double[] results, int to, int length) {
+                double[] a = operands[0], b = operands[1], c = operands[2];
+                int x = from[0], y = from[1], z = from[2], i = 0;
+
+                for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length())
+                    DoubleVector.fromArray(SPECIES, a, x + i)
+                            .mul(DoubleVector.fromArray(SPECIES, b, y + i))
+                            .add(DoubleVector.fromArray(SPECIES, c, z + i))
+                            .intoArray(results, to + i);
+
+                for (; i < length; i++) results[to + i] = a[x + i] * b[y + i] + c[z + i];
+            }
+        },
+        /**
+         * {@code a + b*c}.
+         */
+        ADD_MULTIPLY {
+            @Override
+            public double evaluate(double[] operands) {
+                return operands[0] + operands[1] * operands[2];
+            }
+
+            @Override
+            public void evaluate(double[][] operands, int[] from, double[] results, int to, int length) {
+                double[] a = operands[0], b = operands[1], c = operands[2];
+                int x = from[0], y = from[1], z = from[2], i = 0;
+
+                for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length())
+                    DoubleVector.fromArray(SPECIES, a, x + i)
+                            .add(DoubleVector.fromArray(SPECIES, b, y + i)
+                                    .mul(DoubleVector.fromArray(SPECIES, c, z + i)))
+                            .intoArray(results, to + i);
+
+                for (; i < length; i++) results[to + i] = a[x + i] + b[y + i] * c[z + i];
+            }
+        }
+    }
+}
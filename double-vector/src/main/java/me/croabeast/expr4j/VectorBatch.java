@@ -0,0 +1,266 @@
+package me.croabeast.expr4j;
+
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.expression.*;
+import me.croabeast.expr4j.token.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.DoubleBuffer;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * {@link DoubleBatch} whose built-in {@link DoubleBuilder} operations run on
+ * SIMD lanes through the incubating Java Vector API. Addition, subtraction,
+ * multiplication, division, negation, {@code sqrt}, {@code abs},
+ * {@code floor}, {@code ceil} and the fused multiply-add calls of the
+ * simplifier are vectorized, and so are products feeding a sum, which are computed in one pass. Every other
+ * operation keeps its scalar column loop, and results are identical to the
+ * ones of {@link DoubleExpression#toDoubleBatch(int)}.
+ *
+ * <p>Requires Java 17 or newer, started with
+ * {@code --add-modules jdk.incubator.vector}. When the module is not
+ * available, see {@link #isSupported()}, the batch silently evaluates with the
+ * scalar loops instead.</p>
+ *
+ * <p>Batches do not hold mutable state and can be shared between threads as
+ * long as the registered operations are thread-safe.</p>
+ */
+@SuppressWarnings("unchecked")
+public final class VectorBatch {
+
+    private static final boolean SUPPORTED = isAvailable();
+
+    private final Expression<Double> expression;
+    private final DoubleBatch batch;
+
+    private final DoubleBuilder builder;
+    private final Schema<Double> schema;
+    private final Map<Node, Integer> parents = new IdentityHashMap<>();
+    private final Map<Node, Node> copies = new IdentityHashMap<>();
+
+    /**
+     * Compiles an expression built by the given builder into vectorized
+     * column loops.
+     *
+     * @param builder    builder the expression was built with
+     * @param expression expression to compile
+     * @param size       number of rows evaluated per pass over the tree
+     * @throws Expr4jException if the size is not positive or the tree is
+     *                         missing or malformed
+     */
+    public VectorBatch(DoubleBuilder builder, Expression<Double> expression, int size) {
+        this.expression = expression;
+        this.builder = builder;
+        this.schema = expression.getSchema();
+
+        DoubleExpression scalar = expression instanceof DoubleExpression ?
+                (DoubleExpression) expression :
+                new DoubleExpression(expression);
+
+        Node root = expression.getRoot();
+        if (!SUPPORTED || root == null) {
+            this.batch = scalar.toDoubleBatch(size);
+            return;
+        }
+
+        count(root);
+
+        DoubleExpression vectorized = new DoubleExpression(expression.getDictionary(), expression.getCodec());
+        vectorized.setRoot(copy(root));
+
+        parents.clear();
+        copies.clear();
+
+        this.batch = vectorized.getSchema().getNames().equals(scalar.getSchema().getNames()) ?
+                vectorized.toDoubleBatch(size) :
+                scalar.toDoubleBatch(size);
+    }
+
+    /**
+     * Compiles an expression built by the given builder into vectorized
+     * column loops, using {@link DoubleBatch#DEFAULT_SIZE} rows per batch.
+     *
+     * @param builder    builder the expression was built with
+     * @param expression expression to compile
+     * @throws Expr4jException if the tree is missing or malformed
+     */
+    public VectorBatch(DoubleBuilder builder, Expression<Double> expression) {
+        this(builder, expression, DoubleBatch.DEFAULT_SIZE);
+    }
+
+    /**
+     * Tells whether the Vector API is available, so built-in operations run
+     * on SIMD lanes.
+     *
+     * @return {@code true} if batches are vectorized
+     */
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.incubator.vector.DoubleVector");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private Intrinsic intrinsic(Node node) {
+        Token token = node.getToken();
+        return token instanceof Operation && node.getChildren() != null ?
+                builder.getIntrinsic(Operations.resolve((Operation<Double>) token)) :
+                null;
+    }
+
+    private void count(Node node) {
+        if (parents.merge(node, 1, Integer::sum) > 1 || node.getChildren() == null) return;
+
+        for (Node child : node.getChildren()) count(child);
+    }
+
+    /**
+     * Tells whether a node is a built-in product only feeding its parent, so
+     * it can be merged into it.
+     */
+    private boolean isProduct(Node node) {
+        return intrinsic(node) == Intrinsic.MULTIPLY && node.getChildren().size() == 2 && parents.get(node) == 1;
+    }
+
+    private Node node(Token token, Node... children) {
+        Node node = new Node(token);
+        for (Node child : children) node.getChildren().add(copy(child));
+
+        return node;
+    }
+
+    private Node copy(Node node) {
+        Node copy = copies.get(node);
+        if (copy != null) return copy;
+
+        copy = vectorize(node);
+        copies.put(node, copy);
+        return copy;
+    }
+
+    private Node vectorize(Node node) {
+        Token token = node.getToken();
+        List<Node> children = node.getChildren();
+
+        if (children == null) {
+            Double constant = token instanceof Variable ? schema.getConstant(token.getLabel()) : null;
+            return constant != null ? new Node(new Operand<>(constant)) : node;
+        }
+
+        Intrinsic intrinsic = intrinsic(node);
+        Operation<Double> operation = intrinsic != null && intrinsic.getArity() == children.size() ?
+                Lanes.of(intrinsic) : null;
+
+        if (operation == null) return node(token, children.toArray(new Node[0]));
+
+        Characteristics characteristics = ((Operation<Double>) token).getCharacteristics();
+
+        if (intrinsic == Intrinsic.ADD) {
+            Node left = children.get(0), right = children.get(1);
+
+            if (isProduct(left))
+                return node(new Function<>(token.getLabel(), 3, Lanes.Ternary.MULTIPLY_ADD, characteristics),
+                        left.getChildren().get(0), left.getChildren().get(1), right);
+
+            if (isProduct(right))
+                return node(new Function<>(token.getLabel(), 3, Lanes.Ternary.ADD_MULTIPLY, characteristics),
+                        left, right.getChildren().get(0), right.getChildren().get(1));
+        }
+
+        if (token instanceof Operator) {
+            Operator<Double> operator = (Operator<Double>) token;
+            return node(new Operator<>(operator.getLabel(), operator.getType(), operator.getPrecedence(),
+                    operation, characteristics), children.toArray(new Node[0]));
+        }
+
+        return node(new Function<>(token.getLabel(), children.size(), operation, characteristics),
+                children.toArray(new Node[0]));
+    }
+
+    /**
+     * Returns the variable layout of the batch. Column {@code i} holds the
+     * values of the variable in slot {@code i}, in the same order as the
+     * schema of the source expression.
+     *
+     * @return schema of the batch
+     */
+    @NotNull
+    public Schema<Double> getSchema() {
+        return batch.getSchema();
+    }
+
+    /**
+     * Returns the number of rows evaluated per pass over the tree.
+     *
+     * @return batch size
+     */
+    public int getSize() {
+        return batch.getSize();
+    }
+
+    /**
+     * Evaluates the expression for every row of the result column.
+     *
+     * @param columns variable columns ordered by schema slot
+     * @param results column receiving the result of every row
+     * @throws Expr4jException if a column is missing or too short
+     * @see DoubleBatch#evaluate(double[][], double[])
+     */
+    public void evaluate(double[][] columns, double[] results) {
+        batch.evaluate(columns, results);
+    }
+
+    /**
+     * Evaluates the expression for every row of the result column, splitting
+     * the rows across the given pool.
+     *
+     * @param columns variable columns ordered by schema slot
+     * @param results column receiving the result of every row
+     * @param pool    pool running the tasks
+     * @throws Expr4jException if a column is missing or too short
+     * @see DoubleBatch#evaluate(double[][], double[], ForkJoinPool)
+     */
+    public void evaluate(double[][] columns, double[] results, ForkJoinPool pool) {
+        batch.evaluate(columns, results, pool);
+    }
+
+    /**
+     * Evaluates the expression for every row of the result column, reading
+     * the variable columns from a map.
+     *
+     * @param columns mapping of variable names to their columns
+     * @param results column receiving the result of every row
+     * @throws Expr4jException if a column is missing or too short
+     * @see DoubleBatch#evaluate(Map, double[])
+     */
+    public void evaluate(Map<String, double[]> columns, double[] results) {
+        batch.evaluate(columns, results);
+    }
+
+    /**
+     * Evaluates the expression for every remaining element of the result
+     * buffer.
+     *
+     * @param columns variable columns ordered by schema slot
+     * @param results buffer receiving the result of every row
+     * @throws Expr4jException if a column is missing or too short
+     * @see DoubleBatch#evaluate(DoubleBuffer[], DoubleBuffer)
+     */
+    public void evaluate(DoubleBuffer[] columns, DoubleBuffer results) {
+        batch.evaluate(columns, results);
+    }
+
+    @Override
+    public String toString() {
+        return expression.toString();
+    }
+}
@@ -1,3 +1,9 @@
+plugins {
+    id("me.champeau.jmh")
+}
+
 dependencies {
     compileOnly(project(":core"))
-}
\ No newline at end of file
+    testImplementation(project(":core"))
+    jmh(project(":core"))
+}
@@ -0,0 +1,53 @@
+package me.croabeast.expr4j;
+
+import me.croabeast.expr4j.expression.Expression;
+import me.croabeast.expr4j.expression.Tokenizer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time taken by {@link DoubleBuilder#build(String)} on formulas of 10 to
+ * 1,000,000 tokens. Trees are built in one pass over the postfix output of the
+ * parser, so the time per token should stay flat as formulas grow.
+ *
+ * <p>Run with {@code ./gradlew :double:jmh}.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuildBenchmark {
+
+    private static final String[] TERMS = {" + 3*y", " - max(x, 2)", " + z^2", " - (x - 1)", " + sin x"};
+
+    @Param({"10", "100", "1000", "10000", "100000", "1000000"})
+    private int tokens;
+
+    private DoubleBuilder builder;
+    private String source;
+
+    @Setup
+    public void setup() {
+        builder = new DoubleBuilder();
+        Tokenizer<Double> tokenizer = new Tokenizer<>(builder.getDictionary(), builder.getCodec());
+
+        int[] sizes = new int[TERMS.length];
+        for (int i = 0; i < TERMS.length; i++) sizes[i] = tokenizer.tokenize("x" + TERMS[i]).size() - 1;
+
+        StringBuilder source = new StringBuilder("x");
+        for (int count = 1, i = 0; count < tokens; i = (i + 1) % TERMS.length) {
+            source.append(TERMS[i]);
+            count += sizes[i];
+        }
+
+        this.source = source.toString();
+    }
+
+    @Benchmark
+    public Expression<Double> build() {
+        return builder.build(source);
+    }
+}
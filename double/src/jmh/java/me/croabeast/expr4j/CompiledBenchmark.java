@@ -0,0 +1,58 @@
+package me.croabeast.expr4j;
+
+import me.croabeast.expr4j.expression.CompiledExpression;
+import me.croabeast.expr4j.expression.Expression;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link Expression#compile() compiled} expressions against the
+ * tree interpreter behind {@link Expression#evaluate(Map)}.
+ *
+ * <p>Run with {@code ./gradlew :double:jmh}.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompiledBenchmark {
+
+    @Param({
+            "x * y + z",
+            "sqrt(x^2 + y^2) / (1 + abs z)",
+            "sin(x) * cos(y) + tan(z / 4) - ln(x + y)",
+            "max(x, y, z) - min(x, y, z) + (x + y + z) / 3",
+            "3x^4 - 2x^3 + x^2 - 7x + 5 + y * (z - x) / (y + 1)"
+    })
+    private String formula;
+
+    private Expression<Double> expression;
+    private CompiledExpression<Double> compiled;
+    private Map<String, Double> variables;
+
+    @Setup
+    public void setup() {
+        expression = new DoubleBuilder().build(formula);
+        compiled = expression.compile();
+
+        variables = new HashMap<>();
+        variables.put("x", 1.5);
+        variables.put("y", 2.25);
+        variables.put("z", 3.75);
+    }
+
+    @Benchmark
+    public Double interpreted() {
+        return expression.evaluate(variables);
+    }
+
+    @Benchmark
+    public Double compiled() {
+        return compiled.evaluate(variables);
+    }
+}
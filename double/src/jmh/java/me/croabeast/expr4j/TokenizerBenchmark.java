@@ -0,0 +1,48 @@
+package me.croabeast.expr4j;
+
+import me.croabeast.expr4j.expression.Tokenizer;
+import me.croabeast.expr4j.token.Token;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time taken by {@link Tokenizer#tokenize(String)} on a short formula and on
+ * the same formula repeated to about 100 KB, which should only grow with the
+ * length of the input.
+ *
+ * <p>Run with {@code ./gradlew :double:jmh}.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+
+    private static final String FORMULA = "sin(x) * cos(y) + 2x^3 - 1.5e-3 / z + max(x, -y, log10 z)";
+
+    @Param({"1", "102400"})
+    private int length;
+
+    private Tokenizer<Double> tokenizer;
+    private String source;
+
+    @Setup
+    public void setup() {
+        DoubleBuilder builder = new DoubleBuilder();
+        tokenizer = new Tokenizer<>(builder.getDictionary(), builder.getCodec());
+
+        StringBuilder source = new StringBuilder(FORMULA);
+        while (source.length() < length) source.append(" + ").append(FORMULA);
+
+        this.source = source.toString();
+    }
+
+    @Benchmark
+    public List<Token> tokenize() {
+        return tokenizer.tokenize(source);
+    }
+}
@@ -0,0 +1,30 @@
+package me.croabeast.expr4j;
+
+/**
+ * Partial derivatives of a {@code double} operation, used by
+ * {@link DoubleGradient} to propagate gradients backwards through a call.
+ * Rules for every built-in {@link DoubleBuilder} operation are registered
+ * automatically, and custom operations can be given one with
+ * {@link DoubleBuilder#setDerivative(me.croabeast.expr4j.token.Operation, Derivative)}.
+ *
+ * <pre>{@code
+ * builder.setDerivative(hypot, (x, value, d) -> {
+ *     d[0] = x[0] / value;
+ *     d[1] = x[1] / value;
+ * });
+ * }</pre>
+ */
+@FunctionalInterface
+public interface Derivative {
+
+    /**
+     * Computes the partial derivative of the result with respect to every
+     * operand, at the given point.
+     *
+     * @param operands values of the operands
+     * @param result   value the operation returned for them
+     * @param partials array as long as {@code operands} receiving the partial
+     *                 derivative with respect to each operand
+     */
+    void partials(double[] operands, double result, double[] partials);
+}
@@ -0,0 +1,116 @@
+package me.croabeast.expr4j;
+
+import java.util.Arrays;
+
+/**
+ * Derivative rules of the operations registered by
+ * {@link DoubleBuilder#initialize()}. Constants sharing the name of an
+ * {@link Intrinsic} differentiate that intrinsic. Rounding operations and
+ * {@code n!}, which is only defined on integers, are piecewise constant and
+ * have a zero derivative, as do operations ignoring their operands.
+ */
+enum Derivatives implements Derivative {
+    IDENTITY((x, v, d) -> d[0] = 1),
+    NEGATE((x, v, d) -> d[0] = -1),
+    ADD((x, v, d) -> {
+        d[0] = 1;
+        d[1] = 1;
+    }),
+    SUBTRACT((x, v, d) -> {
+        d[0] = 1;
+        d[1] = -1;
+    }),
+    MULTIPLY((x, v, d) -> {
+        d[0] = x[1];
+        d[1] = x[0];
+    }),
+    DIVIDE((x, v, d) -> {
+        d[0] = 1 / x[1];
+        d[1] = -v / x[1];
+    }),
+    /**
+     * {@code a % b} is {@code a - b * trunc(a / b)}.
+     */
+    REMAINDER((x, v, d) -> {
+        d[0] = 1;
+        d[1] = (v - x[0]) / x[1];
+    }),
+    POWER((x, v, d) -> {
+        d[0] = x[1] == 0 ? 0 : x[1] * Math.pow(x[0], x[1] - 1);
+        d[1] = x[0] == 0 ? 0 : v * Math.log(x[0]);
+    }),
+    ABSOLUTE((x, v, d) -> d[0] = Math.signum(x[0])),
+    SINE((x, v, d) -> d[0] = Math.cos(x[0])),
+    COSINE((x, v, d) -> d[0] = -Math.sin(x[0])),
+    TANGENT((x, v, d) -> d[0] = 1 + v * v),
+    ARCSINE((x, v, d) -> d[0] = 1 / Math.sqrt(1 - x[0] * x[0])),
+    ARCCOSINE((x, v, d) -> d[0] = -1 / Math.sqrt(1 - x[0] * x[0])),
+    ARCTANGENT((x, v, d) -> d[0] = 1 / (1 + x[0] * x[0])),
+    H_SINE((x, v, d) -> d[0] = Math.cosh(x[0])),
+    H_COSINE((x, v, d) -> d[0] = Math.sinh(x[0])),
+    H_TANGENT((x, v, d) -> d[0] = 1 - v * v),
+    ARC_H_SINE((x, v, d) -> d[0] = 1 / Math.sqrt(x[0] * x[0] + 1)),
+    ARC_H_COSINE((x, v, d) -> d[0] = 1 / Math.sqrt(x[0] * x[0] - 1)),
+    ARC_H_TANGENT((x, v, d) -> d[0] = 1 / (1 - x[0] * x[0])),
+    ROUND(Derivatives::constant),
+    FLOOR(Derivatives::constant),
+    CEILING(Derivatives::constant),
+    FACTORIAL(Derivatives::constant),
+    NATURAL_LOGARITHM((x, v, d) -> d[0] = 1 / x[0]),
+    BASE10_LOGARITHM((x, v, d) -> d[0] = 1 / (x[0] * Math.log(10))),
+    SQUARE_ROOT((x, v, d) -> d[0] = 0.5 / v),
+    CUBE_ROOT((x, v, d) -> d[0] = 1 / (3 * v * v)),
+    DEGREES((x, v, d) -> d[0] = 180 / Math.PI),
+    RADIANS((x, v, d) -> d[0] = Math.PI / 180),
+    /**
+     * {@code log(b, y)} is {@code ln(y) / ln(b)}.
+     */
+    LOGARITHM((x, v, d) -> {
+        double base = Math.log(x[0]);
+        d[0] = -v / (x[0] * base);
+        d[1] = 1 / (x[1] * base);
+    }),
+    EXPONENTIAL((x, v, d) -> d[0] = v),
+    /**
+     * Only the first operand equal to the result, the one {@code max} and
+     * {@code min} return, receives the gradient.
+     */
+    EXTREMUM((x, v, d) -> {
+        constant(x, v, d);
+
+        for (int i = 0; i < x.length; i++)
+            if (Double.compare(x[i], v) == 0) {
+                d[i] = 1;
+                break;
+            }
+    }),
+    MEAN((x, v, d) -> Arrays.fill(d, 1.0 / x.length)),
+    RANDOM(Derivatives::constant),
+    FUSED_MULTIPLY_ADD((x, v, d) -> {
+        d[0] = x[1];
+        d[1] = x[0];
+        d[2] = 1;
+    });
+
+    private final Derivative derivative;
+
+    Derivatives(Derivative derivative) {
+        this.derivative = derivative;
+    }
+
+    private static void constant(double[] operands, double result, double[] partials) {
+        Arrays.fill(partials, 0);
+    }
+
+    /**
+     * Returns the rule differentiating an intrinsic.
+     */
+    static Derivatives of(Intrinsic intrinsic) {
+        return valueOf(intrinsic.name());
+    }
+
+    @Override
+    public void partials(double[] operands, double result, double[] partials) {
+        derivative.partials(operands, result, partials);
+    }
+}
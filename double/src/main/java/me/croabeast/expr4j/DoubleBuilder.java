@@ -4,10 +4,19 @@ import lombok.experimental.UtilityClass;
 import me.croabeast.expr4j.exception.Expr4jException;
 import me.croabeast.expr4j.expression.Builder;
 import me.croabeast.expr4j.expression.Codec;
+import me.croabeast.expr4j.expression.Dictionary;
+import me.croabeast.expr4j.expression.DoubleExpression;
+import me.croabeast.expr4j.expression.Expression;
+import me.croabeast.expr4j.expression.MemoizedOperation;
+import me.croabeast.expr4j.token.*;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Collections;
-import java.util.List;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 /**
  * {@link Builder} implementation that operates on {@link Double} values. It
@@ -16,6 +25,19 @@ import java.util.List;
  */
 public class DoubleBuilder extends Builder<Double> {
 
+    /**
+     * Built-in operations registered by {@link #initialize()} that generated
+     * formulas can emit as plain bytecode. Keyed by identity so replacing a
+     * symbol with a custom operation disables its intrinsic.
+     */
+    private final Map<Operation<Double>, Intrinsic> intrinsics = new IdentityHashMap<>();
+
+    /**
+     * Derivative rules used by {@link DoubleGradient}, keyed by the identity
+     * of the operation backing a function or operator.
+     */
+    private final Map<Operation<Double>, Derivative> derivatives = new IdentityHashMap<>();
+
     /**
      * Creates a builder with optional eager initialization.
      *
@@ -40,7 +62,9 @@ public class DoubleBuilder extends Builder<Double> {
                 int i = operand.intValue();
                 return operand == i ? String.valueOf(i) : operand.toString();
             }
-        }, initialize);
+        }, false);
+
+        if (initialize) initialize();
     }
 
     /**
@@ -50,52 +74,284 @@ public class DoubleBuilder extends Builder<Double> {
         this(true);
     }
 
+    private Operator<Double> intrinsic(Intrinsic intrinsic, Operator<Double> operator) {
+        intrinsics.put(operator.getOperation(), intrinsic);
+        return derivative(Derivatives.of(intrinsic), operator);
+    }
+
+    private Function<Double> intrinsic(Intrinsic intrinsic, Function<Double> function) {
+        intrinsics.put(function.getOperation(), intrinsic);
+        return derivative(Derivatives.of(intrinsic), function);
+    }
+
+    private Operator<Double> derivative(Derivative derivative, Operator<Double> operator) {
+        derivatives.put(operator.getOperation(), derivative);
+        return operator;
+    }
+
+    private Function<Double> derivative(Derivative derivative, Function<Double> function) {
+        derivatives.put(function.getOperation(), derivative);
+        return function;
+    }
+
+    /**
+     * Returns the operation a rule is keyed by, looking through the caches
+     * {@link Dictionary#memoizeFunction(String, int)} and
+     * {@link Dictionary#memoizeOperator(String, Operator.Type, int)} put in
+     * front of an operation.
+     */
+    private static Operation<Double> unwrap(Operation<Double> operation) {
+        operation = Operations.resolve(operation);
+
+        while (operation instanceof MemoizedOperation)
+            operation = Operations.resolve(((MemoizedOperation<Double>) operation).getOperation());
+
+        return operation;
+    }
+
+    /**
+     * Returns the intrinsic a built-in operation registered by this builder
+     * stands for. Memoized built-ins keep their intrinsic, so code using it
+     * computes them directly instead of going through the cache.
+     *
+     * @param operation operation backing a function or operator
+     * @return matching intrinsic, or {@code null} for any other operation
+     */
+    Intrinsic getIntrinsic(Operation<Double> operation) {
+        return intrinsics.get(unwrap(operation));
+    }
+
+    /**
+     * Gives an operation the derivative rule {@link DoubleGradient} uses to
+     * propagate gradients through it, replacing any previous rule. Functions
+     * and operators are keyed by the operation they delegate to, and memoized
+     * operations by the one they cache, so the rule applies to every symbol
+     * backed by it.
+     *
+     * @param operation  function, operator or operation to differentiate
+     * @param derivative partial derivatives of the operation, or {@code null}
+     *                   to remove its rule
+     */
+    public void setDerivative(Operation<Double> operation, Derivative derivative) {
+        operation = unwrap(operation);
+
+        if (derivative == null) derivatives.remove(operation);
+        else derivatives.put(operation, derivative);
+    }
+
+    /**
+     * Returns the derivative rule of an operation backing a function or
+     * operator.
+     *
+     * @return derivative rule, or {@code null} if none is registered
+     */
+    Derivative getDerivative(Operation<Double> operation) {
+        return derivatives.get(unwrap(operation));
+    }
+
     @Override
     protected void initialize() {
+        Function<Double> fused = Utils.FMA == null ? null :
+                intrinsic(Intrinsic.FUSED_MULTIPLY_ADD, Operations.fusedMultiplyAdd((DoubleVariadicOperation) Utils::fma));
+
         getDictionary()
-                .addOperator(Operations.positive()).addOperator(Operations.negative(p -> -p))
-                .addOperator(Operations.add(Double::sum))
-                .addOperator(Operations.subtract((a, b) -> a - b))
-                .addOperator(Operations.multiply((a, b) -> a * b))
-                .addOperator(Operations.divide((a, b) -> a / b))
-                .addOperator(Operations.percent((a, b) -> a % b))
-                .addOperator(Operations.power(Math::pow))
-                .addOperator(Operations.factorial(Utils::factorial))
-                .addOperator(Operations.absolute(Math::abs))
-                .addOperator(Operations.sine(Math::sin))
-                .addOperator(Operations.cosine(Math::cos))
-                .addOperator(Operations.tangent(Math::tan))
-                .addOperator(Operations.arcsine(Math::asin))
-                .addOperator(Operations.arccosine(Math::acos))
-                .addOperator(Operations.arctangent(Math::atan))
-                .addOperator(Operations.hSine(Math::sinh))
-                .addOperator(Operations.hCosine(Math::cosh))
-                .addOperator(Operations.hTangent(Math::tanh))
-                .addOperator(Operations.arcHSine(Utils::asinh))
-                .addOperator(Operations.arcHCosine(Utils::acosh))
-                .addOperator(Operations.arcHTangent(Utils::atanh))
-                .addOperator(Operations.round(p -> (double) Math.round(p)))
-                .addOperator(Operations.floor(Math::floor))
-                .addOperator(Operations.ceiling(Math::ceil))
-                .addOperator(Operations.naturalLogarithm(Math::log))
-                .addOperator(Operations.base10Logarithm(Math::log10))
-                .addOperator(Operations.squareRoot(Math::sqrt))
-                .addOperator(Operations.cubeRoot(Math::cbrt))
-                .addFunction(Operations.degrees(Math::toDegrees))
-                .addFunction(Operations.radians(Math::toRadians))
-                .addFunction(Operations.logarithm((b, v) -> Math.log(v) / Math.log(b)))
-                .addFunction(Operations.exponential(Math::exp))
-                .addFunction(Operations.maximum(p -> p.isEmpty() ? 0.0 : Collections.max(p.results())))
-                .addFunction(Operations.minimum(p -> p.isEmpty() ? 0.0 : Collections.min(p.results())))
-                .addFunction(Operations.mean(p -> p.isEmpty() ? 0.0 : Utils.average(p.results())))
-                .addFunction(Operations.average(p -> p.isEmpty() ? 0.0 : Utils.average(p.results())))
-                .addFunction(Operations.random(p -> Math.random()))
-                .addConstant("pi", Math.PI).addConstant("e", Math.E);
+                .addOperator(intrinsic(Intrinsic.IDENTITY, Operations.positive()))
+                .addOperator(intrinsic(Intrinsic.NEGATE, Operations.negative((DoubleUnaryOperation) p -> -p)))
+                .addOperator(intrinsic(Intrinsic.ADD, Operations.add(Arithmetic.ADD)))
+                .addOperator(intrinsic(Intrinsic.SUBTRACT, Operations.subtract(Arithmetic.SUBTRACT)))
+                .addOperator(intrinsic(Intrinsic.MULTIPLY, Operations.multiply(Arithmetic.MULTIPLY)))
+                .addOperator(intrinsic(Intrinsic.DIVIDE, Operations.divide(Arithmetic.DIVIDE)))
+                .addOperator(intrinsic(Intrinsic.REMAINDER, Operations.percent((DoubleBinaryOperation) (a, b) -> a % b)))
+                .addOperator(intrinsic(Intrinsic.POWER, Operations.power((DoubleBinaryOperation) Math::pow)))
+                .addOperator(derivative(Derivatives.FACTORIAL, Operations.factorial((DoubleUnaryOperation) Utils::factorial)))
+                .addOperator(intrinsic(Intrinsic.ABSOLUTE, Operations.absolute((DoubleUnaryOperation) Math::abs)))
+                .addOperator(intrinsic(Intrinsic.SINE, Operations.sine((DoubleUnaryOperation) Math::sin)))
+                .addOperator(intrinsic(Intrinsic.COSINE, Operations.cosine((DoubleUnaryOperation) Math::cos)))
+                .addOperator(intrinsic(Intrinsic.TANGENT, Operations.tangent((DoubleUnaryOperation) Math::tan)))
+                .addOperator(intrinsic(Intrinsic.ARCSINE, Operations.arcsine((DoubleUnaryOperation) Math::asin)))
+                .addOperator(intrinsic(Intrinsic.ARCCOSINE, Operations.arccosine((DoubleUnaryOperation) Math::acos)))
+                .addOperator(intrinsic(Intrinsic.ARCTANGENT, Operations.arctangent((DoubleUnaryOperation) Math::atan)))
+                .addOperator(intrinsic(Intrinsic.H_SINE, Operations.hSine((DoubleUnaryOperation) Math::sinh)))
+                .addOperator(intrinsic(Intrinsic.H_COSINE, Operations.hCosine((DoubleUnaryOperation) Math::cosh)))
+                .addOperator(intrinsic(Intrinsic.H_TANGENT, Operations.hTangent((DoubleUnaryOperation) Math::tanh)))
+                .addOperator(derivative(Derivatives.ARC_H_SINE, Operations.arcHSine((DoubleUnaryOperation) Utils::asinh)))
+                .addOperator(derivative(Derivatives.ARC_H_COSINE, Operations.arcHCosine((DoubleUnaryOperation) Utils::acosh)))
+                .addOperator(derivative(Derivatives.ARC_H_TANGENT, Operations.arcHTangent((DoubleUnaryOperation) Utils::atanh)))
+                .addOperator(intrinsic(Intrinsic.ROUND, Operations.round((DoubleUnaryOperation) p -> (double) Math.round(p))))
+                .addOperator(intrinsic(Intrinsic.FLOOR, Operations.floor((DoubleUnaryOperation) Math::floor)))
+                .addOperator(intrinsic(Intrinsic.CEILING, Operations.ceiling((DoubleUnaryOperation) Math::ceil)))
+                .addOperator(intrinsic(Intrinsic.NATURAL_LOGARITHM, Operations.naturalLogarithm((DoubleUnaryOperation) Math::log)))
+                .addOperator(intrinsic(Intrinsic.BASE10_LOGARITHM, Operations.base10Logarithm((DoubleUnaryOperation) Math::log10)))
+                .addOperator(intrinsic(Intrinsic.SQUARE_ROOT, Operations.squareRoot((DoubleUnaryOperation) Math::sqrt)))
+                .addOperator(intrinsic(Intrinsic.CUBE_ROOT, Operations.cubeRoot((DoubleUnaryOperation) Math::cbrt)))
+                .addFunction(intrinsic(Intrinsic.DEGREES, Operations.degrees((DoubleUnaryOperation) Math::toDegrees)))
+                .addFunction(intrinsic(Intrinsic.RADIANS, Operations.radians((DoubleUnaryOperation) Math::toRadians)))
+                .addFunction(intrinsic(Intrinsic.LOGARITHM, Operations.logarithm((DoubleBinaryOperation) (b, v) -> Math.log(v) / Math.log(b))))
+                .addFunction(intrinsic(Intrinsic.EXPONENTIAL, Operations.exponential((DoubleUnaryOperation) Math::exp)))
+                .addFunction(derivative(Derivatives.EXTREMUM, Operations.maximum((DoubleVariadicOperation) Utils::max)))
+                .addFunction(derivative(Derivatives.EXTREMUM, Operations.minimum((DoubleVariadicOperation) Utils::min)))
+                .addFunction(derivative(Derivatives.MEAN, Operations.mean((DoubleVariadicOperation) Utils::average)))
+                .addFunction(derivative(Derivatives.MEAN, Operations.average((DoubleVariadicOperation) Utils::average)))
+                .addFunction(derivative(Derivatives.RANDOM, Operations.random((DoubleVariadicOperation) p -> Math.random())))
+                .addConstant("pi", Math.PI).addConstant("e", Math.E)
+                .addRule(Rules.identities(v -> v == 0, v -> v == 1))
+                .addRule(Rules.polynomials(32, 1.0, Utils::exponent, fused))
+                .addRule(Rules.integerPowers(16, Utils::exponent))
+                .addRule(Rules.reciprocalDivision(v -> 1 / v));
+
+        if (fused != null)
+            getDictionary().addRule(Rules.fusedMultiplyAdd(fused)).addDerivative(fused, (node, d, x) -> x.add(
+                    x.add(x.multiply(d[0], x.operand(node, 1)), x.multiply(x.operand(node, 0), d[1])), d[2]));
+    }
+
+    @NotNull
+    @Override
+    protected DoubleExpression newExpression(Dictionary<Double> dictionary) {
+        return new DoubleExpression(dictionary, getCodec());
+    }
+
+    /**
+     * Parses the supplied expression into a {@link DoubleExpression}, which
+     * can also be evaluated on primitive values through
+     * {@link DoubleExpression#evaluateAsDouble(Map)}.
+     *
+     * @param expression input expression in infix notation
+     * @return expression ready to evaluate
+     * @throws Expr4jException if tokenization or parsing fails
+     */
+    @NotNull
+    @Override
+    public DoubleExpression build(String expression) throws Expr4jException {
+        return (DoubleExpression) super.build(expression);
+    }
+
+    /**
+     * Emits a dedicated class that evaluates the expression as straight-line
+     * bytecode working on primitive doubles. Built-in arithmetic and
+     * {@link Math} functions are inlined, while any other operation is
+     * invoked directly from the generated code.
+     *
+     * <p>Constants resolved by the {@link Expression#getSchema() schema} of
+     * the expression and not listed in {@code variables} are embedded as
+     * literals. When no variables are given, values are read in schema slot
+     * order.</p>
+     *
+     * @param expression expression built by this builder
+     * @param variables  variable names in the order their values appear in the
+     *                   array passed to {@link DoubleFormula#evaluate(double[])}
+     * @return generated formula
+     * @throws Expr4jException if the expression references unknown variables
+     *                         or cannot be translated
+     */
+    @NotNull
+    public DoubleFormula generate(Expression<Double> expression, String... variables) {
+        if (variables.length == 0)
+            variables = expression.getSchema().getNames().toArray(new String[0]);
+
+        return new DoubleGenerator(this, expression.getSchema(), variables).generate(expression);
+    }
+
+    /**
+     * Records the tape used to compute the value and the gradient of an
+     * expression in one forward and one backward pass, see
+     * {@link DoubleGradient}.
+     *
+     * @param expression expression built by this builder
+     * @return reverse-mode differentiator of the expression
+     * @throws Expr4jException if the tree is missing or malformed, or an
+     *                         operation depending on a variable has no
+     *                         derivative
+     */
+    @NotNull
+    public DoubleGradient differentiate(Expression<Double> expression) {
+        return new DoubleGradient(this, expression);
+    }
+
+    /**
+     * Basic arithmetic with dedicated column loops, which the JIT can unroll
+     * and vectorize when evaluating a {@link me.croabeast.expr4j.expression.DoubleBatch}.
+     */
+    enum Arithmetic implements DoubleBinaryOperation {
+        ADD {
+            @Override
+            public double evaluate(double left, double right) {
+                return left + right;
+            }
+
+            @Override
+            public void evaluate(double[] left, int from, double[] right, int start, double[] results, int to, int length) {
+                for (int i = 0; i < length; i++)
+                    results[to + i] = left[from + i] + right[start + i];
+            }
+        },
+        SUBTRACT {
+            @Override
+            public double evaluate(double left, double right) {
+                return left - right;
+            }
+
+            @Override
+            public void evaluate(double[] left, int from, double[] right, int start, double[] results, int to, int length) {
+                for (int i = 0; i < length; i++)
+                    results[to + i] = left[from + i] - right[start + i];
+            }
+        },
+        MULTIPLY {
+            @Override
+            public double evaluate(double left, double right) {
+                return left * right;
+            }
+
+            @Override
+            public void evaluate(double[] left, int from, double[] right, int start, double[] results, int to, int length) {
+                for (int i = 0; i < length; i++)
+                    results[to + i] = left[from + i] * right[start + i];
+            }
+        },
+        DIVIDE {
+            @Override
+            public double evaluate(double left, double right) {
+                return left / right;
+            }
+
+            @Override
+            public void evaluate(double[] left, int from, double[] right, int start, double[] results, int to, int length) {
+                for (int i = 0; i < length; i++)
+                    results[to + i] = left[from + i] / right[start + i];
+            }
+        }
     }
 
     @UtilityClass
     class Utils {
 
+        /**
+         * {@code Math.fma}, available since Java 9, or {@code null} on older
+         * runtimes.
+         */
+        final MethodHandle FMA = fma();
+
+        private MethodHandle fma() {
+            try {
+                return MethodHandles.publicLookup().findStatic(Math.class, "fma",
+                        MethodType.methodType(double.class, double.class, double.class, double.class));
+            } catch (ReflectiveOperationException e) {
+                return null;
+            }
+        }
+
+        double fma(double[] operands) {
+            try {
+                return (double) FMA.invokeExact(operands[0], operands[1], operands[2]);
+            } catch (Throwable t) {
+                throw new Expr4jException("Cannot call Math.fma: " + t);
+            }
+        }
+
+        int exponent(double x) {
+            return x == Math.rint(x) && Math.abs(x) <= Integer.MAX_VALUE ? (int) x : -1;
+        }
+
         double asinh(double x) {
             return Math.log(x + Math.sqrt(x * x + 1));
         }
@@ -108,8 +364,28 @@ public class DoubleBuilder extends Builder<Double> {
             return 0.5 * Math.log((1 + x) / (1 - x));
         }
 
-        Double average(List<Double> list) {
-            return list.stream().mapToDouble(d -> d).average().orElse(0.0);
+        double max(double[] values) {
+            if (values.length == 0) return 0.0;
+
+            double max = values[0];
+            for (int i = 1; i < values.length; i++)
+                if (Double.compare(values[i], max) > 0) max = values[i];
+
+            return max;
+        }
+
+        double min(double[] values) {
+            if (values.length == 0) return 0.0;
+
+            double min = values[0];
+            for (int i = 1; i < values.length; i++)
+                if (Double.compare(values[i], min) < 0) min = values[i];
+
+            return min;
+        }
+
+        double average(double[] values) {
+            return Arrays.stream(values).average().orElse(0.0);
         }
 
         double factorial(double x) {
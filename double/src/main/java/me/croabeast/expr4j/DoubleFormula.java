@@ -0,0 +1,20 @@
+package me.croabeast.expr4j;
+
+/**
+ * Primitive entry point implemented by the classes that
+ * {@link DoubleBuilder#generate(me.croabeast.expr4j.expression.Expression, String...)}
+ * emits at runtime. Values are read from a plain {@code double[]} whose
+ * indices follow the variable order declared when the formula was generated,
+ * so no boxing or map lookups happen during evaluation.
+ */
+@FunctionalInterface
+public interface DoubleFormula {
+
+    /**
+     * Evaluates the formula.
+     *
+     * @param variables variable values ordered as declared on generation
+     * @return computed result
+     */
+    double evaluate(double[] variables);
+}
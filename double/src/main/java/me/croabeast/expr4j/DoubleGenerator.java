@@ -0,0 +1,624 @@
+package me.croabeast.expr4j;
+
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.expression.Expression;
+import me.croabeast.expr4j.expression.Node;
+import me.croabeast.expr4j.expression.Parameter;
+import me.croabeast.expr4j.expression.Parameters;
+import me.croabeast.expr4j.expression.Schema;
+import me.croabeast.expr4j.token.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Emits one class per expression that evaluates the whole tree as
+ * straight-line JVM bytecode. Built-in arithmetic is written as plain double
+ * instructions, {@link Math} functions become static calls and every other
+ * operation is invoked directly through a dedicated final field, leaving the
+ * JIT compiler a monomorphic call site it can inline.
+ *
+ * <p>On Java 15 and newer the class is defined as a hidden class next to this
+ * one; older runtimes fall back to a dedicated class loader per formula so
+ * unused formulas can still be unloaded.</p>
+ */
+@SuppressWarnings("unchecked")
+final class DoubleGenerator {
+
+    private static final String FORMULA = "me/croabeast/expr4j/DoubleGenerator$Formula";
+    private static final String PARAMETERS = "me/croabeast/expr4j/expression/Parameters";
+    private static final String OPERATION = "me/croabeast/expr4j/token/Operation";
+    private static final String UNARY = "me/croabeast/expr4j/token/UnaryOperation";
+    private static final String BINARY = "me/croabeast/expr4j/token/BinaryOperation";
+    private static final String DOUBLE_UNARY = "me/croabeast/expr4j/token/DoubleUnaryOperation";
+    private static final String DOUBLE_BINARY = "me/croabeast/expr4j/token/DoubleBinaryOperation";
+    private static final String DOUBLE_VARIADIC = "me/croabeast/expr4j/token/DoubleVariadicOperation";
+
+    private static final AtomicLong COUNTER = new AtomicLong();
+
+    /**
+     * {@code Lookup.defineHiddenClass} and its empty option array, or
+     * {@code null} before Java 15.
+     */
+    private static final Method HIDDEN;
+    private static final Object HIDDEN_OPTIONS;
+
+    static {
+        Method method = null;
+        Object options = null;
+
+        try {
+            Class<?> option = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            options = Array.newInstance(option, 0);
+
+            method = MethodHandles.Lookup.class.getMethod("defineHiddenClass",
+                    byte[].class, boolean.class, options.getClass());
+        } catch (ClassNotFoundException | NoSuchMethodException ignored) {}
+
+        HIDDEN = method;
+        HIDDEN_OPTIONS = options;
+    }
+
+    private final DoubleBuilder builder;
+    private final Schema<Double> schema;
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int poolSize = 1;
+
+    private final List<Operation<Double>> operations = new ArrayList<>();
+    private final List<String> descriptors = new ArrayList<>();
+    private final List<Node> arguments = new ArrayList<>();
+
+    private final String name;
+
+    DoubleGenerator(DoubleBuilder builder, Schema<Double> schema, String... variables) {
+        this.builder = builder;
+        this.schema = schema;
+
+        for (int i = 0; i < variables.length; i++)
+            if (slots.putIfAbsent(variables[i], i) != null)
+                throw new Expr4jException("Duplicated variable: " + variables[i]);
+
+        this.name = "me/croabeast/expr4j/DoubleFormula$" + COUNTER.incrementAndGet();
+    }
+
+    private int entry(String key, int tag, int size, Writer writer) {
+        Integer index = entries.get(key);
+        if (index != null) return index;
+
+        try {
+            poolOut.writeByte(tag);
+            writer.write(poolOut);
+        } catch (IOException e) {
+            throw new Expr4jException(e);
+        }
+
+        index = poolSize;
+        poolSize += size;
+        entries.put(key, index);
+        return index;
+    }
+
+    private int utf8(String value) {
+        return entry("U" + value, 1, 1, out -> out.writeUTF(value));
+    }
+
+    private int type(String internalName) {
+        int utf = utf8(internalName);
+        return entry("C" + internalName, 7, 1, out -> out.writeShort(utf));
+    }
+
+    private int number(double value) {
+        return entry("D" + Double.doubleToRawLongBits(value), 6, 2, out -> out.writeDouble(value));
+    }
+
+    private int member(int tag, String owner, String member, String descriptor) {
+        int ownerIndex = type(owner);
+        int nameIndex = utf8(member), descriptorIndex = utf8(descriptor);
+
+        int pair = entry("N" + member + ' ' + descriptor, 12, 1, out -> {
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+
+        return entry(tag + owner + '.' + member + descriptor, tag, 1, out -> {
+            out.writeShort(ownerIndex);
+            out.writeShort(pair);
+        });
+    }
+
+    private int field(int index) {
+        return member(9, name, "o" + index, descriptors.get(index));
+    }
+
+    private int operation(Operation<Double> operation, String descriptor) {
+        operations.add(operation);
+        descriptors.add(descriptor);
+        return field(operations.size() - 1);
+    }
+
+    private void box(Code code) {
+        code.invoke(0xb8, member(10, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;"), -2 + 1);
+    }
+
+    private void unbox(Code code) {
+        code.op(0xc0, 0).u2(type("java/lang/Double"));
+        code.invoke(0xb6, member(10, "java/lang/Double", "doubleValue", "()D"), -1 + 2);
+    }
+
+    private void emitIntrinsic(Code code, Intrinsic intrinsic, List<Node> children) {
+        if (intrinsic == Intrinsic.LOGARITHM) {
+            int log = member(10, "java/lang/Math", "log", "(D)D");
+
+            emit(code, children.get(1));
+            code.invoke(0xb8, log, 0);
+            emit(code, children.get(0));
+            code.invoke(0xb8, log, 0);
+
+            code.op(0x6f, -2);
+            return;
+        }
+
+        for (Node child : children) emit(code, child);
+
+        if (intrinsic == Intrinsic.ROUND) {
+            code.invoke(0xb8, member(10, "java/lang/Math", "round", "(D)J"), 0);
+            code.op(0x8a, 0);
+            return;
+        }
+
+        if (intrinsic.getOpcode() != 0) {
+            code.op(intrinsic.getOpcode(), intrinsic.getArity() == 2 ? -2 : 0);
+            return;
+        }
+
+        if (intrinsic.getMethod() != null) {
+            int arity = intrinsic.getArity();
+            String descriptor = arity == 3 ? "(DDD)D" : arity == 2 ? "(DD)D" : "(D)D";
+            code.invoke(0xb8, member(10, "java/lang/Math", intrinsic.getMethod(), descriptor), -2 * (arity - 1));
+        }
+    }
+
+    private void emit(Code code, Node node) {
+        Integer local = code.shares.get(node);
+        if (local != null) {
+            code.load(local);
+            return;
+        }
+
+        compute(code, node);
+        if (schema.share(node) < 0) return;
+
+        local = code.locals;
+        code.locals += 2;
+
+        code.op(0x5c, 2);
+        code.store(local);
+        code.shares.put(node, local);
+    }
+
+    private void compute(Code code, Node node) {
+        Token token = node.getToken();
+        String label = token.getLabel();
+
+        if (token instanceof Variable) {
+            Integer slot = slots.get(label);
+
+            if (slot != null) {
+                code.op(0x19, 1).u1(code.variables);
+                code.integer(slot);
+                code.op(0x31, 2 - 2);
+                return;
+            }
+
+            Double constant = schema.getConstant(label);
+            if (constant == null)
+                throw new Expr4jException("Variable not found: " + label);
+
+            code.constant(constant);
+            return;
+        }
+
+        if (token instanceof Operand) {
+            code.constant(((Operand<Double>) token).getValue());
+            return;
+        }
+
+        List<Node> children = node.getChildren();
+        int count;
+
+        if (token instanceof Function)
+            count = ((Function<Double>) token).getParameters();
+        else if (token instanceof Operator) {
+            Operator.Type type = ((Operator<Double>) token).getType();
+            count = type == Operator.Type.INFIX || type == Operator.Type.INFIX_RTL ? 2 : 1;
+        }
+        else throw new Expr4jException("Invalid token: " + token.getClass());
+
+        if (children == null || children.size() != count)
+            throw new Expr4jException("Invalid " + (token instanceof Function ? "function: " : "operator: ") + label);
+
+        Operation<Double> operation = Operations.resolve((Operation<Double>) token);
+
+        Intrinsic intrinsic = builder.getIntrinsic(operation);
+        if (intrinsic != null && intrinsic.getArity() == count) {
+            emitIntrinsic(code, intrinsic, children);
+            return;
+        }
+
+        if (count == 1 && operation instanceof DoubleUnaryOperation && Operations.isDirect(operation, UnaryOperation.class)) {
+            code.op(0x2a, 1).op(0xb4, 0).u2(operation(operation, 'L' + DOUBLE_UNARY + ';'));
+            emit(code, children.get(0));
+
+            code.invoke(0xb9, member(11, DOUBLE_UNARY, "evaluate", "(D)D"), -3 + 2);
+            code.u1(3).u1(0);
+            return;
+        }
+
+        if (count == 2 && operation instanceof DoubleBinaryOperation && Operations.isDirect(operation, BinaryOperation.class)) {
+            code.op(0x2a, 1).op(0xb4, 0).u2(operation(operation, 'L' + DOUBLE_BINARY + ';'));
+            emit(code, children.get(0));
+            emit(code, children.get(1));
+
+            code.invoke(0xb9, member(11, DOUBLE_BINARY, "evaluate", "(DD)D"), -5 + 2);
+            code.u1(5).u1(0);
+            return;
+        }
+
+        if (Operations.isDirect(operation, DoubleVariadicOperation.class)) {
+            code.op(0x2a, 1).op(0xb4, 0).u2(operation(operation, 'L' + DOUBLE_VARIADIC + ';'));
+            code.integer(count);
+            code.op(0xbc, 0).u1(7);
+
+            for (int i = 0; i < count; i++) {
+                code.op(0x59, 1);
+                code.integer(i);
+                emit(code, children.get(i));
+                code.op(0x52, -4);
+            }
+
+            code.invoke(0xb9, member(11, DOUBLE_VARIADIC, "evaluate", "([D)D"), -2 + 2);
+            code.u1(2).u1(0);
+            return;
+        }
+
+        if (count == 1 && Operations.isDirect(operation, UnaryOperation.class)) {
+            code.op(0x2a, 1).op(0xb4, 0).u2(operation(operation, 'L' + UNARY + ';'));
+            emit(code, children.get(0));
+            box(code);
+
+            code.invoke(0xb9, member(11, UNARY, "evaluate", "(Ljava/lang/Object;)Ljava/lang/Object;"), -1);
+            code.u1(2).u1(0);
+            unbox(code);
+            return;
+        }
+
+        if (count == 2 && Operations.isDirect(operation, BinaryOperation.class)) {
+            code.op(0x2a, 1).op(0xb4, 0).u2(operation(operation, 'L' + BINARY + ';'));
+            emit(code, children.get(0));
+            box(code);
+            emit(code, children.get(1));
+            box(code);
+
+            code.invoke(0xb9, member(11, BINARY, "evaluate",
+                    "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;"), -2);
+            code.u1(3).u1(0);
+            unbox(code);
+            return;
+        }
+
+        code.op(0x2a, 1).op(0xb4, 0).u2(operation(operation, 'L' + OPERATION + ';'));
+        code.op(0x2a, 1).op(0x19, 1).u1(code.variables);
+
+        code.integer(arguments.size());
+        code.integer(count);
+        arguments.addAll(children);
+
+        code.invoke(0xb6, member(10, FORMULA, "parameters", "([DII)L" + PARAMETERS + ';'), -3);
+        code.invoke(0xb9, member(11, OPERATION, "evaluate", "(L" + PARAMETERS + ";)Ljava/lang/Object;"), -1);
+        code.u1(2).u1(0);
+        unbox(code);
+    }
+
+    private byte[] assemble(Node root) throws IOException {
+        ByteArrayOutputStream methods = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(methods);
+        int methodCount = 2;
+
+        Code evaluate = new Code(1);
+        emit(evaluate, root);
+        evaluate.op(0xaf, -2);
+
+        List<Code> cases = new ArrayList<>();
+        for (int i = 0; i < arguments.size(); i++) {
+            Code body = new Code(2);
+            emit(body, arguments.get(i));
+            body.op(0xaf, -2);
+            cases.add(body);
+        }
+
+        Code constructor = new Code(1);
+        constructor.op(0x2a, 1).invoke(0xb7, member(10, FORMULA, "<init>", "()V"), -1);
+
+        for (int i = 0; i < operations.size(); i++) {
+            constructor.op(0x2a, 1).op(0x2b, 1);
+            constructor.integer(i);
+            constructor.op(0x32, -1);
+
+            String descriptor = descriptors.get(i);
+            constructor.op(0xc0, 0).u2(type(descriptor.substring(1, descriptor.length() - 1)));
+            constructor.op(0xb5, -2).u2(field(i));
+        }
+        constructor.op(0xb1, 0);
+
+        constructor.write(out, 0x0001, utf8("<init>"), utf8("([Ljava/lang/Object;)V"), 2, utf8("Code"));
+        evaluate.write(out, 0x0001, utf8("evaluate"), utf8("([D)D"), evaluate.locals, utf8("Code"));
+
+        if (!cases.isEmpty()) {
+            Code argument = new Code(2);
+            argument.op(0x1b, 1).op(0xaa, -1);
+            while (argument.bytes.size() % 4 != 0) argument.u1(0);
+
+            int switchStart = 1, tableSize = 12 + 4 * cases.size();
+            int offset = argument.bytes.size() - switchStart + tableSize;
+
+            argument.u4(offset);
+            argument.u4(0).u4(cases.size() - 1);
+
+            offset += 8;
+            for (Code body : cases) {
+                argument.u4(offset);
+                offset += body.bytes.size();
+            }
+
+            int invalid = type("java/lang/IllegalArgumentException");
+            argument.op(0xbb, 1).u2(invalid).op(0x59, 1)
+                    .invoke(0xb7, member(10, "java/lang/IllegalArgumentException", "<init>", "()V"), -1)
+                    .op(0xbf, -1);
+
+            for (Code body : cases) {
+                body.bytes.writeTo(argument.bytes);
+                argument.maxStack = Math.max(argument.maxStack, body.maxStack);
+                argument.locals = Math.max(argument.locals, body.locals);
+            }
+
+            argument.write(out, 0x0004, utf8("argument"), utf8("(I[D)D"), argument.locals, utf8("Code"));
+            methodCount++;
+        }
+
+        int thisClass = type(name), superClass = type(FORMULA);
+
+        int[] fieldNames = new int[operations.size()], fieldTypes = new int[operations.size()];
+        for (int i = 0; i < operations.size(); i++) {
+            fieldNames[i] = utf8("o" + i);
+            fieldTypes[i] = utf8(descriptors.get(i));
+        }
+
+        if (poolSize > 0xFFFF)
+            throw new Expr4jException("Expression is too large to generate");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream file = new DataOutputStream(bytes);
+
+        file.writeInt(0xCAFEBABE);
+        file.writeShort(0);
+        file.writeShort(49);
+
+        file.writeShort(poolSize);
+        pool.writeTo(file);
+
+        file.writeShort(0x0011 | 0x0020);
+        file.writeShort(thisClass);
+        file.writeShort(superClass);
+        file.writeShort(0);
+
+        file.writeShort(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            file.writeShort(0x0012);
+            file.writeShort(fieldNames[i]);
+            file.writeShort(fieldTypes[i]);
+            file.writeShort(0);
+        }
+
+        file.writeShort(methodCount);
+        file.write(methods.toByteArray());
+        file.writeShort(0);
+
+        return bytes.toByteArray();
+    }
+
+    private static Class<?> define(String name, byte[] bytes, boolean hidden) throws ReflectiveOperationException {
+        if (hidden && HIDDEN != null) {
+            Object lookup = HIDDEN.invoke(MethodHandles.lookup(), bytes, true, HIDDEN_OPTIONS);
+            return ((MethodHandles.Lookup) lookup).lookupClass();
+        }
+
+        return new Loader(DoubleGenerator.class.getClassLoader()).define(name.replace('/', '.'), bytes);
+    }
+
+    /**
+     * Generates and instantiates the formula class for the given expression.
+     *
+     * @param expression expression to translate
+     * @return primitive formula backed by the generated class
+     * @throws Expr4jException if the expression is malformed or cannot be
+     *                         translated
+     */
+    DoubleFormula generate(Expression<Double> expression) {
+        return generate(expression, true);
+    }
+
+    /**
+     * Generates the formula class, optionally forcing the dedicated class
+     * loader used on runtimes without hidden classes.
+     *
+     * @param expression expression to translate
+     * @param hidden     whether to define a hidden class when the runtime
+     *                   supports it
+     * @return primitive formula backed by the generated class
+     */
+    DoubleFormula generate(Expression<Double> expression, boolean hidden) {
+        Node root = expression.getRoot();
+        if (root == null)
+            throw new Expr4jException("Root node not defined");
+
+        try {
+            byte[] bytes = assemble(root);
+            Class<?> type = define(name, bytes, hidden);
+
+            Object[] values = operations.toArray();
+            return (DoubleFormula) type.getConstructor(Object[].class).newInstance((Object) values);
+        }
+        catch (IOException | ReflectiveOperationException | LinkageError e) {
+            throw new Expr4jException("Unable to generate formula for " + expression, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private final class Code {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final int variables;
+        private int stack, maxStack;
+
+        /**
+         * Local slots holding the value of every shared node already computed
+         * by this code, and the next free local slot.
+         */
+        private final Map<Node, Integer> shares = new IdentityHashMap<>();
+        private int locals;
+
+        private Code(int variables) {
+            this.variables = variables;
+            this.locals = variables + 1;
+        }
+
+        Code u1(int value) {
+            bytes.write(value);
+            return this;
+        }
+
+        Code u2(int value) {
+            return u1(value >>> 8).u1(value & 0xFF);
+        }
+
+        Code u4(int value) {
+            return u2(value >>> 16).u2(value & 0xFFFF);
+        }
+
+        Code op(int opcode, int delta) {
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+            return u1(opcode);
+        }
+
+        Code invoke(int opcode, int method, int delta) {
+            return op(opcode, delta).u2(method);
+        }
+
+        void integer(int value) {
+            if (value <= 5) op(0x03 + value, 1);
+            else if (value <= Byte.MAX_VALUE) op(0x10, 1).u1(value);
+            else if (value <= Short.MAX_VALUE) op(0x11, 1).u2(value);
+            else throw new Expr4jException("Expression is too large to generate");
+        }
+
+        void load(int local) {
+            if (local <= 0xFF) op(0x18, 2).u1(local);
+            else op(0xc4, 0).op(0x18, 2).u2(local);
+        }
+
+        void store(int local) {
+            if (local <= 0xFF) op(0x39, -2).u1(local);
+            else op(0xc4, 0).op(0x39, -2).u2(local);
+        }
+
+        void constant(double value) {
+            if (Double.doubleToRawLongBits(value) == 0L) op(0x0e, 2);
+            else if (value == 1.0) op(0x0f, 2);
+            else op(0x14, 2).u2(number(value));
+        }
+
+        void write(DataOutputStream out, int access, int name, int descriptor, int locals, int attribute) throws IOException {
+            if (bytes.size() > 0xFFFF || locals > 0xFFFF)
+                throw new Expr4jException("Expression is too large to generate");
+
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+
+            out.writeShort(attribute);
+            out.writeInt(12 + bytes.size());
+            out.writeShort(maxStack);
+            out.writeShort(locals);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+    }
+
+    private static final class Loader extends ClassLoader {
+
+        private Loader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Base class of every generated formula. Generated subclasses implement
+     * {@link #evaluate(double[])} and, when the expression calls generic
+     * operations, {@link #argument(int, double[])} so those operations still
+     * receive lazily evaluated parameters.
+     */
+    public abstract static class Formula implements DoubleFormula {
+
+        /**
+         * Evaluates one of the argument subtrees handed to generic operations.
+         *
+         * @param index     argument index assigned during generation
+         * @param variables variable values of the current evaluation
+         * @return computed argument value
+         */
+        protected double argument(int index, double[] variables) {
+            throw new IllegalArgumentException("Unknown argument: " + index);
+        }
+
+        /**
+         * Wraps a range of argument subtrees into lazy parameters.
+         *
+         * @param variables variable values of the current evaluation
+         * @param first     index of the first argument
+         * @param count     number of arguments
+         * @return parameters ready to be passed to an operation
+         */
+        protected final Parameters<Double> parameters(double[] variables, int first, int count) {
+            Parameters<Double> parameters = new Parameters<>();
+
+            for (int i = 0; i < count; i++) {
+                int index = first + i;
+                parameters.add(new Parameter<>(() -> argument(index, variables)));
+            }
+
+            return parameters;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package me.croabeast.expr4j;
+
+import lombok.Getter;
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.expression.*;
+import me.croabeast.expr4j.token.*;
+
+import java.util.*;
+
+/**
+ * Reverse-mode automatic differentiation of an {@link Expression} over
+ * {@link Double} values, created by
+ * {@link DoubleBuilder#differentiate(Expression)}. The tree is recorded once
+ * as a tape of nodes ordered so every operand comes before its operations.
+ * Each evaluation runs one forward pass computing the value of every node and
+ * one backward pass accumulating the partial derivative of the result with
+ * respect to every node, which yields the value and the whole gradient for
+ * the price of about two evaluations, whatever the number of variables.
+ *
+ * <p>Every operation depending on a variable needs a {@link Derivative}. The
+ * built-in operations of {@link DoubleBuilder} have one, and custom
+ * operations can be given one with
+ * {@link DoubleBuilder#setDerivative(Operation, Derivative)}. Subtrees without
+ * variables, such as {@code rand()} or {@code 2*pi}, need none.</p>
+ *
+ * <p>The forward pass computes every operand of an operation before calling
+ * it, including those an operation receiving lazy {@link Parameters} would
+ * skip. Nodes shared by several parents are computed once.</p>
+ *
+ * <p>Gradients do not hold mutable state and can be shared between threads as
+ * long as the registered operations are thread-safe.</p>
+ */
+@SuppressWarnings("unchecked")
+public final class DoubleGradient {
+
+    private static final int VALUE = 0, VARIABLE = 1, UNARY = 2, BINARY = 3, VARIADIC = 4, GENERIC = 5;
+
+    private final DoubleBuilder builder;
+    private final Expression<Double> expression;
+
+    /**
+     * Variable layout of the gradient. Partial derivatives are reported in the
+     * same slots the variables are read from.
+     */
+    @Getter
+    private final Schema<Double> schema;
+
+    private final int[] kinds, slots;
+    private final int[][] children;
+    private final double[] values;
+    private final Operation<Double>[] operations;
+    private final Derivative[] derivatives;
+
+    /**
+     * Tells whether the value of a node depends on a variable, so gradients
+     * have to flow through it.
+     */
+    private final boolean[] variable;
+
+    /**
+     * Records the tape of an expression built by the given builder.
+     *
+     * @param builder    builder holding the derivative rules
+     * @param expression expression to differentiate
+     * @throws Expr4jException if the tree is missing or malformed, or an
+     *                         operation depending on a variable has no
+     *                         derivative
+     */
+    DoubleGradient(DoubleBuilder builder, Expression<Double> expression) {
+        Tape<Double> tape = new Tape<>(expression);
+
+        this.builder = builder;
+        this.expression = expression;
+        this.schema = tape.getSchema();
+
+        int size = tape.size();
+        this.kinds = new int[size];
+        this.slots = new int[size];
+        this.children = new int[size][];
+        this.values = new double[size];
+        this.operations = new Operation[size];
+        this.derivatives = new Derivative[size];
+        this.variable = new boolean[size];
+
+        for (int i = 0; i < size; i++) {
+            children[i] = tape.getChildren(i);
+            define(i, tape);
+
+            for (int child : children[i]) variable[i] |= variable[child];
+            if (operations[i] == null || !variable[i]) continue;
+
+            derivatives[i] = builder.getDerivative(operations[i]);
+            if (derivatives[i] == null)
+                throw new Expr4jException("No derivative defined for: " + tape.getNode(i).getToken().getLabel());
+        }
+    }
+
+    private void define(int index, Tape<Double> tape) {
+        Operation<Double> operation = tape.getOperation(index);
+
+        if (operation == null) {
+            slots[index] = tape.getSlot(index);
+
+            if (slots[index] < 0) values[index] = tape.getValue(index);
+            else {
+                kinds[index] = VARIABLE;
+                variable[index] = true;
+            }
+            return;
+        }
+
+        int count = children[index].length;
+        operations[index] = operation;
+
+        if (count == 1 && operation instanceof DoubleUnaryOperation)
+            kinds[index] = UNARY;
+        else if (count == 2 && operation instanceof DoubleBinaryOperation)
+            kinds[index] = BINARY;
+        else if (operation instanceof DoubleVariadicOperation)
+            kinds[index] = VARIADIC;
+        else kinds[index] = GENERIC;
+    }
+
+    private static double[] operands(int[] children, double[] values) {
+        double[] operands = new double[children.length];
+        for (int j = 0; j < operands.length; j++) operands[j] = values[children[j]];
+
+        return operands;
+    }
+
+    private double compute(int index, double[] values) {
+        int[] operands = children[index];
+
+        switch (kinds[index]) {
+            case UNARY:
+                return ((DoubleUnaryOperation) operations[index]).evaluate(values[operands[0]]);
+
+            case BINARY:
+                return ((DoubleBinaryOperation) operations[index]).evaluate(values[operands[0]], values[operands[1]]);
+
+            case VARIADIC:
+                return ((DoubleVariadicOperation) operations[index]).evaluate(operands(operands, values));
+
+            default:
+                Parameters<Double> parameters = new Parameters<>();
+                for (int child : operands) {
+                    Double value = values[child];
+                    parameters.add(new Parameter<>(() -> value));
+                }
+
+                return operations[index].evaluate(parameters);
+        }
+    }
+
+    /**
+     * Evaluates the expression and its gradient on variables read from an
+     * array indexed by the slots of {@link #getSchema()}.
+     *
+     * @param variables variable values ordered by schema slot
+     * @param gradient  array receiving the partial derivative of the result
+     *                  with respect to every variable, ordered by schema slot
+     * @return computed result of the expression
+     * @throws Expr4jException if an array is shorter than the schema
+     */
+    public double evaluate(double[] variables, double[] gradient) {
+        int size = schema.size();
+        if (variables.length < size)
+            throw new Expr4jException("Expected " + size + " variables, got " + variables.length);
+
+        if (gradient.length < size)
+            throw new Expr4jException("Expected " + size + " partial derivatives, got " + gradient.length);
+
+        int root = kinds.length - 1;
+        double[] values = this.values.clone();
+
+        for (int i = 0; i <= root; i++) {
+            if (kinds[i] == VARIABLE) values[i] = variables[slots[i]];
+            else if (kinds[i] != VALUE) values[i] = compute(i, values);
+        }
+
+        Arrays.fill(gradient, 0, size, 0.0);
+
+        double[] adjoints = new double[root + 1];
+        adjoints[root] = 1;
+
+        for (int i = root; i >= 0; i--) {
+            double adjoint = adjoints[i];
+            if (adjoint == 0 || !variable[i]) continue;
+
+            if (kinds[i] == VARIABLE) {
+                gradient[slots[i]] += adjoint;
+                continue;
+            }
+
+            int[] operands = children[i];
+            double[] partials = new double[operands.length];
+            derivatives[i].partials(operands(operands, values), values[i], partials);
+
+            for (int j = 0; j < operands.length; j++)
+                if (variable[operands[j]]) adjoints[operands[j]] += adjoint * partials[j];
+        }
+
+        return values[root];
+    }
+
+    /**
+     * Evaluates the expression and its gradient using the provided variable
+     * assignments. Entries named after a constant override it through a
+     * gradient recorded for the call, see {@link Expression#overriddenBy(Map)};
+     * the gradient still only reports the free variables.
+     *
+     * @param variables mapping of variable names to values, may be {@code null}
+     * @param gradient  map receiving the partial derivative of the result with
+     *                  respect to every free variable, by name
+     * @return computed result of the expression
+     * @throws Expr4jException if a free variable has no assigned value
+     */
+    public double evaluate(Map<String, Double> variables, Map<String, Double> gradient) {
+        List<String> names = schema.getNames();
+
+        Expression<Double> expression = this.expression.overriddenBy(variables);
+        if (expression != this.expression) {
+            Map<String, Double> partials = new HashMap<>();
+            double result = new DoubleGradient(builder, expression).evaluate(variables, partials);
+
+            for (String name : names) gradient.put(name, partials.get(name));
+            return result;
+        }
+
+        double[] values = new double[names.size()];
+
+        for (int i = 0; i < values.length; i++) {
+            Double value = variables == null ? null : variables.get(names.get(i));
+            if (value == null)
+                throw new Expr4jException("Variable not found: " + names.get(i));
+
+            values[i] = value;
+        }
+
+        double[] partials = new double[values.length];
+        double result = evaluate(values, partials);
+
+        for (int i = 0; i < partials.length; i++) gradient.put(names.get(i), partials[i]);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return expression.toString();
+    }
+}
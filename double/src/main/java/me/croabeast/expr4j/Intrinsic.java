@@ -0,0 +1,75 @@
+package me.croabeast.expr4j;
+
+import lombok.Getter;
+
+/**
+ * Built-in {@link DoubleBuilder} operations that {@link DoubleGenerator} can
+ * emit as plain JVM instructions or as static {@link Math} calls instead of
+ * invoking the registered operation object.
+ */
+@Getter
+enum Intrinsic {
+    IDENTITY(1),
+    NEGATE(1, 0x77),
+    ADD(2, 0x63),
+    SUBTRACT(2, 0x67),
+    MULTIPLY(2, 0x6b),
+    DIVIDE(2, 0x6f),
+    REMAINDER(2, 0x73),
+    POWER(2, "pow"),
+    ABSOLUTE(1, "abs"),
+    SINE(1, "sin"),
+    COSINE(1, "cos"),
+    TANGENT(1, "tan"),
+    ARCSINE(1, "asin"),
+    ARCCOSINE(1, "acos"),
+    ARCTANGENT(1, "atan"),
+    H_SINE(1, "sinh"),
+    H_COSINE(1, "cosh"),
+    H_TANGENT(1, "tanh"),
+    ROUND(1),
+    FLOOR(1, "floor"),
+    CEILING(1, "ceil"),
+    NATURAL_LOGARITHM(1, "log"),
+    BASE10_LOGARITHM(1, "log10"),
+    SQUARE_ROOT(1, "sqrt"),
+    CUBE_ROOT(1, "cbrt"),
+    DEGREES(1, "toDegrees"),
+    RADIANS(1, "toRadians"),
+    LOGARITHM(2),
+    EXPONENTIAL(1, "exp"),
+    FUSED_MULTIPLY_ADD(3, "fma");
+
+    /**
+     * Number of operands consumed by the intrinsic.
+     */
+    private final int arity;
+
+    /**
+     * Single JVM opcode implementing the intrinsic, or {@code 0} if none.
+     */
+    private final int opcode;
+
+    /**
+     * Name of the {@link Math} method implementing the intrinsic, if any.
+     */
+    private final String method;
+
+    Intrinsic(int arity, int opcode, String method) {
+        this.arity = arity;
+        this.opcode = opcode;
+        this.method = method;
+    }
+
+    Intrinsic(int arity, int opcode) {
+        this(arity, opcode, null);
+    }
+
+    Intrinsic(int arity, String method) {
+        this(arity, 0, method);
+    }
+
+    Intrinsic(int arity) {
+        this(arity, 0, null);
+    }
+}
@@ -0,0 +1,87 @@
+package me.croabeast.expr4j;
+
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.expression.Batch;
+import me.croabeast.expr4j.expression.DoubleBatch;
+import me.croabeast.expr4j.expression.DoubleExpression;
+import me.croabeast.expr4j.expression.Parameters;
+import me.croabeast.expr4j.token.Function;
+import me.croabeast.expr4j.token.Operation;
+import org.junit.jupiter.api.Test;
+
+import java.nio.DoubleBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchTest {
+
+    private static final int ROWS = 37;
+
+    private final DoubleBuilder builder = new DoubleBuilder();
+
+    private static double value(int slot, int row) {
+        return (row + 1) * 0.25 + slot - 1.5;
+    }
+
+    private static Map<String, Double> row(List<String> names, int row) {
+        Map<String, Double> variables = new HashMap<>();
+        for (int s = 0; s < names.size(); s++) variables.put(names.get(s), value(s, row));
+        return variables;
+    }
+
+    private static double[][] columns(int slots) {
+        double[][] columns = new double[slots][ROWS];
+        for (int s = 0; s < slots; s++)
+            for (int i = 0; i < ROWS; i++) columns[s][i] = value(s, i);
+
+        return columns;
+    }
+
+    @Test
+    void batchesMatchTheInterpreter() {
+        builder.getDictionary().addFunction(new Function<>("first", 2, (Operation<Double>) Parameters::result));
+
+        String[] formulas = {
+                "x * y + z", "sin(x) * cos(y) - (x + y) * (x + y)",
+                "max(x, y, z) + first(z * 2, 1 / 0) - 3", "-(x - y) ^ 2 / (1 + abs z)"
+        };
+
+        for (String formula : formulas) {
+            DoubleExpression expression = builder.build(formula);
+            List<String> names = expression.getSchema().getNames();
+            double[][] columns = columns(names.size());
+
+            double[] primitive = new double[ROWS];
+            expression.toDoubleBatch(8).evaluate(columns, primitive);
+
+            Double[][] boxed = new Double[names.size()][ROWS];
+            for (int s = 0; s < boxed.length; s++)
+                for (int i = 0; i < ROWS; i++) boxed[s][i] = columns[s][i];
+
+            Double[] results = new Double[ROWS];
+            expression.toBatch(8).evaluate(boxed, results);
+
+            for (int i = 0; i < ROWS; i++) {
+                double expected = expression.evaluate(row(names, i));
+                assertEquals(expected, primitive[i], 0.0, formula);
+                assertEquals(expected, results[i], 0.0, formula);
+            }
+        }
+    }
+
+    @Test
+    void missingColumnsAreRejected() {
+        DoubleExpression expression = builder.build("x + y");
+        DoubleBatch primitive = expression.toDoubleBatch();
+        Batch<Double> boxed = expression.toBatch();
+
+        assertThrows(Expr4jException.class, () -> primitive.evaluate(new double[][] {{1}, null}, new double[1]));
+        assertThrows(Expr4jException.class, () -> primitive.evaluate(
+                new DoubleBuffer[] {DoubleBuffer.wrap(new double[1]), null}, DoubleBuffer.allocate(1)));
+        assertThrows(Expr4jException.class, () -> boxed.evaluate(new Double[][] {{1.0}, null}, new Double[1]));
+        assertThrows(Expr4jException.class, () -> primitive.evaluate(new double[][] {{1}}, new double[1]));
+    }
+}
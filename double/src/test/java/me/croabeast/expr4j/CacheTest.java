@@ -0,0 +1,70 @@
+package me.croabeast.expr4j;
+
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.expression.DoubleExpression;
+import me.croabeast.expr4j.expression.Engine;
+import me.croabeast.expr4j.expression.ExpressionCache;
+import me.croabeast.expr4j.expression.MemoizedOperation;
+import me.croabeast.expr4j.token.Operator;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheTest {
+
+    private final DoubleBuilder builder = new DoubleBuilder();
+
+    @Test
+    void buildsAreBoundedAndEvicted() {
+        ExpressionCache<Double> cache = builder.enableCache(40);
+
+        for (int i = 0; i < 100; i++) builder.build("x + " + i);
+        assertSame(builder.build("x + 99").getRoot(), builder.build("x + 99").getRoot());
+
+        assertEquals(40, cache.getCapacity());
+        assertTrue(cache.size() <= 40);
+        assertEquals(100 - cache.size(), cache.getEvictions());
+        assertEquals(100, cache.getMisses());
+        assertEquals(2, cache.getHits());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getEvictions() + cache.getHits() + cache.getMisses());
+    }
+
+    @Test
+    void cachedBuildsAreCopiesPerCaller() {
+        builder.enableCache(8);
+        builder.setEngine(Engine.STACK_MACHINE);
+
+        DoubleExpression first = builder.build("x * 2"), second = builder.build("x * 2");
+        assertNotSame(first, second);
+        assertSame(first.toStackMachine(), second.toStackMachine());
+
+        first.setEngine(Engine.TREE);
+        first.setRoot(builder.build("x + 1").getRoot());
+        assertEquals(Engine.STACK_MACHINE, second.getEngine());
+
+        assertEquals(4.0, first.evaluate(Collections.singletonMap("x", 3.0)), 0.0);
+        assertEquals(6.0, second.evaluate(Collections.singletonMap("x", 3.0)), 0.0);
+        assertEquals(6.0, builder.build("x * 2").evaluateAsDouble(Collections.singletonMap("x", 3.0)), 0.0);
+    }
+
+    @Test
+    void memoizedResultsAreBounded() {
+        MemoizedOperation<Double> sqrt = builder.getDictionary().memoizeOperator("sqrt", Operator.Type.PREFIX, 20);
+
+        for (int i = 0; i < 50; i++)
+            assertEquals(Math.sqrt(i % 25), builder.build("sqrt x").evaluate(Collections.singletonMap("x", (double) (i % 25))), 0.0);
+
+        assertEquals(20, sqrt.getCapacity());
+        assertTrue(sqrt.size() <= 20);
+        assertEquals(50, sqrt.getHits() + sqrt.getMisses());
+
+        sqrt.clear();
+        assertEquals(0, sqrt.size() + sqrt.getHits() + sqrt.getMisses());
+        assertThrows(Expr4jException.class, () -> builder.getDictionary().memoizeFunction("rand", 8));
+    }
+}
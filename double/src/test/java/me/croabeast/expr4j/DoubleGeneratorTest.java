@@ -0,0 +1,198 @@
+package me.croabeast.expr4j;
+
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.expression.Expression;
+import me.croabeast.expr4j.expression.MemoizedOperation;
+import me.croabeast.expr4j.expression.Optimization;
+import me.croabeast.expr4j.expression.Parameters;
+import me.croabeast.expr4j.token.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DoubleGeneratorTest {
+
+    private static final double[] VALUES = {0.75, 2.5, -1.25};
+
+    private final DoubleBuilder builder = new DoubleBuilder();
+
+    private static Map<String, Double> variables() {
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", VALUES[0]);
+        variables.put("y", VALUES[1]);
+        variables.put("z", VALUES[2]);
+        return variables;
+    }
+
+    private DoubleFormula generate(Expression<Double> expression) {
+        return builder.generate(expression, "x", "y", "z");
+    }
+
+    private void assertGenerated(String formula) {
+        Expression<Double> expression = builder.build(formula);
+        double expected = expression.evaluate(variables());
+
+        assertEquals(expected, generate(expression).evaluate(VALUES), 0.0, formula);
+    }
+
+    @Test
+    void everyIntrinsicIsInlined() {
+        Map<Intrinsic, String> formulas = new EnumMap<>(Intrinsic.class);
+        formulas.put(Intrinsic.IDENTITY, "+x");
+        formulas.put(Intrinsic.NEGATE, "-x");
+        formulas.put(Intrinsic.ADD, "x + y");
+        formulas.put(Intrinsic.SUBTRACT, "x - y");
+        formulas.put(Intrinsic.MULTIPLY, "x * y");
+        formulas.put(Intrinsic.DIVIDE, "x / y");
+        formulas.put(Intrinsic.REMAINDER, "y % x");
+        formulas.put(Intrinsic.POWER, "y ^ x");
+        formulas.put(Intrinsic.ABSOLUTE, "abs z");
+        formulas.put(Intrinsic.SINE, "sin y");
+        formulas.put(Intrinsic.COSINE, "cos y");
+        formulas.put(Intrinsic.TANGENT, "tan y");
+        formulas.put(Intrinsic.ARCSINE, "asin x");
+        formulas.put(Intrinsic.ARCCOSINE, "acos x");
+        formulas.put(Intrinsic.ARCTANGENT, "atan y");
+        formulas.put(Intrinsic.H_SINE, "sinh z");
+        formulas.put(Intrinsic.H_COSINE, "cosh z");
+        formulas.put(Intrinsic.H_TANGENT, "tanh z");
+        formulas.put(Intrinsic.ROUND, "round z");
+        formulas.put(Intrinsic.FLOOR, "floor z");
+        formulas.put(Intrinsic.CEILING, "ceil z");
+        formulas.put(Intrinsic.NATURAL_LOGARITHM, "ln y");
+        formulas.put(Intrinsic.BASE10_LOGARITHM, "log10 y");
+        formulas.put(Intrinsic.SQUARE_ROOT, "sqrt y");
+        formulas.put(Intrinsic.CUBE_ROOT, "cbrt z");
+        formulas.put(Intrinsic.DEGREES, "deg(x)");
+        formulas.put(Intrinsic.RADIANS, "rad(y)");
+        formulas.put(Intrinsic.LOGARITHM, "log(y, x)");
+        formulas.put(Intrinsic.EXPONENTIAL, "exp(z)");
+        formulas.put(Intrinsic.FUSED_MULTIPLY_ADD, "x * y + z");
+
+        assertEquals(Intrinsic.values().length, formulas.size());
+
+        for (Map.Entry<Intrinsic, String> entry : formulas.entrySet()) {
+            if (entry.getKey() == Intrinsic.FUSED_MULTIPLY_ADD) builder.enable(Optimization.SIMPLIFY);
+            else builder.disable(Optimization.SIMPLIFY);
+
+            String formula = entry.getValue();
+            Expression<Double> expression = builder.build(formula);
+
+            DoubleFormula generated = generate(expression);
+            assertEquals(expression.evaluate(variables()), generated.evaluate(VALUES), 0.0, formula);
+
+            Operation<Double> operation = Operations.resolve((Operation<Double>) expression.getRoot().getToken());
+            if (builder.getIntrinsic(operation) == entry.getKey())
+                assertEquals(0, generated.getClass().getDeclaredFields().length, formula);
+        }
+    }
+
+    @Test
+    void nestedFormulasMatchTheInterpreter() {
+        assertGenerated("sqrt(x^2 + y^2) / (1 + abs z)");
+        assertGenerated("sin(x) * cos(y) + tan(z / 4) - ln(x + y)");
+        assertGenerated("3x^4 - 2x^3 + x^2 - 7x + 5");
+        assertGenerated("max(x, y, z) - min(x, y) + mean(x, y, z) * average(z, x)");
+        assertGenerated("-(x + y) * z ^ 2 + pi * e");
+        assertGenerated("log(2, y * 4) + deg(rad(x)) - 3!");
+    }
+
+    @Test
+    void variadicOperationsReceiveAnArray() {
+        builder.getDictionary().addFunction(new Function<>("sum", -1,
+                (DoubleVariadicOperation) values -> {
+                    double sum = 0;
+                    for (double value : values) sum += value;
+                    return sum;
+                }));
+
+        Expression<Double> expression = builder.build("sum(x, y * 2, z, 1)");
+        DoubleFormula formula = generate(expression);
+
+        assertEquals(0.75 + 5 - 1.25 + 1, formula.evaluate(VALUES), 1e-12);
+        assertEquals(1, formula.getClass().getDeclaredFields().length);
+        assertGenerated("max(x, sum(y, z), 1) + min(z)");
+    }
+
+    @Test
+    void customOperationsAreCalledDirectly() {
+        builder.getDictionary()
+                .addFunction(new Function<>("half", 1, (DoubleUnaryOperation) v -> v / 2))
+                .addFunction(new Function<>("hyp", 2, (DoubleBinaryOperation) Math::hypot))
+                .addFunction(new Function<>("twice", 1, (UnaryOperation<Double>) v -> v * 2))
+                .addFunction(new Function<>("diff", 2, (BinaryOperation<Double>) (a, b) -> a - b));
+
+        assertGenerated("half(x) + hyp(y, z) * twice(z) - diff(y, x)");
+    }
+
+    @Test
+    void lazyOperationsOnlyComputeRequestedArguments() {
+        AtomicInteger calls = new AtomicInteger();
+
+        builder.getDictionary()
+                .addFunction(new Function<>("first", 2, (Operation<Double>) Parameters::result))
+                .addFunction(new Function<>("count", 1, (DoubleUnaryOperation) v -> {
+                    calls.incrementAndGet();
+                    return v;
+                }));
+
+        DoubleFormula formula = generate(builder.build("first(x + y, count(z)) * 2"));
+
+        assertEquals(6.5, formula.evaluate(VALUES), 0.0);
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    void memoizedBuiltInsKeepTheirIntrinsicsAndDerivatives() {
+        builder.getDictionary().memoizeOperator("sin", Operator.Type.PREFIX, 64);
+        builder.getDictionary().memoizeFunction("exp", 64);
+
+        for (String formula : new String[] {"sin x", "exp(x)"}) {
+            Expression<Double> expression = builder.build(formula);
+            Operation<Double> operation = Operations.resolve((Operation<Double>) expression.getRoot().getToken());
+
+            assertTrue(operation instanceof MemoizedOperation, formula);
+            assertNotNull(builder.getIntrinsic(operation), formula);
+            assertEquals(0, generate(expression).getClass().getDeclaredFields().length, formula);
+        }
+
+        Map<String, Double> gradient = new HashMap<>();
+        builder.differentiate(builder.build("sin(x) * exp(y)")).evaluate(variables(), gradient);
+
+        assertEquals(Math.cos(VALUES[0]) * Math.exp(VALUES[1]), gradient.get("x"), 1e-12);
+        assertEquals(Math.sin(VALUES[0]) * Math.exp(VALUES[1]), gradient.get("y"), 1e-12);
+    }
+
+    @Test
+    void variablesFollowTheDeclaredOrder() {
+        Expression<Double> expression = builder.build("x - y * pi");
+
+        assertEquals(2 - 3 * Math.PI, builder.generate(expression, "y", "x").evaluate(new double[] {3, 2}), 1e-12);
+        assertEquals(1 - 4 * Math.PI, builder.generate(expression).evaluate(new double[] {1, 4}), 1e-12);
+        assertThrows(Expr4jException.class, () -> builder.generate(expression, "x"));
+        assertThrows(Expr4jException.class, () -> builder.generate(expression, "x", "x"));
+    }
+
+    @Test
+    void fallbackClassLoaderDefinesWorkingFormulas() {
+        builder.getDictionary().addFunction(new Function<>("first", 2, (Operation<Double>) Parameters::result));
+
+        builder.enable(Optimization.SIMPLIFY);
+
+        String[] formulas = {"sin(x) * y - z ^ 2", "max(x, y, z) + first(z, 1 / 0)", "x % y + x * y + z"};
+
+        for (String formula : formulas) {
+            Expression<Double> expression = builder.build(formula);
+            DoubleFormula generated = new DoubleGenerator(builder, expression.getSchema(), "x", "y", "z")
+                    .generate(expression, false);
+
+            assertEquals(DoubleGenerator.class.getName() + "$Loader", generated.getClass().getClassLoader().getClass().getName());
+            assertEquals(expression.evaluate(variables()), generated.evaluate(VALUES), 0.0, formula);
+        }
+    }
+}
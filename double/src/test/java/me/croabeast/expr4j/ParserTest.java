@@ -0,0 +1,109 @@
+package me.croabeast.expr4j;
+
+import me.croabeast.expr4j.expression.Expression;
+import me.croabeast.expr4j.expression.Node;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ParserTest {
+
+    private final DoubleBuilder builder = new DoubleBuilder();
+
+    private double evaluate(String formula) {
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", 2.0);
+        variables.put("y", 3.0);
+        variables.put("z", 5.0);
+        return builder.build(formula).evaluate(variables);
+    }
+
+    private String root(String formula) {
+        Expression<Double> expression = builder.build(formula);
+        Node root = expression.getRoot();
+        return root.getToken().getLabel();
+    }
+
+    @Test
+    void multiplicationBindsTighterThanAddition() {
+        assertEquals(11.0, evaluate("x * y + z"));
+        assertEquals(17.0, evaluate("x + y * z"));
+        assertEquals(25.0, evaluate("(x + y) * z"));
+        assertEquals("+", root("x * y + z"));
+        assertEquals("+", root("x + y * z"));
+    }
+
+    @Test
+    void powerBindsTighterThanMultiplication() {
+        assertEquals(18.0, evaluate("x * y ^ 2"));
+        assertEquals(36.0, evaluate("(x * y) ^ 2"));
+        assertEquals("*", root("x * y ^ 2"));
+    }
+
+    @Test
+    void subtractionAndDivisionAreLeftAssociative() {
+        assertEquals(-6.0, evaluate("x - y - z"));
+        assertEquals(4.0, evaluate("x - (y - z)"));
+        assertEquals(2.0 / 3.0 / 5.0, evaluate("x / y / z"), 1e-12);
+        assertEquals(2.0, evaluate("z - x - y + x"));
+    }
+
+    @Test
+    void powerIsRightAssociative() {
+        assertEquals(Math.pow(2, 243), evaluate("x ^ y ^ z"));
+        assertEquals(Math.pow(2, 243), evaluate("x ^ (y ^ z)"));
+        assertEquals(Math.pow(8, 5), evaluate("(x ^ y) ^ z"));
+    }
+
+    @Test
+    void unaryMinus() {
+        assertEquals(-2.0, evaluate("-x"));
+        assertEquals(-25.0, evaluate("-(x + y) * z"));
+        assertEquals(-6.0, evaluate("x * -y"));
+        assertEquals(0.25, evaluate("2 ^ -x"));
+        assertEquals(4.0, evaluate("-x ^ 2"));
+        assertEquals(1.0, evaluate("y + -x"));
+    }
+
+    @Test
+    void prefixFunctions() {
+        assertEquals(Math.sin(2), evaluate("sin x"));
+        assertEquals(Math.sin(2), evaluate("sin(x)"));
+        assertEquals(Math.sqrt(2) * 3, evaluate("sqrt(x) * y"), 1e-12);
+        assertEquals(Math.sin(2) + 3, evaluate("sin(x) + y"), 1e-12);
+        assertEquals(Math.log(2) * 3, evaluate("ln x * y"), 1e-12);
+        assertEquals("*", root("sqrt(x) * y"));
+    }
+
+    /**
+     * Printed text, following the bracketing of the original recursive
+     * printer with the infix labels it used to leave out.
+     */
+    private String print(String formula) {
+        String printed = builder.build(formula).toString();
+        assertEquals(printed, builder.build(printed).toString());
+        return printed;
+    }
+
+    @Test
+    void printingKeepsTheOriginalBrackets() {
+        assertEquals("x+y*z", print("x + y * z"));
+        assertEquals("(x+y)*z", print("(x + y) * z"));
+        assertEquals("(x+y)/(x-y)", print("(x + y) / (x - y)"));
+        assertEquals("x^(y^z)", print("x ^ y ^ z"));
+        assertEquals("(x^y)^z", print("(x ^ y) ^ z"));
+        assertEquals("x-y-z", print("x - (y - z)"));
+        assertEquals("x/y*z", print("x / (y * z)"));
+        assertEquals("x^y*z", print("x ^ (y * z)"));
+        assertEquals("2*pi*r", print("2 * pi * r"));
+        assertEquals("-(x+y)", print("-(x + y)"));
+        assertEquals("x*-y", print("x * -y"));
+        assertEquals("-x^2", print("(-x) ^ 2"));
+        assertEquals("(x+1) !", print("(x + 1)!"));
+        assertEquals("sin x^2", print("sin(x) ^ 2"));
+        assertEquals("max(x+1, y*2)", print("max(x + 1, y * 2)"));
+    }
+}
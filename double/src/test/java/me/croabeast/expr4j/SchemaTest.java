@@ -0,0 +1,97 @@
+package me.croabeast.expr4j;
+
+import me.croabeast.expr4j.expression.Bindings;
+import me.croabeast.expr4j.expression.DoubleExpression;
+import me.croabeast.expr4j.expression.Expression;
+import me.croabeast.expr4j.expression.Schema;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaTest {
+
+    private final DoubleBuilder builder = new DoubleBuilder();
+
+    @Test
+    void variablesAreNumberedInOrderOfAppearance() {
+        Schema<Double> schema = builder.build("y * x + y - pi").getSchema();
+
+        assertEquals(Arrays.asList("y", "x"), schema.getNames());
+        assertEquals(0, schema.slot("y"));
+        assertEquals(1, schema.slot("x"));
+        assertEquals(-1, schema.slot("pi"));
+        assertEquals(Math.PI, schema.getConstant("pi"));
+    }
+
+    @Test
+    void bindingsAreFilledFromTheMap() {
+        Expression<Double> expression = builder.build("x - y");
+
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", 5.0);
+        variables.put("y", 2.0);
+        variables.put("unused", 1.0);
+
+        Bindings<Double> bindings = expression.getSchema().bindings(variables);
+        assertEquals(5.0, bindings.get(0));
+        assertEquals(2.0, bindings.get(1));
+        assertEquals(3.0, expression.evaluate(bindings));
+    }
+
+    @Test
+    void mapEntriesOverrideConstantsInEveryEngine() {
+        DoubleExpression expression = builder.build("x * pi + max(pi, x)");
+
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", 2.0);
+        variables.put("pi", 3.0);
+
+        double expected = 2 * 3 + 3;
+
+        assertEquals(expected, expression.evaluate(variables));
+        assertEquals(expected, expression.evaluateAsDouble(variables));
+        assertEquals(expected, expression.compile().evaluate(variables));
+        assertEquals(expected, expression.getContext().evaluate(variables));
+        assertEquals(expected, expression.toStackMachine().evaluate(variables));
+        assertEquals(expected, expression.toIncrementalContext().evaluate(variables));
+        assertEquals(expected, expression.stream(Stream.of(variables)).findFirst().orElse(null));
+        assertEquals(expected, expression.doubleStream(Stream.of(variables)).sum());
+
+        Map<String, double[]> columns = new HashMap<>();
+        columns.put("x", new double[] {2.0});
+        columns.put("pi", new double[] {3.0});
+
+        double[] results = new double[1];
+        expression.toDoubleBatch().evaluate(columns, results);
+        assertEquals(expected, results[0]);
+
+        Map<String, Double> gradient = new HashMap<>();
+        assertEquals(expected, builder.differentiate(expression).evaluate(variables, gradient));
+        assertEquals(Collections.singletonMap("x", 3.0), gradient);
+
+        assertEquals(expected, builder.build(Collections.singletonMap("y", "x * pi + max(pi, x)"))
+                .evaluate(variables).get("y"));
+
+        assertEquals(2 * Math.PI + Math.PI, expression.evaluateAsDouble(Collections.singletonMap("x", 2.0)));
+    }
+
+    @Test
+    void bindingsOnlyHoldFreeVariables() {
+        Expression<Double> expression = builder.build("x * pi");
+
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", 2.0);
+        variables.put("pi", 3.0);
+
+        Bindings<Double> bindings = expression.getSchema().bindings(variables);
+        assertEquals(2 * Math.PI, expression.evaluate(bindings));
+        assertEquals(6.0, expression.overriddenBy(variables).evaluate(variables));
+        assertSame(expression, expression.overriddenBy(Collections.singletonMap("e", 10.0)));
+    }
+}
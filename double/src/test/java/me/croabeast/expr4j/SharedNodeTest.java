@@ -0,0 +1,117 @@
+package me.croabeast.expr4j;
+
+import me.croabeast.expr4j.expression.DoubleExpression;
+import me.croabeast.expr4j.expression.Optimization;
+import me.croabeast.expr4j.token.Characteristics;
+import me.croabeast.expr4j.token.DoubleUnaryOperation;
+import me.croabeast.expr4j.token.Function;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SharedNodeTest {
+
+    private final DoubleBuilder builder = new DoubleBuilder();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private DoubleExpression expression;
+    private double expected;
+
+    @BeforeEach
+    void setup() {
+        builder.getDictionary().addFunction(new Function<>("f", 1, (DoubleUnaryOperation) v -> {
+            calls.incrementAndGet();
+            return Math.sin(v);
+        }, Characteristics.pure()));
+
+        builder.enable(Optimization.ELIMINATE_COMMON_SUBEXPRESSIONS);
+        expression = builder.build("f(x) * f(x) + sqrt(f(x) + 2)");
+        expected = expected(0.5);
+    }
+
+    private static double expected(double x) {
+        double f = Math.sin(x);
+        return f * f + Math.sqrt(f + 2);
+    }
+
+    private void assertComputedOnce(double actual) {
+        assertEquals(expected, actual, 1e-15);
+        assertEquals(1, calls.getAndSet(0));
+    }
+
+    @Test
+    void equalCallsBecomeOneSharedNode() {
+        assertEquals(expected, expression.evaluate(Collections.singletonMap("x", 0.5)), 1e-15);
+        assertEquals(1, expression.getSchema().size());
+        assertEquals(1, expression.getSchema().shares());
+    }
+
+    @Test
+    void everyDoubleEngineComputesSharesOnce() {
+        calls.set(0);
+
+        assertComputedOnce(expression.evaluate(Collections.singletonMap("x", 0.5)));
+        assertComputedOnce(expression.compile().evaluate(Collections.singletonMap("x", 0.5)));
+        assertComputedOnce(expression.getContext().evaluate(Collections.singletonMap("x", 0.5)));
+        assertComputedOnce(expression.toStackMachine().evaluate(Collections.singletonMap("x", 0.5)));
+        assertComputedOnce(expression.evaluateAsDouble(new double[] {0.5}));
+        assertComputedOnce(expression.evaluateAsDouble(Collections.singletonMap("x", 0.5)));
+        assertComputedOnce(builder.generate(expression).evaluate(new double[] {0.5}));
+    }
+
+    @Test
+    void primitiveEvaluatorKeepsNoStateBetweenCalls() {
+        assertEquals(expected, expression.evaluateAsDouble(new double[] {0.5}), 1e-15);
+
+        double other = expected(2.0);
+        assertEquals(other, expression.evaluateAsDouble(new double[] {2.0}), 1e-15);
+
+        assertEquals(expected, expression.evaluateAsDouble(new double[] {0.5}), 1e-15);
+    }
+
+    @Test
+    void nestedEvaluationsUseTheirOwnScratchArrays() {
+        DoubleExpression[] self = new DoubleExpression[1];
+        builder.getDictionary().addFunction(new Function<>("g", 1, (DoubleUnaryOperation) v ->
+                v > 1 ? self[0].evaluateAsDouble(new double[] {v / 2}) : v, Characteristics.pure()));
+
+        self[0] = builder.build("max(g(x), f(x) * f(x), 0) + g(x) * f(x)");
+        assertEquals(nested(8.0), self[0].evaluateAsDouble(new double[] {8.0}), 1e-15);
+        assertEquals(nested(0.5), self[0].evaluateAsDouble(new double[] {0.5}), 1e-15);
+    }
+
+    private static double nested(double x) {
+        double f = Math.sin(x), g = x > 1 ? nested(x / 2) : x;
+        return Math.max(Math.max(g, f * f), 0) + g * f;
+    }
+
+    @Test
+    void powersAreRewrittenIntoSharedProducts() {
+        builder.enable(Optimization.SIMPLIFY);
+        expression = builder.build("f(x)^16 + f(x)^3");
+        expected = Math.pow(Math.sin(0.5), 16) + Math.pow(Math.sin(0.5), 3);
+
+        assertEquals(1, expression.getSchema().size());
+        assertTrue(expression.getSchema().shares() > 1);
+
+        calls.set(0);
+        assertComputedOnce(expression.evaluateAsDouble(new double[] {0.5}));
+        assertComputedOnce(builder.generate(expression).evaluate(new double[] {0.5}));
+    }
+
+    @Test
+    void generatedCodeStaysLinear() {
+        builder.enable(Optimization.SIMPLIFY);
+        expression = builder.build("f(x)^16 * f(x + 1)^16 * f(x + 2)^16 * f(x + 3)^16");
+        double expected = expression.evaluateAsDouble(new double[] {0.5});
+        calls.set(0);
+
+        assertEquals(expected, builder.generate(expression).evaluate(new double[] {0.5}), 0.0);
+        assertEquals(4, calls.get());
+    }
+}
@@ -0,0 +1,50 @@
+package me.croabeast.expr4j;
+
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.expression.DoubleExpression;
+import me.croabeast.expr4j.expression.Optimization;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimplifierTest {
+
+    private final DoubleBuilder builder = new DoubleBuilder();
+
+    SimplifierTest() {
+        builder.enable(Optimization.SIMPLIFY);
+    }
+
+    private double evaluate(DoubleExpression expression, double x) {
+        return expression.evaluateAsDouble(Collections.singletonMap("x", x));
+    }
+
+    @Test
+    void neutralElementsAreRemoved() {
+        assertEquals("x", builder.build("x * 1").toString());
+        assertEquals("x", builder.build("x - 0").toString());
+        assertEquals("x", builder.build("--x").toString());
+        assertEquals(-0.0, evaluate(builder.build("x - 0"), -0.0));
+    }
+
+    @Test
+    void additionsOfZeroKeepTheSignOfZero() {
+        assertEquals(0.0, evaluate(builder.build("x + 0"), -0.0));
+        assertEquals(0.0, evaluate(builder.build("0 + x"), -0.0));
+    }
+
+    @Test
+    void onlyExpr4jExceptionsSkipARule() {
+        builder.getDictionary().addRule((node, dictionary) -> {
+            throw new Expr4jException("Not applicable");
+        });
+        assertEquals(3.0, evaluate(builder.build("x * 1 + 1"), 2.0));
+
+        builder.getDictionary().addRule((node, dictionary) -> {
+            throw new IllegalStateException("Broken rule");
+        });
+        assertThrows(IllegalStateException.class, () -> builder.build("x * 1 + 1"));
+    }
+}
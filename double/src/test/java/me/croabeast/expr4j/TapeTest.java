@@ -0,0 +1,79 @@
+package me.croabeast.expr4j;
+
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.expression.Expression;
+import me.croabeast.expr4j.expression.IncrementalContext;
+import me.croabeast.expr4j.expression.Tape;
+import me.croabeast.expr4j.token.Function;
+import me.croabeast.expr4j.token.Operation;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TapeTest {
+
+    private final DoubleBuilder builder = new DoubleBuilder();
+
+    @Test
+    void sharedNodesGetOneIndexAfterTheirOperands() {
+        Expression<Double> expression = builder.build("sin(x) * sin(x) + pi");
+        expression.getRoot().getChildren().get(0).getChildren().set(1,
+                expression.getRoot().getChildren().get(0).getChildren().get(0));
+
+        Tape<Double> tape = new Tape<>(expression);
+        int root = tape.size() - 1;
+
+        assertEquals(5, tape.size());
+        assertSame(expression.getRoot(), tape.getNode(root));
+
+        for (int i = 0; i < tape.size(); i++)
+            for (int child : tape.getChildren(i)) assertTrue(child < i);
+
+        int[] product = tape.getChildren(tape.getChildren(root)[0]);
+        assertEquals(product[0], product[1]);
+
+        int variable = tape.getChildren(product[0])[0];
+        assertEquals(0, tape.getSlot(variable));
+        assertNull(tape.getOperation(variable));
+
+        int constant = tape.getChildren(root)[1];
+        assertEquals(-1, tape.getSlot(constant));
+        assertEquals(Math.PI, tape.getValue(constant), 0.0);
+        assertNotNull(tape.getOperation(root));
+    }
+
+    @Test
+    void consumersMatchTheInterpreter() {
+        Expression<Double> expression = builder.build("x * y + sin(x) ^ 2 - y / 3");
+
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", 0.5);
+        variables.put("y", 1.75);
+
+        IncrementalContext<Double> context = new IncrementalContext<>(expression);
+        assertEquals(expression.evaluate(variables), context.evaluate(variables), 0.0);
+
+        Map<String, Double> gradient = new HashMap<>();
+        double value = builder.differentiate(expression).evaluate(variables, gradient);
+
+        assertEquals(expression.evaluate(variables), value, 1e-15);
+        assertEquals(1.75 + 2 * Math.sin(0.5) * Math.cos(0.5), gradient.get("x"), 1e-12);
+        assertEquals(0.5 - 1.0 / 3, gradient.get("y"), 1e-12);
+    }
+
+    @Test
+    void malformedTreesAreRejected() {
+        builder.getDictionary().addFunction(new Function<>("twice", 1, (Operation<Double>) p -> 2 * p.result(0)));
+
+        Expression<Double> expression = builder.build("twice(x) + 1");
+        expression.getRoot().getChildren().get(0).getChildren().clear();
+
+        assertThrows(Expr4jException.class, () -> new Tape<>(expression));
+
+        expression.setRoot(null);
+        assertThrows(Expr4jException.class, () -> new Tape<>(expression));
+    }
+}
@@ -0,0 +1,117 @@
+package me.croabeast.expr4j;
+
+import me.croabeast.expr4j.exception.Expr4jException;
+import me.croabeast.expr4j.expression.Codec;
+import me.croabeast.expr4j.expression.Tokenizer;
+import me.croabeast.expr4j.token.Operand;
+import me.croabeast.expr4j.token.Operator;
+import me.croabeast.expr4j.token.Token;
+import me.croabeast.expr4j.token.Variable;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenizerTest {
+
+    private final DoubleBuilder builder = new DoubleBuilder();
+    private final Tokenizer<Double> tokenizer = new Tokenizer<>(builder.getDictionary(), builder.getCodec());
+
+    /**
+     * Labels of the tokens, prefix operators marked with {@code u} and
+     * operands with {@code #}.
+     */
+    private static String labels(Tokenizer<Double> tokenizer, String formula) {
+        List<String> labels = new ArrayList<>();
+
+        for (Token token : tokenizer.tokenize(formula)) {
+            String label = token.getLabel();
+
+            if (token instanceof Operand) label = "#" + label;
+            else if (token instanceof Operator && ((Operator<?>) token).getType() == Operator.Type.PREFIX)
+                label = "u" + label;
+
+            labels.add(label);
+        }
+
+        return String.join(" ", labels);
+    }
+
+    private String labels(String formula) {
+        return labels(tokenizer, formula);
+    }
+
+    @Test
+    void implicitMultiplicationIsInserted() {
+        assertEquals("#2.0 * x", labels("2x"));
+        assertEquals("( x ) * ( y )", labels("(x)(y)"));
+        assertEquals("x * usin y", labels("x sin y"));
+        assertEquals("#3.0 ! * x", labels("3!x"));
+        assertEquals("#2.0 * max ( x , y )", labels("2max(x, y)"));
+        assertEquals("x + y", labels("x + y"));
+    }
+
+    @Test
+    void unaryOperatorsDependOnThePreviousToken() {
+        assertEquals("u- x", labels("-x"));
+        assertEquals("x - y", labels("x-y"));
+        assertEquals("x * u- y", labels("x*-y"));
+        assertEquals("( u+ x ) - u- y", labels("(+x) - -y"));
+        assertEquals("#3.0 ! - x", labels("3! - x"));
+        assertEquals("max ( x , u- y )", labels("max(x, -y)"));
+    }
+
+    @Test
+    void longestSymbolWins() {
+        assertEquals("usinh z", labels("sinh z"));
+        assertEquals("usin h", labels("sin h"));
+        assertEquals("ulog10 x", labels("log10 x"));
+        assertEquals("log ( #2.0 , x )", labels("log(2, x)"));
+        assertEquals("x2b * ucos y", labels("x2b cos y"));
+    }
+
+    @Test
+    void codecsDelimitLiterals() {
+        assertEquals("#0.0015 * x", labels("1.5e-3x"));
+        assertEquals("#0.5 + #200000.0", labels(".5 + 2e+5"));
+        assertEquals("#2.0 * e", labels("2e"));
+
+        Codec<Double> hexadecimal = new Codec<Double>() {
+            @NotNull
+            public Double toOperand(String string) {
+                return (double) Long.parseLong(string.substring(2), 16);
+            }
+
+            @NotNull
+            public String toString(Double operand) {
+                return operand.toString();
+            }
+
+            @NotNull
+            @Override
+            public List<String> getPatterns() {
+                return Collections.singletonList("0x[0-9a-f]+");
+            }
+        };
+
+        Tokenizer<Double> patterns = new Tokenizer<>(builder.getDictionary(), hexadecimal);
+        assertEquals("#255.0 * x", labels(patterns, "0xffx"));
+        assertEquals("#16.0 + y", labels(patterns, "0x10 + y"));
+
+        List<Token> tokens = tokenizer.tokenize("abc");
+        assertEquals(1, tokens.size());
+        assertTrue(tokens.get(0) instanceof Variable);
+    }
+
+    @Test
+    void malformedInputIsRejected() {
+        assertThrows(Expr4jException.class, () -> tokenizer.tokenize(""));
+        assertThrows(Expr4jException.class, () -> tokenizer.tokenize(" \t "));
+        assertThrows(Expr4jException.class, () -> tokenizer.tokenize("x $ y"));
+        assertThrows(Expr4jException.class, () -> tokenizer.tokenize(null));
+    }
+}
@@ -1,2 +1,6 @@
 rootProject.name = "expr4j"
-include("core", "double", "double:shaded", "big-decimal", "big-decimal:shaded", "complex", "complex:shaded")
\ No newline at end of file
+include("core", "double", "double:shaded", "big-decimal", "big-decimal:shaded", "complex", "complex:shaded")
+
+// The Vector API add-on needs JDK 17 or newer to compile; every other module keeps targeting Java 8.
+if (JavaVersion.current().isCompatibleWith(JavaVersion.VERSION_17))
+    include("double-vector")
\ No newline at end of file